@@ -1,5 +1,6 @@
 package expr;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import error.AddressableError;
@@ -69,6 +70,20 @@ public class AddressExpr extends UnaryOp
     return null;
   }
   
+  public void findAddressed(BitSet addressed)
+  {
+    // Taking the address of an identifier is what lets a pointer refer to
+    // its variable.  Any other operand is an array element or a dereference,
+    // whose addresses come from elsewhere.
+    
+    if (e.isIdentifier())
+    {
+      addressed.set(((Identifier) e).getVarId());
+    }
+    
+    e.findAddressed(addressed);
+  }
+  
   public Expr fold()
   {
     // We cannot constant fold this expression - simply fold the child.
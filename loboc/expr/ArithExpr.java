@@ -134,6 +134,15 @@ public class ArithExpr extends BinaryOp
     return this;
   }
   
+  public boolean isCheap()
+  {
+    // Multiplication and division take far longer than anything else, and
+    // division may fault.
+    
+    return (op == ArithOp.ADD || op == ArithOp.SUB) && e1.isCheap()
+      && e2.isCheap();
+  }
+  
   public int getFoldResult(int n1, int n2, Type t1, Type t2)
   {
     if (op == ArithOp.ADD)
@@ -148,7 +148,8 @@ public class ArrayExpr extends BinaryOp
     {
       TempVar val = tFac.gen(type.getSize(), type.getAlignment());
       
-      addresses.add(new Assign(val, new Deref(address, val.getSize())));
+      addresses.add(new Assign(val, new Deref(address, val.getSize(),
+        type.getAliasClass())));
       return val;
     }
   }
@@ -195,7 +195,8 @@ public class AssignExpr extends BinaryOp
       
       // Now, dereference our address and assign val to that location in memory.
       
-      addresses.add(new DerefAndAssign(ptr, val, val.getSize()));
+      addresses.add(new DerefAndAssign(ptr, val, val.getSize(),
+        e1.type.getAliasClass()));
     }
     
     // Lastly, return val.
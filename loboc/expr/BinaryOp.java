@@ -1,5 +1,6 @@
 package expr;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import error.BinaryTypeError;
@@ -77,6 +78,12 @@ public abstract class BinaryOp extends Expr
     }
   }
   
+  public void findAddressed(BitSet addressed)
+  {
+    e1.findAddressed(addressed);
+    e2.findAddressed(addressed);
+  }
+  
   public Expr fold()
   {
     e1 = e1.fold();
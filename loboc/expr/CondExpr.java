@@ -1,5 +1,6 @@
 package expr;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import error.TernaryTypeError;
@@ -12,6 +13,7 @@ import threeaddress.BranchType;
 import threeaddress.Goto;
 import threeaddress.CondGoto;
 import threeaddress.Label;
+import threeaddress.Select;
 import threeaddress.ThreeAddress;
 import threeaddress.Var;
 import type.InvalidType;
@@ -94,6 +96,13 @@ public class CondExpr extends Expr
     }
   }
   
+  public void findAddressed(BitSet addressed)
+  {
+    cond.findAddressed(addressed);
+    truT.findAddressed(addressed);
+    flsT.findAddressed(addressed);
+  }
+  
   public Expr fold()
   {
     cond = cond.fold();
@@ -134,7 +143,22 @@ public class CondExpr extends Expr
   public Var getValue(TempFactory tFac, LabelFactory lFac,
     LinkedList<ThreeAddress> addresses)
   {
-    // First, we compute the condition's value and put it inside of a temp.
+    // If both clauses are cheap and harmless, we evaluate both of them and
+    // select the right one, saving ourselves the jumps.
+    
+    if (truT.isCheap() && flsT.isCheap())
+    {
+      Var c = cond.getValue(tFac, lFac, addresses);
+      Var tv = truT.getValue(tFac, lFac, addresses);
+      Var fv = flsT.getValue(tFac, lFac, addresses);
+      
+      Var result = tFac.gen(fv.getSize(), fv.getAlign());
+      addresses.add(new Select(result, c, tv, fv));
+      
+      return result;
+    }
+    
+    // Otherwise, we compute the condition's value and put it inside of a temp.
     
     Var condVal = cond.getValue(tFac, lFac, addresses);
     Var condTemp = tFac.gen(cond.getType().getSize(),
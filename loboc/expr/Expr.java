@@ -1,11 +1,15 @@
 package expr;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import error.SemanticError;
 import general.LabelFactory;
 import general.TempFactory;
 import symtable.SymbolTable;
+import threeaddress.BranchType;
+import threeaddress.CondGoto;
+import threeaddress.Goto;
 import threeaddress.ThreeAddress;
 import threeaddress.Var;
 import type.Type;
@@ -95,6 +99,18 @@ public abstract class Expr
     return false;
   }
   
+  /**
+   * Determine whether or not this expression is cheap to evaluate and has no
+   * side effects (and can't fault), so that it may be evaluated even when its
+   * value goes unused.
+   * @return True if this expression is cheap and harmless, and false
+   * otherwise.
+   */
+  public boolean isCheap()
+  {
+    return false;
+  }
+  
   /**
    * Determine whether or not this expression is an identifier.
    * @return True if this expression is an identifier, and false otherwise.
@@ -131,6 +147,18 @@ public abstract class Expr
     return null;
   }
   
+  /**
+   * Find the user-defined variables whose addresses are taken anywhere within
+   * this expression - by the address operator, or by using an array (which
+   * stands for the address of its first element).
+   * @param addressed - The set of the ids of such variables, to which we add
+   * our own.
+   */
+  public void findAddressed(BitSet addressed)
+  {
+    // Nothing to find, by default.
+  }
+  
   /**
    * Return a string representation of this expression.
    * @param anno - If true, the string representation is annotated with its
@@ -171,4 +199,39 @@ public abstract class Expr
    */
   public abstract Var getValue(TempFactory tFac, LabelFactory lFac,
     LinkedList<ThreeAddress> addresses);
+  
+  /**
+   * During the three address code generation process, generate the code
+   * jumping to one label if this (boolean) expression is true, and to another
+   * if it's false.  Either label may be null (though not both), in which case
+   * control falls through to the code following ours instead.  By default,
+   * we just test our value.
+   * @param tFac - Factory object to generate fresh temporaries as needed.
+   * @param lFac - Factory object to generate fresh labels as needed.
+   * @param addresses - The accumulated list of three address code
+   * instructions.
+   * @param trueL - The label to jump to if this expression is true, or null
+   * to fall through.
+   * @param falseL - The label to jump to if this expression is false, or null
+   * to fall through.
+   */
+  public void getBranches(TempFactory tFac, LabelFactory lFac,
+    LinkedList<ThreeAddress> addresses, String trueL, String falseL)
+  {
+    Var v = getValue(tFac, lFac, addresses);
+    
+    if (trueL == null)
+    {
+      addresses.add(new CondGoto(v, falseL, BranchType.EQZ));
+    }
+    else
+    {
+      addresses.add(new CondGoto(v, trueL, BranchType.NEZ));
+      
+      if (falseL != null)
+      {
+        addresses.add(new Goto(falseL));
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package expr;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import error.SemanticError;
@@ -64,6 +65,11 @@ public class Identifier extends Expr
     return true;
   }
   
+  public boolean isCheap()
+  {
+    return true;
+  }
+  
   public Type computeType()
   {
     // Just look up our identifier in our table and get its type.
@@ -103,6 +109,25 @@ public class Identifier extends Expr
     return this;
   }
   
+  /**
+   * Get the unique id of the variable this identifier names.
+   * @return The variable's id.
+   */
+  public int getVarId()
+  {
+    return tb.deepGet(id).getId();
+  }
+  
+  public void findAddressed(BitSet addressed)
+  {
+    // An array is only ever used by way of its address.
+    
+    if (type.isArray())
+    {
+      addressed.set(getVarId());
+    }
+  }
+  
   public Var getValue(TempFactory tFac, LabelFactory lFac,
     LinkedList<ThreeAddress> addresses)
   {
@@ -122,7 +147,8 @@ public class Identifier extends Expr
     int vId = data.getId();
     int offset = data.getOffset();
     
-    Var v = new UserVar(vId, type.getSize(), type.getAlignment(), offset);
+    Var v = new UserVar(vId, type.getSize(), type.getAlignment(), offset,
+      type.getAliasClass());
     
     return v;
   }
@@ -135,7 +161,8 @@ public class Identifier extends Expr
     int vId = data.getId();
     int offset = data.getOffset();
     
-    Var v = new UserVar(vId, type.getSize(), type.getAlignment(), offset);
+    Var v = new UserVar(vId, type.getSize(), type.getAlignment(), offset,
+      type.getAliasClass());
     
     Var t = tFac.gen(Consts.POINTER_SIZE, Consts.POINTER_ALIGN);
     
@@ -7,8 +7,6 @@ import java.util.LinkedList;
 
 import symtable.SymbolTable;
 import threeaddress.Assign;
-import threeaddress.BranchType;
-import threeaddress.CondGoto;
 import threeaddress.Goto;
 import threeaddress.Imm;
 import threeaddress.Label;
@@ -121,69 +119,55 @@ public class LogExpr extends BinaryOp
   public Var getValue(TempFactory tFac, LabelFactory lFac,
     LinkedList<ThreeAddress> addresses)
   {
-    // First, get the value of the condition and put it in a temp.
+    // Jump around the assignments of our result according to our value.
     
-    Var e1Val = e1.getValue(tFac, lFac, addresses);
-    Var t1 = tFac.gen(e1.getType().getSize(), e1.getType().getAlignment());
-    addresses.add(new Assign(t1, e1Val));
-    
-    // Now, we'll set up two labels to perform short-circuit evaluation.
-    
-    String circL = lFac.gen();
+    String falseL = lFac.gen();
     String endL = lFac.gen();
     
-    // We'll also generate a temporary for the final result of our expression.
-    
     Var result = tFac.gen(type.getSize(), type.getAlignment());
     
-    if (op == LogOp.AND)
-    {
-      // Jump ahead if the argument is false.
-      
-      addresses.add(new CondGoto(t1, circL, BranchType.EQZ));
-    }
-    else
-    {
-      // Jump ahead if the argument is true.
-      
-      addresses.add(new CondGoto(t1, circL, BranchType.NEZ));
-    }
+    getBranches(tFac, lFac, addresses, null, falseL);
     
-    // Next, generate the result for evaluation of the second argument and put
-    // any postfix operations encountered during this process into a separate
-    // list, which we'll later add, along with a conditional jump, to the main
-    // list of postfix operations.
+    addresses.add(new Assign(result, Imm.IMM_ONE));
+    addresses.add(new Goto(endL));
+    addresses.add(new Label(falseL));
+    addresses.add(new Assign(result, Imm.IMM_ZERO));
+    addresses.add(new Label(endL));
     
-    Var t2 = e2.getValue(tFac, lFac, addresses);
+    return result;
+  }
+  
+  public void getBranches(TempFactory tFac, LabelFactory lFac,
+    LinkedList<ThreeAddress> addresses, String trueL, String falseL)
+  {
+    // Short-circuit evaluation - the first argument alone decides where we go
+    // if it's false (for AND) or true (for OR), and otherwise the second
+    // argument decides.  If that's where we fall through to, the first
+    // argument needs a label past the second to jump to.
     
-    // Generate the final branch and possible assignments for each operator.
+    String circL = op == LogOp.AND ? falseL : trueL;
+    boolean needsLabel = circL == null;
     
-    if (op == LogOp.AND)
-    {
-      addresses.add(new CondGoto(t2, circL, BranchType.EQZ));
-      addresses.add(new Assign(result, Imm.IMM_ONE));
-    }
-    else
+    if (needsLabel)
     {
-      addresses.add(new CondGoto(t2, circL, BranchType.NEZ));
-      addresses.add(new Assign(result, Imm.IMM_ZERO));
+      circL = lFac.gen();
     }
     
-    addresses.add(new Goto(endL));
-    addresses.add(new Label(circL));
-    
     if (op == LogOp.AND)
     {
-      addresses.add(new Assign(result, Imm.IMM_ZERO));
+      e1.getBranches(tFac, lFac, addresses, null, circL);
     }
     else
     {
-      addresses.add(new Assign(result, Imm.IMM_ONE));
+      e1.getBranches(tFac, lFac, addresses, circL, null);
     }
     
-    addresses.add(new Label(endL));
+    e2.getBranches(tFac, lFac, addresses, trueL, falseL);
     
-    return result;
+    if (needsLabel)
+    {
+      addresses.add(new Label(circL));
+    }
   }
   
   public BOpType getOpType()
@@ -42,6 +42,11 @@ public class NegExpr extends UnaryOp
     return InvalidType.INVALID_TYPE;
   }
   
+  public boolean isCheap()
+  {
+    return e.isCheap();
+  }
+  
   public String getOp()
   {
     return "-";
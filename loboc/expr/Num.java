@@ -102,6 +102,11 @@ public class Num extends Expr
     return true;
   }
   
+  public boolean isCheap()
+  {
+    return true;
+  }
+  
   public void labelType(LinkedList<SemanticError> errors)
   {
     // We do nothing since we already have our type.
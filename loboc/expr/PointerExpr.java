@@ -113,7 +113,8 @@ public class PointerExpr extends UnaryOp
     else
     {
       deref = tFac.gen(type.getSize(), type.getAlignment());
-      addresses.add(new Assign(deref, new Deref(ptr, deref.getSize())));
+      addresses.add(new Assign(deref, new Deref(ptr, deref.getSize(),
+        type.getAliasClass())));
     }
 
     return deref;
@@ -180,14 +180,16 @@ public class PostExpr extends UnaryOp
       
       Var address = e.getAddress(tFac, lFac, addresses);
       Var deref = tFac.gen(e.type.getSize(), e.type.getAlignment());
-      addresses.add(new Assign(deref, new Deref(address, deref.getSize())));
+      addresses.add(new Assign(deref, new Deref(address, deref.getSize(),
+        e.type.getAliasClass())));
       addresses.add(new Assign(returnTemp, deref));
       
       // Afterward, add one to the entity at that address.
       
       Var sum = tFac.gen(e.type.getSize(), e.type.getAlignment());
       addresses.add(new Binary(sum, deref, operandTemp, opType));
-      addresses.add(new DerefAndAssign(address, sum, sum.getSize()));
+      addresses.add(new DerefAndAssign(address, sum, sum.getSize(),
+        e.type.getAliasClass()));
     }
     
     // Finally, return the temp.
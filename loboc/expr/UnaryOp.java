@@ -1,5 +1,6 @@
 package expr;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import symtable.SymbolTable;
@@ -66,6 +67,11 @@ public abstract class UnaryOp extends Expr
    */
   public abstract String getOp();
   
+  public void findAddressed(BitSet addressed)
+  {
+    e.findAddressed(addressed);
+  }
+  
   /**
    * Compute the type of this binary expression based on the types of the
    * children (or the invalid primitive type
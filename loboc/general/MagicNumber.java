@@ -0,0 +1,150 @@
+package general;
+
+/**
+ * MagicNumber.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * The multiplier and shift used to divide by a constant without a division
+ * instruction.  The quotient n / d is the high word of the product of n and
+ * the multiplier, shifted right by the shift amount (with a few fix-ups, see
+ * Hacker's Delight, chapter 10 - the computations here are lifted from
+ * there).  We do the unsigned arithmetic in longs, as in FoldingUtils.
+ */
+public class MagicNumber
+{
+  private static final long TWO_31 = 0x80000000L;
+  private static final long MASK = 0xFFFFFFFFL;
+  
+  private int mult;
+  private int shift;
+  
+  /**
+   * For unsigned division, whether the multiplier needs 33 bits, so that n
+   * must be added back in to the high word of the product.
+   */
+  private boolean add;
+  
+  private MagicNumber(int mult, int shift, boolean add)
+  {
+    this.mult = mult;
+    this.shift = shift;
+    this.add = add;
+  }
+  
+  public int getMult()
+  {
+    return mult;
+  }
+  
+  public int getShift()
+  {
+    return shift;
+  }
+  
+  public boolean needsAdd()
+  {
+    return add;
+  }
+  
+  /**
+   * Compute the magic number for signed division by d.
+   * @param d - The divisor, with 2 <= |d| < 2^31.
+   * @return The magic number for d.
+   */
+  public static MagicNumber getSigned(int d)
+  {
+    long ad = Math.abs((long) d);
+    long t = TWO_31 + (d < 0 ? 1 : 0);
+    long anc = t - 1 - t % ad;
+    int p = 31;
+    long q1 = TWO_31 / anc;
+    long r1 = TWO_31 - q1 * anc;
+    long q2 = TWO_31 / ad;
+    long r2 = TWO_31 - q2 * ad;
+    long delta;
+    
+    do
+    {
+      p++;
+      q1 = 2 * q1;
+      r1 = 2 * r1;
+      
+      if (r1 >= anc)
+      {
+        q1++;
+        r1 -= anc;
+      }
+      
+      q2 = 2 * q2;
+      r2 = 2 * r2;
+      
+      if (r2 >= ad)
+      {
+        q2++;
+        r2 -= ad;
+      }
+      
+      delta = ad - r2;
+    }
+    while (q1 < delta || (q1 == delta && r1 == 0));
+    
+    int m = (int) (q2 + 1);
+    
+    return new MagicNumber(d < 0 ? -m : m, p - 32, false);
+  }
+  
+  /**
+   * Compute the magic number for unsigned division by d.
+   * @param d - The divisor, with 2 <= d < 2^32 taken as unsigned.
+   * @return The magic number for d.
+   */
+  public static MagicNumber getUnsigned(int d)
+  {
+    long ud = GeneralUtils.unsignedIntToLong(d);
+    long nc = MASK - ((1L << 32) - ud) % ud;
+    boolean add = false;
+    int p = 31;
+    long q1 = TWO_31 / nc;
+    long r1 = TWO_31 - q1 * nc;
+    long q2 = (TWO_31 - 1) / ud;
+    long r2 = (TWO_31 - 1) - q2 * ud;
+    long delta;
+    
+    do
+    {
+      p++;
+      
+      if (r1 >= nc - r1)
+      {
+        q1 = (2 * q1 + 1) & MASK;
+        r1 = 2 * r1 - nc;
+      }
+      else
+      {
+        q1 = (2 * q1) & MASK;
+        r1 = 2 * r1;
+      }
+      
+      if (r2 + 1 >= ud - r2)
+      {
+        add |= q2 >= TWO_31 - 1;
+        q2 = (2 * q2 + 1) & MASK;
+        r2 = 2 * r2 + 1 - ud;
+      }
+      else
+      {
+        add |= q2 >= TWO_31;
+        q2 = (2 * q2) & MASK;
+        r2 = 2 * r2 + 1;
+      }
+      
+      delta = ud - 1 - r2;
+    }
+    while (p < 64 && (q1 < delta || (q1 == delta && r1 == 0)));
+    
+    return new MagicNumber((int) (q2 + 1), p - 32, add);
+  }
+}
\ No newline at end of file
@@ -76,7 +76,11 @@ public class TempFactory
    */
   public int generateOffset(int curSize, int curAlign)
   {
-    int curOffset = (prevOffset + prevSize + curAlign - 1) / curAlign * curAlign;
+    // Temporaries live below the stack pointer, each taking up the bytes from
+    // its (negated) offset upward, so the new variable must end at or below
+    // the start of the previous one.
+    
+    int curOffset = (prevOffset + curSize + curAlign - 1) / curAlign * curAlign;
     
     prevSize = curSize;
     prevOffset = curOffset;
@@ -2,9 +2,14 @@ package main;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.BitSet;
 import java.util.LinkedList;
 
+import optimization.LocalRegisterCache;
 import optimization.Optimizer;
+import optimization.OptimizerUtils;
+import optimization.RegisterAllocator;
+import optimization.VarPromoter;
 import parsing.SmtParser;
 import smt.Smt;
 import threeaddress.ThreeAddress;
@@ -25,19 +30,35 @@ import mips.Instruction;
  * 
  * @author Brendan Donohoe
  *
- * Class which, given the input source and a boolean denoting whether or not
- * the optimization flag was set, performs the task of compiling the code and
- * generating the MIPS assembly code instructions.
+ * Class which, given the input source and the level of optimization requested,
+ * performs the task of compiling the code and generating the MIPS assembly code
+ * instructions.
  */
 public class Compiler
 {
+  /**
+   * No optimization at all.
+   */
+  public static final int OPT_NONE = 0;
+  
+  /**
+   * Cheap optimization - the three address code is optimized, and values are
+   * cached in registers within basic blocks.
+   */
+  public static final int OPT_LOCAL = 1;
+  
+  /**
+   * Full optimization, including global register allocation.
+   */
+  public static final int OPT_FULL = 2;
+  
   private Reader in;
-  private boolean optFlag;
+  private int optLevel;
   
-  public Compiler(Reader in, boolean optFlag)
+  public Compiler(Reader in, int optLevel)
   {
     this.in = in;
-    this.optFlag = optFlag;
+    this.optLevel = optLevel;
   }
   
   /**
@@ -100,7 +121,8 @@ public class Compiler
     
     // Label the global variable offsets.
     
-    blk.getOffsetsAndLabel(0, 0, new RefInt(0));
+    RefInt curId = new RefInt(0);
+    blk.getOffsetsAndLabel(0, 0, curId);
     
     // Mark possible return statements in the tree.
     
@@ -121,15 +143,50 @@ public class Compiler
     // If optimization was enabled, perform optimization on the three address
     // code.
     
-    if (optFlag)
+    if (optLevel != OPT_NONE)
     {
       /*
        * SPIKE 6: THREE ADDRESS CODE OPTIMIZATION.
        */
       
-      Optimizer o = new Optimizer(addresses, tf.getTempNum());
+      // First, turn the user-defined variables no pointer can refer to into
+      // temporaries, so that they may be optimized as freely as any other.
+      
+      BitSet addressed = new BitSet();
+      blk.findAddressed(addressed);
+      
+      addresses = new VarPromoter(addresses, tf, addressed,
+        curId.getVal()).run();
+      
+      Optimizer o = new Optimizer(addresses, tf, lf, curId.getVal());
       o.optimize();
-      addresses = o.getAddresses();
+      
+      // With full optimization, follow up with the optimizations over the
+      // whole control flow graph.
+      
+      if (optLevel == OPT_FULL)
+      {
+        o.optimizeGlobal();
+      }
+      
+      // Branch directly on the comparisons deciding our conditional gotos,
+      // rather than computing their results first.
+      
+      addresses = OptimizerUtils.fuseBranches(o.getAddresses(),
+        tf.getTempNum());
+    }
+    
+    // If full optimization was enabled, also allocate registers to the
+    // variables in our code, so that they need not be loaded from and stored
+    // to memory at every use.
+    
+    RegisterAllocator ra = null;
+    
+    if (optLevel == OPT_FULL)
+    {
+      ra = new RegisterAllocator(addresses, tf, tf.getTempNum(),
+        curId.getVal());
+      ra.allocate();
     }
     
     /*
@@ -137,11 +194,25 @@ public class Compiler
      */
     
     // Finally, get our three address code instructions and add them to our
-    // list before returning.
+    // list before returning.  With cheap optimization, we let the register
+    // cache generate them, keeping values in registers within each block.
+    
+    if (optLevel == OPT_LOCAL)
+    {
+      new LocalRegisterCache(addresses, tf.getTempNum(),
+        curId.getVal()).getInst(ins);
+    }
+    else
+    {
+      for (ThreeAddress a : addresses)
+      {
+        a.getInst(ins);
+      }
+    }
     
-    for (ThreeAddress a : addresses)
+    if (ra != null)
     {
-      a.getInst(ins);
+      ra.insertEntryAndExitInst(ins);
     }
   }
 }
\ No newline at end of file
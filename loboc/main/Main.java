@@ -32,26 +32,31 @@ public class Main
     {
       // We begin by setting up our input stream.
       
-      boolean optFlag = false;
+      // "-o" requests full optimization, and "-O1" requests only the cheap
+      // optimizations, for when compile time matters more.
+      
+      int optLevel = Compiler.OPT_NONE;
+      int numFlags = 0;
       Reader in = null;
       
-      if (args.length == 0)
+      if (args.length > 0 && args[0].equals("-o"))
       {
-        in = new BufferedReader(new InputStreamReader(System.in));
+        optLevel = Compiler.OPT_FULL;
+        numFlags = 1;
       }
-      else if (args.length == 1 && args[0].equals("-o"))
+      else if (args.length > 0 && args[0].equals("-O1"))
       {
-        in = new BufferedReader(new InputStreamReader(System.in));
-        optFlag = true;
+        optLevel = Compiler.OPT_LOCAL;
+        numFlags = 1;
       }
-      else if (args.length == 1)
+      
+      if (args.length == numFlags)
       {
-        in = new BufferedReader(new FileReader(new File(args[0])));
+        in = new BufferedReader(new InputStreamReader(System.in));
       }
-      else if (args.length == 2 && args[0].equals("-o"))
+      else if (args.length == numFlags + 1)
       {
-        in = new BufferedReader(new FileReader(new File(args[1])));
-        optFlag = true;
+        in = new BufferedReader(new FileReader(new File(args[numFlags])));
       }
       else
       {
@@ -61,7 +66,7 @@ public class Main
       
       // Now, run our compiler.
       
-      Compiler cm = new Compiler(in, optFlag);
+      Compiler cm = new Compiler(in, optLevel);
       
       LinkedList<Instruction> ins = new LinkedList<Instruction>();
       LinkedList<Error> errors = new LinkedList<Error>();
@@ -29,6 +29,7 @@ public class BinaryInst implements Instruction
   
   public String toString()
   {
-    return op + " $t" + regSt + ", $t" + regOp1 + ", $t" + regOp2;
+    return op + " " + Registers.getName(regSt) + ", "
+      + Registers.getName(regOp1) + ", " + Registers.getName(regOp2);
   }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package mips;
+
+/**
+ * BitwiseInst.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Class representing a bitwise operation on two operand registers, in which
+ * the result is stored in a separate, third register (see BitwiseOpType).
+ */
+public class BitwiseInst implements Instruction
+{
+  private int regSt;
+  private int regOp1;
+  private int regOp2;
+  private BitwiseOpType op;
+  
+  public BitwiseInst(int regSt, int regOp1, int regOp2, BitwiseOpType op)
+  {
+    this.regSt = regSt;
+    this.regOp1 = regOp1;
+    this.regOp2 = regOp2;
+    this.op = op;
+  }
+  
+  public String toString()
+  {
+    return op + " " + Registers.getName(regSt) + ", "
+      + Registers.getName(regOp1) + ", " + Registers.getName(regOp2);
+  }
+}
\ No newline at end of file
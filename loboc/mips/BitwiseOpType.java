@@ -0,0 +1,23 @@
+package mips;
+
+/**
+ * BitwiseOpType.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Utility class representing the bitwise operations MIPS can perform between
+ * two registers, which our language has no operators for, but which we use in
+ * the code we generate.
+ */
+public enum BitwiseOpType
+{
+  AND,
+  XOR;
+  
+  public String toString()
+  {
+    return name().toLowerCase();
+  }
+}
\ No newline at end of file
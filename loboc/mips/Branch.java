@@ -1,5 +1,6 @@
 package mips;
 
+import threeaddress.BOpType;
 import threeaddress.BranchType;
 
 /**
@@ -10,14 +11,16 @@ import threeaddress.BranchType;
  * @author Brendan Donohoe
  *
  * Class representing a conditional branch in control flow, in which the
- * condition is a function of a single register (in our case, either equal to
- * zero or not equal to zero).
+ * condition is either a function of a single register (in our case, either
+ * equal to zero or not equal to zero) or a comparison between two registers.
  */
 public class Branch implements Instruction
 {
   private int regCnd;
+  private int regCnd2;
   private String label;
   private BranchType bt;
+  private BOpType op;
   
   public Branch(int regCnd, String label, BranchType bt)
   {
@@ -26,8 +29,22 @@ public class Branch implements Instruction
     this.bt = bt;
   }
   
+  public Branch(int regCnd, int regCnd2, String label, BOpType op)
+  {
+    this.regCnd = regCnd;
+    this.regCnd2 = regCnd2;
+    this.label = label;
+    this.op = op;
+  }
+  
   public String toString()
   {
+    if (op != null)
+    {
+      return getCompareInst() + " " + Registers.getName(regCnd) + ", "
+        + Registers.getName(regCnd2) + ", " + label;
+    }
+    
     String inst;
     
     if (bt == BranchType.NEZ)
@@ -39,6 +56,27 @@ public class Branch implements Instruction
       inst = "beqz";
     }
     
-    return inst + " $t" + regCnd + ", " + label;
+    return inst + " " + Registers.getName(regCnd) + ", " + label;
+  }
+  
+  /**
+   * Get the name of the instruction comparing our two registers.
+   * @return The name of the instruction.
+   */
+  private String getCompareInst()
+  {
+    switch (op)
+    {
+      case LT : return "blt";
+      case LE : return "ble";
+      case GT : return "bgt";
+      case GE : return "bge";
+      case LTU : return "bltu";
+      case LEU : return "bleu";
+      case GTU : return "bgtu";
+      case GEU : return "bgeu";
+      case EQ : return "beq";
+      default : return "bne";
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package mips;
+
+/**
+ * CondMove.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Class representing a copy of the contents of one register into another,
+ * made only if a third register is nonzero (or, alternatively, only if it is
+ * zero).
+ */
+public class CondMove implements Instruction
+{
+  private int regSt;
+  private int reg;
+  private int regCnd;
+  private boolean onZero;
+  
+  public CondMove(int regSt, int reg, int regCnd, boolean onZero)
+  {
+    this.regSt = regSt;
+    this.reg = reg;
+    this.regCnd = regCnd;
+    this.onZero = onZero;
+  }
+  
+  public String toString()
+  {
+    String inst = onZero ? "movz" : "movn";
+    return inst + " " + Registers.getName(regSt) + ", "
+      + Registers.getName(reg) + ", " + Registers.getName(regCnd);
+  }
+}
\ No newline at end of file
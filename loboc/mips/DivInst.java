@@ -28,6 +28,7 @@ public class DivInst implements Instruction
   public String toString()
   {
     String inst = unsigned ? "divu" : "div";
-    return inst + " $t" + regOp1 + ", $t" + regOp2;
+    return inst + " " + Registers.getName(regOp1) + ", "
+      + Registers.getName(regOp2);
   }
 }
\ No newline at end of file
@@ -21,6 +21,6 @@ public class ExitVal implements Instruction
   
   public String toString()
   {
-    return "move $v0, $t" + reg;
+    return "move $v0, " + Registers.getName(reg);
   }
 }
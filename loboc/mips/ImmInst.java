@@ -0,0 +1,34 @@
+package mips;
+
+/**
+ * ImmInst.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Class representing an operation between a register and a 16-bit immediate
+ * (see ImmOpType), saving us loading the immediate into a register of its
+ * own.
+ */
+public class ImmInst implements Instruction
+{
+  private int regSt;
+  private int reg;
+  private int bits;
+  private ImmOpType op;
+  
+  public ImmInst(int regSt, int reg, int bits, ImmOpType op)
+  {
+    this.regSt = regSt;
+    this.reg = reg;
+    this.bits = bits;
+    this.op = op;
+  }
+  
+  public String toString()
+  {
+    return op + " " + Registers.getName(regSt) + ", "
+      + Registers.getName(reg) + ", " + bits;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+package mips;
+
+/**
+ * ImmOpType.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Utility class representing the operations MIPS can perform between a
+ * register and a 16-bit immediate.  The arithmetic and comparison operations
+ * sign-extend their immediates, and the bitwise operations zero-extend theirs.
+ */
+public enum ImmOpType
+{
+  ADDIU,
+  SLTI,
+  SLTIU,
+  ANDI,
+  ORI,
+  XORI;
+  
+  public String toString()
+  {
+    return name().toLowerCase();
+  }
+  
+  /**
+   * Determine whether or not the given constant can be used as the immediate
+   * of this operation.
+   * @param bits - The constant.
+   * @return True if bits survives the extension of a 16-bit immediate.
+   */
+  public boolean fits(int bits)
+  {
+    if (this == ANDI || this == ORI || this == XORI)
+    {
+      return bits >= 0 && bits <= 0xFFFF;
+    }
+    
+    return bits >= Short.MIN_VALUE && bits <= Short.MAX_VALUE;
+  }
+}
\ No newline at end of file
@@ -29,11 +29,13 @@ public class LoadAddress implements Instruction
   {
     if (isTemp)
     {
-      return "sub $t" + regSt + ", $sp, $t" + regOff;
+      return "sub " + Registers.getName(regSt) + ", $sp, "
+        + Registers.getName(regOff);
     }
     else
     {
-      return "add $t" + regSt + ", $gp, $t" + regOff;
+      return "add " + Registers.getName(regSt) + ", $gp, "
+        + Registers.getName(regOff);
     }
   }
 }
\ No newline at end of file
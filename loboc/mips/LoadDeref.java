@@ -28,6 +28,7 @@ public class LoadDeref implements Instruction
   public String toString()
   {
     String inst = lt == LoadType.BYTE ? "lbu" : "lw";
-    return inst + " $t" + regSt + ", 0($t" + regPt + ")";
+    return inst + " " + Registers.getName(regSt) + ", 0("
+      + Registers.getName(regPt) + ")";
   }
 }
@@ -0,0 +1,24 @@
+package mips;
+
+/**
+ * LoadHighBits.java
+ * 
+ * @author Brendan Donohoe
+ *
+ * Load the value stored in the HI register (the upper word of a product) into
+ * a separate register.
+ */
+public class LoadHighBits implements Instruction
+{
+  private int reg;
+  
+  public LoadHighBits(int reg)
+  {
+    this.reg = reg;
+  }
+  
+  public String toString()
+  {
+    return "mfhi " + Registers.getName(reg);
+  }
+}
\ No newline at end of file
@@ -20,6 +20,6 @@ public class LoadImm implements Instruction
   
   public String toString()
   {
-    return "li $t" + reg + ", " + bits;
+    return "li " + Registers.getName(reg) + ", " + bits;
   }
 }
\ No newline at end of file
@@ -18,6 +18,6 @@ public class LoadLowBits implements Instruction
   
   public String toString()
   {
-    return "mflo $t" + reg;
+    return "mflo " + Registers.getName(reg);
   }
 }
\ No newline at end of file
@@ -29,11 +29,11 @@ public class LoadMem implements Instruction
     
     if (isTemp)
     {
-      return inst + " $t" + reg + ", -" + memOffset + "($sp)";
+      return inst + " " + Registers.getName(reg) + ", -" + memOffset + "($sp)";
     }
     else
     {
-      return inst + " $t" + reg + ", " + memOffset + "($gp)";
+      return inst + " " + Registers.getName(reg) + ", " + memOffset + "($gp)";
     }
   }
   
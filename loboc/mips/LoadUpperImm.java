@@ -0,0 +1,26 @@
+package mips;
+
+/**
+ * LoadUpperImm.java
+ * 
+ * @author Brendan Donohoe
+ *
+ * Load a 16-bit constant into the upper half of a register, clearing the
+ * lower half.
+ */
+public class LoadUpperImm implements Instruction
+{
+  private int bits;
+  private int reg;
+  
+  public LoadUpperImm(int bits, int reg)
+  {
+    this.bits = bits;
+    this.reg = reg;
+  }
+  
+  public String toString()
+  {
+    return "lui " + Registers.getName(reg) + ", " + bits;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package mips;
+
+/**
+ * Move.java
+ *
+ * @version 1.0
+ *
+ * @author Brendan Donohoe
+ *
+ * Class representing a copy of the contents of one register into another.
+ */
+public class Move implements Instruction
+{
+  private int regSt;
+  private int reg;
+  
+  public Move(int regSt, int reg)
+  {
+    this.regSt = regSt;
+    this.reg = reg;
+  }
+  
+  public String toString()
+  {
+    return "move " + Registers.getName(regSt) + ", " + Registers.getName(reg);
+  }
+}
\ No newline at end of file
@@ -28,6 +28,7 @@ public class MultInst implements Instruction
   public String toString()
   {
     String inst = unsigned ? "multu" : "mult";
-    return inst + " $t" + regOp1 + ", $t" + regOp2;
+    return inst + " " + Registers.getName(regOp1) + ", "
+      + Registers.getName(regOp2);
   }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package mips;
+
+/**
+ * Registers.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Utility class for naming the registers used by the generated code.  We refer
+ * to registers by number throughout code generation - numbers 0 through 9 are
+ * the temporary registers $t0 - $t9, and numbers 10 through 17 are the saved
+ * registers $s0 - $s7.  Registers $t0 and $t1 are always kept free as scratch
+ * registers for operands that live in memory, and the rest may be handed out
+ * to variables by the register allocator.  The zero register is only ever
+ * read.
+ */
+public class Registers
+{
+  /**
+   * Register number used to denote that a variable lives in memory.
+   */
+  public static final int NO_REG = -1;
+  
+  /**
+   * Register number of $zero, which always reads as zero.
+   */
+  public static final int ZERO_REG = -2;
+  
+  /**
+   * The number of temporary registers.
+   */
+  public static final int NUM_TEMP_REGS = 10;
+  
+  /**
+   * The number of saved registers.
+   */
+  public static final int NUM_SAVED_REGS = 8;
+  
+  /**
+   * The number of scratch registers kept out of the hands of the allocator.
+   */
+  public static final int NUM_SCRATCH_REGS = 2;
+  
+  /**
+   * Determine whether or not the register is one of the saved registers, which
+   * we must restore before returning from main.
+   * @param reg - The register number.
+   * @return True if reg is one of $s0 - $s7, false otherwise.
+   */
+  public static boolean isSaved(int reg)
+  {
+    return reg >= NUM_TEMP_REGS;
+  }
+  
+  /**
+   * Get the assembly name of the given register.
+   * @param reg - The register number.
+   * @return The name of the register, including the leading "$".
+   */
+  public static String getName(int reg)
+  {
+    if (reg == ZERO_REG)
+    {
+      return "$zero";
+    }
+    else if (isSaved(reg))
+    {
+      return "$s" + (reg - NUM_TEMP_REGS);
+    }
+    else
+    {
+      return "$t" + reg;
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,31 @@
+package mips;
+
+/**
+ * ShiftLeft.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Class representing a logical shift left of a register by a constant amount,
+ * which we use in place of multiplication by powers of two.
+ */
+public class ShiftLeft implements Instruction
+{
+  private int regSt;
+  private int reg;
+  private int amount;
+  
+  public ShiftLeft(int regSt, int reg, int amount)
+  {
+    this.regSt = regSt;
+    this.reg = reg;
+    this.amount = amount;
+  }
+  
+  public String toString()
+  {
+    return "sll " + Registers.getName(regSt) + ", " + Registers.getName(reg)
+      + ", " + amount;
+  }
+}
\ No newline at end of file
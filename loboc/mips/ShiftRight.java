@@ -0,0 +1,35 @@
+package mips;
+
+/**
+ * ShiftRight.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Class representing a shift right (either arithmetic, copying the sign bit,
+ * or logical, filling with zeroes) of a register by a constant amount, which
+ * we use in place of division by constants.
+ */
+public class ShiftRight implements Instruction
+{
+  private int regSt;
+  private int reg;
+  private int amount;
+  private boolean arithmetic;
+  
+  public ShiftRight(int regSt, int reg, int amount, boolean arithmetic)
+  {
+    this.regSt = regSt;
+    this.reg = reg;
+    this.amount = amount;
+    this.arithmetic = arithmetic;
+  }
+  
+  public String toString()
+  {
+    String inst = arithmetic ? "sra" : "srl";
+    return inst + " " + Registers.getName(regSt) + ", "
+      + Registers.getName(reg) + ", " + amount;
+  }
+}
\ No newline at end of file
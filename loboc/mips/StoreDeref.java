@@ -28,6 +28,7 @@ public class StoreDeref implements Instruction
   {
     String inst = st == StoreType.BYTE ? "sb" : "sw";
 
-    return inst + " $t" + regVal + ", 0($t" + regMem + ")";
+    return inst + " " + Registers.getName(regVal) + ", 0("
+      + Registers.getName(regMem) + ")";
   }
 }
\ No newline at end of file
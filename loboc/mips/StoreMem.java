@@ -32,11 +32,11 @@ public class StoreMem implements Instruction
     
     if (isTemp)
     {
-      return inst + " $t" + reg + ", -" + memOffset + "($sp)";
+      return inst + " " + Registers.getName(reg) + ", -" + memOffset + "($sp)";
     }
     else
     {
-      return inst + " $t" + reg + ", " + memOffset + "($gp)";
+      return inst + " " + Registers.getName(reg) + ", " + memOffset + "($gp)";
     }
   }
   
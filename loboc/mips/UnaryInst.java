@@ -30,11 +30,12 @@ public class UnaryInst implements Instruction
   {
     if (op == UOpType.NEG)
     {
-      return "neg $t" + regSt + ", $t" + reg;
+      return "neg " + Registers.getName(regSt) + ", " + Registers.getName(reg);
     }
     else
     {
-      return "andi $t" + regSt + ", $t" + reg + ", 255";
+      return "andi " + Registers.getName(regSt) + ", "
+        + Registers.getName(reg) + ", 255";
     }
   }
 }
@@ -4,7 +4,11 @@ import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.ListIterator;
 
+import threeaddress.Assign;
+import threeaddress.Label;
+import threeaddress.Result;
 import threeaddress.ThreeAddress;
+import threeaddress.Var;
 
 /**
  * BasicBlock.java
@@ -22,9 +26,43 @@ public class BasicBlock
 {
   private LinkedList<ThreeAddress> blkAdds;
   
+  /**
+   * The position of this block in the program.
+   */
+  private int num;
+  
+  /**
+   * The positions in the instruction array of this block's first instruction
+   * and of the instruction just past its last, as originally laid out.
+   */
+  private int startIdx;
+  private int endIdx;
+  
+  /**
+   * The blocks control may pass to once this block has finished executing.
+   */
+  private LinkedList<BasicBlock> succs;
+  
+  /**
+   * The blocks from which control may pass to this block.
+   */
+  private LinkedList<BasicBlock> preds;
+  
+  /**
+   * The definitions generated by this block (reaching its bottom), the
+   * definitions killed by it, and the definitions reaching its top and bottom.
+   */
+  private BitSet genMask;
+  private BitSet killMask;
+  private BitSet inMask;
+  private BitSet outMask;
+  
   public BasicBlock(LinkedList<ThreeAddress> blkAdds)
   {
     this.blkAdds = blkAdds;
+    
+    succs = new LinkedList<BasicBlock>();
+    preds = new LinkedList<BasicBlock>();
   }
   
   public LinkedList<ThreeAddress> getBlkAdds()
@@ -32,35 +70,158 @@ public class BasicBlock
     return blkAdds;
   }
   
+  public int getNum()
+  {
+    return num;
+  }
+  
+  public void setNum(int num)
+  {
+    this.num = num;
+  }
+  
+  public int getStartIdx()
+  {
+    return startIdx;
+  }
+  
+  public int getEndIdx()
+  {
+    return endIdx;
+  }
+  
+  public void setRange(int startIdx, int endIdx)
+  {
+    this.startIdx = startIdx;
+    this.endIdx = endIdx;
+  }
+  
+  public LinkedList<BasicBlock> getSuccs()
+  {
+    return succs;
+  }
+  
+  public LinkedList<BasicBlock> getPreds()
+  {
+    return preds;
+  }
+  
+  public BitSet getInMask()
+  {
+    return inMask;
+  }
+  
+  public void setInMask(BitSet inMask)
+  {
+    this.inMask = inMask;
+  }
+  
+  public BitSet getOutMask()
+  {
+    return outMask;
+  }
+  
   /**
-   * Compute the reaching definition bit vector mask for each of our
-   * instructions, starting from the bit vector prev.
-   * @param prev - Our bit vector of reaching definitions, acts as our starting
-   * point (since we perform only local optimization, not global optimization,
-   * prev is always a bit vector of 0s).
+   * Get the label at the top of this block, if the block begins with one.
+   * @return The label at the top of this block, or null if there is none.
+   */
+  public String getLabel()
+  {
+    if (blkAdds.isEmpty() || !blkAdds.getFirst().isLabel())
+    {
+      return null;
+    }
+    
+    return ((Label) blkAdds.getFirst()).getLabel();
+  }
+  
+  /**
+   * Add an edge in the control flow graph from this block to blk.
+   * @param blk - The block control may pass to from this block.
+   */
+  public void addSucc(BasicBlock blk)
+  {
+    if (!succs.contains(blk))
+    {
+      succs.add(blk);
+      blk.preds.add(this);
+    }
+  }
+  
+  /**
+   * Compute the definitions generated and killed by this block.  Each
+   * definition kills every other definition of the same variable, and a store
+   * through a pointer kills every definition of every user-defined variable
+   * in its alias class (generating their unknown definitions in their place),
+   * since we know nothing more of what it points to than its type.
    * @param dm - Our map of reaching definitions of each variable.
    */
-  public void computeDefMask(BitSet prev, DefMap dm)
+  public void computeGenKill(DefMap dm)
   {
-    BitSet cur = prev;
+    genMask = new BitSet();
+    killMask = new BitSet();
     
     for (ThreeAddress a : blkAdds)
     {
-      a.computeOutMask(cur, dm);
-      cur = a.getOutMask();
+      if (a.isPointerStore())
+      {
+        BitSet classMask = dm.getClassMask(a.getStoreClass());
+        
+        if (classMask != null)
+        {
+          killMask.or(classMask);
+          genMask.andNot(classMask);
+          genMask.or(dm.getClassUnknown(a.getStoreClass()));
+        }
+      }
+      
+      // Only definitions of global variables matter outside of the block.
+      
+      Var def = a.getDef();
+      int bit = dm.getDefBit(a.getIdx());
+      
+      if (def != null && bit != -1)
+      {
+        int start = dm.getStartBit(def);
+        int end = dm.getEndBit(def);
+        
+        killMask.set(start, end);
+        genMask.clear(start, end);
+        genMask.set(bit);
+      }
+    }
+  }
+  
+  /**
+   * Compute the definitions reaching the bottom of this block from those
+   * reaching its top.
+   * @return True if the definitions reaching the bottom of this block have
+   * changed, false otherwise.
+   */
+  public boolean computeOutMask()
+  {
+    BitSet out = (BitSet) inMask.clone();
+    out.andNot(killMask);
+    out.or(genMask);
+    
+    if (out.equals(outMask))
+    {
+      return false;
     }
+    
+    outMask = out;
+    return true;
   }
   
   /**
-   * Perform a single round of optimization on this block, counting the total
-   * number of optimizations performed along the way.
+   * Remove each instruction in this block assigning to a temporary which is
+   * never used.
    * @param ct - A count of the number of times each variable is used in the
    * code.
-   * @param dm - The table of reaching definitions for each variable.
    * @param instArr - The array of instructions.
-   * @return The number of optimizations performed.
+   * @return The number of instructions removed.
    */
-  public int optimize(VarCounter ct, DefMap dm, ThreeAddress [] instArr)
+  public int removeDeadCode(VarCounter ct, ThreeAddress [] instArr)
   {
     int numOpts = 0;
     
@@ -72,15 +233,51 @@ public class BasicBlock
       
       if (a.isDeadCode(ct))
       {
-        // Delete the instruction from our block.
-        
         numOpts++;
         a.subUseCount(ct);
+        instArr[a.getIdx()] = null;
         it.remove();
       }
-      else if (a.propagate(ct, dm, instArr))
+    }
+    
+    return numOpts;
+  }
+  
+  /**
+   * Perform a single round of propagation, folding and algebraic
+   * simplification on this block, counting the total number of optimizations
+   * performed along the way.  Instructions are never removed here for being
+   * dead, so that every definition other blocks may look up this round is
+   * still in place.
+   * @param ct - A count of the number of times each variable is used in the
+   * code.
+   * @param dm - The table of reaching definitions for each variable.
+   * @param instArr - The array of instructions.
+   * @param changed - The list to which we add the variable defined by each
+   * instruction we change (or null, if the instruction defines nothing), as
+   * uses of the variable elsewhere may now be optimized further.
+   * @return The number of optimizations performed.
+   */
+  public int optimize(VarCounter ct, DefMap dm, ThreeAddress [] instArr,
+    LinkedList<Var> changed)
+  {
+    int numOpts = 0;
+    
+    dm.enterBlock(inMask, startIdx, endIdx);
+    
+    ValueTable vt = new ValueTable();
+    
+    ListIterator<ThreeAddress> it = blkAdds.listIterator();
+    
+    while (it.hasNext())
+    {
+      ThreeAddress a = it.next();
+      ThreeAddress cur = a;
+      
+      if (a.propagate(ct, dm, instArr))
       {
         numOpts++;
+        changed.add(a.getDef());
       }
       
       // Attempt more radical transformations, which may give us another
@@ -98,6 +295,7 @@ public class BasicBlock
         // gotten rid of this statement entirely.
         
         numOpts++;
+        changed.add(a.getDef());
         
         if (fa != null)
         {
@@ -105,14 +303,14 @@ public class BasicBlock
           
           instArr[a.getIdx()] = fa;
           fa.setIdx(a.getIdx());
-          fa.setInMask(a.getInMask());
-          fa.setOutMask(a.getOutMask());
         }
         else
         {
           instArr[a.getIdx()] = null;
           it.remove();
         }
+        
+        cur = fa;
       }
       else
       {
@@ -123,14 +321,49 @@ public class BasicBlock
         if (a != alg)
         {
           numOpts++;
+          changed.add(a.getDef());
           it.set(alg);
           
           instArr[a.getIdx()] = alg;
           alg.setIdx(a.getIdx());
-          alg.setInMask(a.getInMask());
-          alg.setOutMask(a.getOutMask());
+          
+          cur = alg;
         }
       }
+      
+      if (cur == null)
+      {
+        continue;
+      }
+      
+      // Finally, if this instruction computes a value we already have in some
+      // variable (or, for a load of a value just stored, as a constant), just
+      // copy that instead.
+      
+      ValueTable.Key key = cur.getValueKey(vt);
+      Result holder = key == null ? null : vt.lookup(key, cur.getDef());
+      
+      if (holder != null)
+      {
+        Assign copy = new Assign(cur.getDef(), holder);
+        
+        cur.subUseCount(ct);
+        copy.addUseCount(ct);
+        
+        it.set(copy);
+        
+        instArr[cur.getIdx()] = copy;
+        copy.setIdx(cur.getIdx());
+        
+        numOpts++;
+        changed.add(cur.getDef());
+        
+        cur = copy;
+        key = null;
+      }
+      
+      vt.passInst(cur, key);
+      dm.passInst(cur);
     }
     
     return numOpts;
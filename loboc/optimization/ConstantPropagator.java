@@ -0,0 +1,525 @@
+package optimization;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+import threeaddress.Assign;
+import threeaddress.CondGoto;
+import threeaddress.ConstMap;
+import threeaddress.Goto;
+import threeaddress.Imm;
+import threeaddress.Phi;
+import threeaddress.Result;
+import threeaddress.ThreeAddress;
+import threeaddress.Var;
+
+/**
+ * ConstantPropagator.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Sparse conditional constant propagation (Wegman and Zadeck) over code in
+ * SSA form.  Each version of each variable starts out unknown (TOP), and is
+ * lowered to a constant or to BOTTOM (not a constant) as we learn more.  At
+ * the same time, we only look at blocks once some edge into them is found to
+ * be executable, and a conditional goto whose condition is a constant only
+ * makes one of its edges executable.  Phis only merge the values arriving
+ * along executable edges, so constants survive through branches that can
+ * never be taken.
+ *
+ * Once we've settled, every instruction assigning a constant is replaced by
+ * an assignment of that constant (for the ordinary optimizer to propagate
+ * further), every branch on a constant is resolved, and the blocks never
+ * found to be executable are emptied out.
+ */
+public class ConstantPropagator
+{
+  private static final int TOP = 0;
+  private static final int CONST = 1;
+  private static final int BOTTOM = 2;
+  
+  private SSAForm ssa;
+  private BasicBlock [] blockArr;
+  
+  /**
+   * The lattice value of each version of each variable, and its constant
+   * value, if it has one.
+   */
+  private int [] state;
+  private int [] value;
+  
+  /**
+   * The instructions using each version, and the block holding each
+   * instruction (by position).
+   */
+  private ArrayList<LinkedList<ThreeAddress>> uses;
+  private BasicBlock [] blockOf;
+  
+  /**
+   * Whether or not each block, and each edge into each block (in the order of
+   * the block's predecessors), has been found to be executable.
+   */
+  private boolean [] execBlock;
+  private boolean [][] execEdge;
+  
+  /**
+   * The edges newly found to be executable, as pairs of blocks, and the
+   * instructions whose operands have changed.
+   */
+  private LinkedList<BasicBlock []> flowWork;
+  private LinkedList<ThreeAddress> ssaWork;
+  
+  private ConstMap consts;
+  
+  public ConstantPropagator(SSAForm ssa)
+  {
+    this.ssa = ssa;
+    
+    consts = new ConstMap()
+    {
+      public Imm getConst(Result r)
+      {
+        if (r.isImm())
+        {
+          return (Imm) r;
+        }
+        
+        if (r.isVar())
+        {
+          int val = ConstantPropagator.this.ssa.getValueNum((Var) r);
+          
+          if (state[val] == CONST)
+          {
+            return new Imm(value[val]);
+          }
+        }
+        
+        return null;
+      }
+    };
+  }
+  
+  /**
+   * Propagate constants through the code and rewrite it accordingly.
+   * @return True if any change was made to the code.
+   */
+  public boolean run()
+  {
+    LinkedList<BasicBlock> blocks = ssa.getBlocks();
+    
+    if (blocks.isEmpty())
+    {
+      return false;
+    }
+    
+    init(blocks);
+    
+    // The entry is always executable.
+    
+    markBlock(blockArr[0]);
+    
+    while (!flowWork.isEmpty() || !ssaWork.isEmpty())
+    {
+      while (!flowWork.isEmpty())
+      {
+        BasicBlock [] edge = flowWork.remove();
+        
+        if (execBlock[edge[1].getNum()])
+        {
+          visitPhis(edge[1]);
+        }
+        else
+        {
+          markBlock(edge[1]);
+        }
+      }
+      
+      while (!ssaWork.isEmpty())
+      {
+        ThreeAddress a = ssaWork.remove();
+        BasicBlock b = blockOf[a.getIdx()];
+        
+        if (!execBlock[b.getNum()])
+        {
+          continue;
+        }
+        
+        if (a instanceof CondGoto)
+        {
+          visitEnd(b);
+        }
+        else
+        {
+          visitInst(a);
+        }
+      }
+    }
+    
+    return rewrite();
+  }
+  
+  /**
+   * Set up our lattice, our def-use chains and our worklists.
+   */
+  private void init(LinkedList<BasicBlock> blocks)
+  {
+    int numValues = ssa.getNumValues();
+    
+    blockArr = blocks.toArray(new BasicBlock [blocks.size()]);
+    
+    state = new int [numValues];
+    value = new int [numValues];
+    uses = new ArrayList<LinkedList<ThreeAddress>>(numValues);
+    
+    for (int i = 0; i < numValues; i++)
+    {
+      // Versions never defined by an instruction - the values held on entry
+      // and the values left by stores through pointers - are unknown.
+      
+      state[i] = BOTTOM;
+      uses.add(new LinkedList<ThreeAddress>());
+    }
+    
+    int numInsts = 0;
+    
+    for (BasicBlock b : blockArr)
+    {
+      numInsts += b.getBlkAdds().size();
+    }
+    
+    blockOf = new BasicBlock [numInsts];
+    execBlock = new boolean [blockArr.length];
+    execEdge = new boolean [blockArr.length][];
+    
+    LinkedList<Result> rs = new LinkedList<Result>();
+    
+    for (BasicBlock b : blockArr)
+    {
+      execEdge[b.getNum()] = new boolean [b.getPreds().size()];
+      
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        blockOf[a.getIdx()] = b;
+        
+        Var def = a.getDef();
+        
+        if (def != null)
+        {
+          state[ssa.getValueNum(def)] = TOP;
+        }
+        
+        rs.clear();
+        a.getUses(rs);
+        
+        for (Result r : rs)
+        {
+          Var v = r.getUseVar();
+          
+          if (v != null)
+          {
+            LinkedList<ThreeAddress> vUses = uses.get(ssa.getValueNum(v));
+            
+            if (vUses.isEmpty() || vUses.getLast() != a)
+            {
+              vUses.add(a);
+            }
+          }
+        }
+      }
+    }
+    
+    flowWork = new LinkedList<BasicBlock []>();
+    ssaWork = new LinkedList<ThreeAddress>();
+  }
+  
+  /**
+   * Mark a block as executable for the first time, evaluating everything in
+   * it.
+   */
+  private void markBlock(BasicBlock b)
+  {
+    execBlock[b.getNum()] = true;
+    
+    for (ThreeAddress a : b.getBlkAdds())
+    {
+      visitInst(a);
+    }
+    
+    visitEnd(b);
+  }
+  
+  /**
+   * Mark the edge from p to s as executable, queueing it up if it's new.
+   */
+  private void markEdge(BasicBlock p, BasicBlock s)
+  {
+    int j = s.getPreds().indexOf(p);
+    
+    if (!execEdge[s.getNum()][j])
+    {
+      execEdge[s.getNum()][j] = true;
+      flowWork.add(new BasicBlock [] {p, s});
+    }
+  }
+  
+  /**
+   * Re-evaluate the phis of a block, after a new edge into it was found to be
+   * executable.
+   */
+  private void visitPhis(BasicBlock b)
+  {
+    for (ThreeAddress a : b.getBlkAdds())
+    {
+      if (a instanceof Phi)
+      {
+        visitInst(a);
+      }
+      else if (!a.isLabel())
+      {
+        break;
+      }
+    }
+  }
+  
+  /**
+   * Find the edges leaving the block which are executable, given what we
+   * know about the condition of its branch (if any).
+   */
+  private void visitEnd(BasicBlock b)
+  {
+    LinkedList<ThreeAddress> adds = b.getBlkAdds();
+    ThreeAddress last = adds.isEmpty() ? null : adds.getLast();
+    
+    if (!(last instanceof CondGoto))
+    {
+      for (BasicBlock s : b.getSuccs())
+      {
+        markEdge(b, s);
+      }
+      
+      return;
+    }
+    
+    CondGoto cg = (CondGoto) last;
+    Result cond = cg.getCond();
+    
+    if (cond.isVar() && state[ssa.getValueNum((Var) cond)] == TOP)
+    {
+      return;
+    }
+    
+    Imm c = consts.getConst(cond);
+    
+    for (BasicBlock s : b.getSuccs())
+    {
+      if (c == null || isTarget(cg, s) == cg.isTaken(c.getBits())
+        || b.getSuccs().size() == 1)
+      {
+        markEdge(b, s);
+      }
+    }
+  }
+  
+  /**
+   * Determine whether or not the block is the one a conditional goto jumps
+   * to (as opposed to the one it falls through to).
+   */
+  private boolean isTarget(CondGoto cg, BasicBlock s)
+  {
+    return cg.getJumpLabel().equals(s.getLabel());
+  }
+  
+  /**
+   * Evaluate an instruction, lowering the value of the version it defines if
+   * we've learned something new.
+   */
+  private void visitInst(ThreeAddress a)
+  {
+    Var def = a.getDef();
+    
+    if (def == null)
+    {
+      return;
+    }
+    
+    int val = ssa.getValueNum(def);
+    
+    if (state[val] == BOTTOM)
+    {
+      return;
+    }
+    
+    int newState;
+    int newValue = 0;
+    
+    if (a instanceof Phi)
+    {
+      // Merge the values along each executable edge.
+      
+      Phi phi = (Phi) a;
+      BasicBlock b = blockOf[a.getIdx()];
+      
+      newState = TOP;
+      
+      for (int j = 0; j < phi.getNumArgs() && newState != BOTTOM; j++)
+      {
+        if (!execEdge[b.getNum()][j])
+        {
+          continue;
+        }
+        
+        Result arg = phi.getArg(j);
+        
+        if (arg.isVar() && state[ssa.getValueNum((Var) arg)] == TOP)
+        {
+          continue;
+        }
+        
+        Imm c = consts.getConst(arg);
+        
+        if (c == null || (newState == CONST && newValue != c.getBits()))
+        {
+          newState = BOTTOM;
+        }
+        else
+        {
+          newState = CONST;
+          newValue = c.getBits();
+        }
+      }
+    }
+    else
+    {
+      // We wait until all of our operands are known before evaluating.
+      
+      LinkedList<Result> rs = new LinkedList<Result>();
+      a.getUses(rs);
+      
+      for (Result r : rs)
+      {
+        Var v = r.getUseVar();
+        
+        if (v != null && state[ssa.getValueNum(v)] == TOP)
+        {
+          return;
+        }
+      }
+      
+      Imm c = a.evaluate(consts);
+      
+      if (c == null)
+      {
+        newState = BOTTOM;
+      }
+      else
+      {
+        newState = CONST;
+        newValue = c.getBits();
+      }
+    }
+    
+    if (newState == state[val] && (newState != CONST || newValue == value[val]))
+    {
+      return;
+    }
+    
+    if (state[val] == CONST && newState == CONST)
+    {
+      newState = BOTTOM;
+    }
+    
+    state[val] = newState;
+    value[val] = newValue;
+    
+    ssaWork.addAll(uses.get(val));
+  }
+  
+  /**
+   * Rewrite the code with what we've learned.
+   * @return True if anything was changed.
+   */
+  private boolean rewrite()
+  {
+    boolean changed = false;
+    
+    for (BasicBlock b : blockArr)
+    {
+      LinkedList<ThreeAddress> adds = b.getBlkAdds();
+      
+      if (!execBlock[b.getNum()])
+      {
+        if (!adds.isEmpty())
+        {
+          adds.clear();
+          changed = true;
+        }
+        
+        continue;
+      }
+      
+      ListIterator<ThreeAddress> it = adds.listIterator();
+      
+      while (it.hasNext())
+      {
+        ThreeAddress a = it.next();
+        Var def = a.getDef();
+        
+        if (def != null && state[ssa.getValueNum(def)] == CONST)
+        {
+          Imm c = new Imm(value[ssa.getValueNum(def)]);
+          Result p = a.getPropResult();
+          
+          if (!(a instanceof Assign) || p == null || !p.isImm())
+          {
+            Assign asg = new Assign(def, c);
+            asg.setIdx(a.getIdx());
+            it.set(asg);
+            changed = true;
+          }
+        }
+        else if (a instanceof Phi)
+        {
+          // Values arriving along edges that are never taken don't matter,
+          // so leave them out.
+          
+          Phi phi = (Phi) a;
+          
+          for (int j = 0; j < phi.getNumArgs(); j++)
+          {
+            if (!execEdge[b.getNum()][j])
+            {
+              phi.setArg(j, def);
+            }
+          }
+        }
+        else if (a instanceof CondGoto)
+        {
+          Imm c = consts.getConst(((CondGoto) a).getCond());
+          
+          if (c != null)
+          {
+            CondGoto cg = (CondGoto) a;
+            
+            if (cg.isTaken(c.getBits()))
+            {
+              Goto g = new Goto(cg.getJumpLabel());
+              g.setIdx(a.getIdx());
+              it.set(g);
+            }
+            else
+            {
+              it.remove();
+            }
+            
+            changed = true;
+          }
+        }
+      }
+    }
+    
+    return changed;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,278 @@
+package optimization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+import threeaddress.CondGoto;
+import threeaddress.Goto;
+import threeaddress.Label;
+import threeaddress.ThreeAddress;
+
+/**
+ * ControlFlowSimplifier.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Tidies up the control flow of a list of three address code instructions.
+ * Blocks which can never be reached are removed, jumps to jumps are sent
+ * straight to the final target, jumps to the very next instruction are
+ * removed (and a conditional jump over a goto becomes the opposite
+ * conditional jump to the goto's target), and labels no longer jumped to
+ * are removed, merging the blocks on either side.  None of this touches the
+ * instructions computing anything, so the use counts and definitions the
+ * optimizer works with are left alone - but the positions of instructions
+ * change, so the optimizer must start over afterward.
+ */
+public class ControlFlowSimplifier
+{
+  private LinkedList<ThreeAddress> addresses;
+  
+  public ControlFlowSimplifier(LinkedList<ThreeAddress> addresses)
+  {
+    this.addresses = addresses;
+  }
+  
+  public LinkedList<ThreeAddress> getAddresses()
+  {
+    return addresses;
+  }
+  
+  /**
+   * Simplify the control flow of our instructions until there's nothing left
+   * to simplify.
+   * @return True if any change was made to the code.
+   */
+  public boolean run()
+  {
+    boolean changed = false;
+    boolean progress = true;
+    
+    while (progress)
+    {
+      progress = removeUnreachable();
+      progress |= threadJumps();
+      progress |= removeJumpsToNext();
+      progress |= removeUnusedLabels();
+      
+      changed |= progress;
+    }
+    
+    return changed;
+  }
+  
+  /**
+   * Remove every block which can't be reached from the first.
+   * @return True if any block was removed.
+   */
+  private boolean removeUnreachable()
+  {
+    LinkedList<BasicBlock> blks = OptimizerUtils.getBlocks(addresses);
+    
+    if (blks.isEmpty())
+    {
+      return false;
+    }
+    
+    OptimizerUtils.linkBlocks(blks);
+    
+    boolean [] reached = new boolean [blks.size()];
+    LinkedList<BasicBlock> stack = new LinkedList<BasicBlock>();
+    
+    reached[0] = true;
+    stack.push(blks.getFirst());
+    
+    while (!stack.isEmpty())
+    {
+      for (BasicBlock s : stack.pop().getSuccs())
+      {
+        if (!reached[s.getNum()])
+        {
+          reached[s.getNum()] = true;
+          stack.push(s);
+        }
+      }
+    }
+    
+    LinkedList<ThreeAddress> result = new LinkedList<ThreeAddress>();
+    boolean removed = false;
+    
+    for (BasicBlock b : blks)
+    {
+      if (reached[b.getNum()])
+      {
+        result.addAll(b.getBlkAdds());
+      }
+      else
+      {
+        removed = true;
+      }
+    }
+    
+    addresses = result;
+    
+    return removed;
+  }
+  
+  /**
+   * Send each jump to a label followed only by a goto (possibly after more
+   * labels) on to the goto's target instead.
+   * @return True if any jump was changed.
+   */
+  private boolean threadJumps()
+  {
+    ArrayList<ThreeAddress> arr = new ArrayList<ThreeAddress>(addresses);
+    HashMap<String, Integer> labelPos = new HashMap<String, Integer>();
+    
+    for (int i = 0; i < arr.size(); i++)
+    {
+      if (arr.get(i).isLabel())
+      {
+        labelPos.put(((Label) arr.get(i)).getLabel(), i);
+      }
+    }
+    
+    boolean changed = false;
+    
+    for (ThreeAddress a : arr)
+    {
+      String label = a.getJumpLabel();
+      
+      if (label == null)
+      {
+        continue;
+      }
+      
+      // Follow the chain of gotos, watching out for any loop of them.
+      
+      HashSet<String> seen = new HashSet<String>();
+      String target = label;
+      
+      while (seen.add(target))
+      {
+        int i = labelPos.get(target);
+        
+        while (i < arr.size() && arr.get(i).isLabel())
+        {
+          i++;
+        }
+        
+        if (i == arr.size() || !(arr.get(i) instanceof Goto))
+        {
+          break;
+        }
+        
+        target = arr.get(i).getJumpLabel();
+      }
+      
+      if (!target.equals(label))
+      {
+        a.setJumpLabel(target);
+        changed = true;
+      }
+    }
+    
+    return changed;
+  }
+  
+  /**
+   * Remove each jump to a label directly following it, and turn each
+   * conditional jump over a goto into a jump to the goto's target, taken
+   * when the original jump wouldn't have been.
+   * @return True if any jump was removed.
+   */
+  private boolean removeJumpsToNext()
+  {
+    ArrayList<ThreeAddress> arr = new ArrayList<ThreeAddress>(addresses);
+    LinkedList<ThreeAddress> result = new LinkedList<ThreeAddress>();
+    boolean changed = false;
+    
+    for (int i = 0; i < arr.size(); i++)
+    {
+      ThreeAddress a = arr.get(i);
+      String label = a.getJumpLabel();
+      
+      if (label != null && isFollowedBy(arr, i, label))
+      {
+        changed = true;
+        continue;
+      }
+      
+      // A conditional jump over a goto.
+      
+      if (a instanceof CondGoto && i + 1 < arr.size()
+        && arr.get(i + 1) instanceof Goto && isFollowedBy(arr, i + 1, label))
+      {
+        result.add(((CondGoto) a).invert(arr.get(i + 1).getJumpLabel()));
+        changed = true;
+        i++;
+        continue;
+      }
+      
+      result.add(a);
+    }
+    
+    addresses = result;
+    
+    return changed;
+  }
+  
+  /**
+   * Determine whether or not the given label follows the given instruction,
+   * with nothing but labels in between.
+   * @param arr - The instructions.
+   * @param i - The position of the instruction.
+   * @param label - The label.
+   * @return True if the label follows.
+   */
+  private boolean isFollowedBy(ArrayList<ThreeAddress> arr, int i,
+    String label)
+  {
+    for (int j = i + 1; j < arr.size() && arr.get(j).isLabel(); j++)
+    {
+      if (((Label) arr.get(j)).getLabel().equals(label))
+      {
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  /**
+   * Remove each label which no jump targets.
+   * @return True if any label was removed.
+   */
+  private boolean removeUnusedLabels()
+  {
+    HashSet<String> targets = new HashSet<String>();
+    
+    for (ThreeAddress a : addresses)
+    {
+      if (a.getJumpLabel() != null)
+      {
+        targets.add(a.getJumpLabel());
+      }
+    }
+    
+    boolean changed = false;
+    ListIterator<ThreeAddress> it = addresses.listIterator();
+    
+    while (it.hasNext())
+    {
+      ThreeAddress a = it.next();
+      
+      if (a.isLabel() && !targets.contains(((Label) a).getLabel()))
+      {
+        it.remove();
+        changed = true;
+      }
+    }
+    
+    return changed;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,302 @@
+package optimization;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import threeaddress.Result;
+import threeaddress.ThreeAddress;
+import threeaddress.Var;
+
+/**
+ * DeadStoreEliminator.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ * 
+ * Removes each assignment to a temporary which is never read before the
+ * temporary is assigned again or the program returns.  The optimizer's own
+ * dead code removal only catches temporaries which are never read anywhere,
+ * which misses every assignment overwritten by a later one - and, since
+ * user-defined variables whose addresses are never taken are promoted to
+ * temporaries, most of the assignments the program itself makes.
+ * 
+ * We find the temporaries live at the bottom of each block by the usual
+ * backward analysis over the control flow graph, then walk each block from
+ * the bottom up, removing the assignments to temporaries which aren't live.
+ * A read only makes a temporary live if the instruction making it is live
+ * itself, so that chains (and cycles) of assignments feeding only each other
+ * go all at once.  Variables whose addresses are taken are left alone, as
+ * they may be read through pointers we know nothing about.
+ * 
+ * Only the temporaries read in some block before being assigned there can be
+ * live across blocks, so only those are given bits in the sets we carry
+ * between blocks - the rest are tracked within the walk of their block.
+ */
+public class DeadStoreEliminator
+{
+  private LinkedList<BasicBlock> blks;
+  private VarCounter ct;
+  private ThreeAddress [] instArr;
+  
+  /**
+   * The position of each temporary which may be live across blocks in our
+   * sets, or -1 for those which can't.
+   */
+  private int [] globalIdx;
+  
+  /**
+   * For each temporary live only within its block, the number of the walk in
+   * which it was last found to be read below the current instruction.
+   */
+  private int [] readIn;
+  private int walkNum;
+  
+  /**
+   * Set up the removal of dead assignments from the given blocks.
+   * @param blks - The blocks, linked into a control flow graph.
+   * @param tempCount - The number of temporaries in the code.
+   * @param ct - The counter to take the uses of removed instructions from.
+   * @param instArr - The array of instructions, in which removed instructions
+   * are cleared.
+   */
+  public DeadStoreEliminator(LinkedList<BasicBlock> blks, int tempCount,
+    VarCounter ct, ThreeAddress [] instArr)
+  {
+    this.blks = blks;
+    this.ct = ct;
+    this.instArr = instArr;
+    
+    globalIdx = new int [tempCount];
+    readIn = new int [tempCount];
+  }
+  
+  /**
+   * Remove the dead assignments from our blocks.
+   * @param changed - The set to which the number of each block changed is
+   * added.
+   * @return True if anything was removed.
+   */
+  public boolean run(BitSet changed)
+  {
+    if (blks.isEmpty())
+    {
+      return false;
+    }
+    
+    BitSet [] liveIn = findLiveIn();
+    BitSet live = new BitSet();
+    boolean removed = false;
+    
+    for (BasicBlock b : blks)
+    {
+      getLiveOut(b, liveIn, live);
+      
+      if (walk(b, live, true))
+      {
+        changed.set(b.getNum());
+        removed = true;
+      }
+    }
+    
+    return removed;
+  }
+  
+  /**
+   * Number the temporaries read in some block before being assigned there,
+   * as findGlobals does for the optimizer, returning how many there are.
+   * @return The number of such temporaries.
+   */
+  private int numberGlobals()
+  {
+    // Mark each temporary with the last block it was assigned in (offset by
+    // one, so that the array starts out meaning none), so that we don't need
+    // to clear anything between blocks.
+    
+    int [] killedIn = new int [globalIdx.length];
+    int numGlobals = 0;
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    Arrays.fill(globalIdx, -1);
+    
+    for (BasicBlock b : blks)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        uses.clear();
+        a.getUses(uses);
+        
+        for (Result r : uses)
+        {
+          Var v = r.getUseVar();
+          
+          if (v != null && v.isTemp() && globalIdx[v.getVarNum()] == -1
+            && killedIn[v.getVarNum()] != b.getNum() + 1)
+          {
+            globalIdx[v.getVarNum()] = numGlobals++;
+          }
+        }
+        
+        Var def = a.getDef();
+        
+        if (def != null && def.isTemp())
+        {
+          killedIn[def.getVarNum()] = b.getNum() + 1;
+        }
+      }
+    }
+    
+    return numGlobals;
+  }
+  
+  /**
+   * Find the temporaries which may be read on some path from the top of each
+   * block before they are assigned, by a worklist over the blocks - a block
+   * is walked again only once the set at the top of one of its successors
+   * has grown.
+   * @return The sets of the positions of the temporaries live at the top of
+   * each block, by block number.
+   */
+  private BitSet [] findLiveIn()
+  {
+    int n = blks.size();
+    int numGlobals = numberGlobals();
+    BitSet [] liveIn = new BitSet [n];
+    BasicBlock [] blkArr = blks.toArray(new BasicBlock [n]);
+    BitSet queued = new BitSet();
+    LinkedList<BasicBlock> work = new LinkedList<BasicBlock>();
+    
+    for (int i = n - 1; i >= 0; i--)
+    {
+      liveIn[i] = new BitSet(numGlobals);
+      queued.set(i);
+      work.add(blkArr[i]);
+    }
+    
+    BitSet live = new BitSet(numGlobals);
+    
+    while (!work.isEmpty())
+    {
+      BasicBlock b = work.removeFirst();
+      queued.clear(b.getNum());
+      
+      getLiveOut(b, liveIn, live);
+      walk(b, live, false);
+      
+      // The sets only ever grow, so any change adds to them.
+      
+      if (live.equals(liveIn[b.getNum()]))
+      {
+        continue;
+      }
+      
+      liveIn[b.getNum()].or(live);
+      
+      for (BasicBlock p : b.getPreds())
+      {
+        if (!queued.get(p.getNum()))
+        {
+          queued.set(p.getNum());
+          work.add(p);
+        }
+      }
+    }
+    
+    return liveIn;
+  }
+  
+  /**
+   * Find the temporaries live at the bottom of a block.
+   * @param b - The block.
+   * @param liveIn - The temporaries live at the top of each block.
+   * @param live - The set to put them in.
+   */
+  private void getLiveOut(BasicBlock b, BitSet [] liveIn, BitSet live)
+  {
+    live.clear();
+    
+    for (BasicBlock s : b.getSuccs())
+    {
+      live.or(liveIn[s.getNum()]);
+    }
+  }
+  
+  /**
+   * Walk a block from the bottom up, turning the set of temporaries live at
+   * its bottom into those live at its top.  An instruction assigning a
+   * temporary which isn't live is dead, and reads nothing.
+   * @param b - The block.
+   * @param live - The temporaries live at the bottom of the block, replaced
+   * by those live at the top.
+   * @param remove - Whether to remove the dead instructions as we go.
+   * @return True if anything was removed.
+   */
+  private boolean walk(BasicBlock b, BitSet live, boolean remove)
+  {
+    walkNum++;
+    
+    boolean removed = false;
+    LinkedList<Result> uses = new LinkedList<Result>();
+    Iterator<ThreeAddress> it = b.getBlkAdds().descendingIterator();
+    
+    while (it.hasNext())
+    {
+      ThreeAddress a = it.next();
+      Var def = a.getDef();
+      
+      if (def != null && def.isTemp())
+      {
+        int num = def.getVarNum();
+        int idx = globalIdx[num];
+        
+        if (idx == -1 ? readIn[num] != walkNum : !live.get(idx))
+        {
+          if (remove)
+          {
+            a.subUseCount(ct);
+            instArr[a.getIdx()] = null;
+            it.remove();
+            removed = true;
+          }
+          
+          continue;
+        }
+        
+        if (idx == -1)
+        {
+          readIn[num] = 0;
+        }
+        else
+        {
+          live.clear(idx);
+        }
+      }
+      
+      uses.clear();
+      a.getUses(uses);
+      
+      for (Result r : uses)
+      {
+        Var v = r.getUseVar();
+        
+        if (v != null && v.isTemp())
+        {
+          int idx = globalIdx[v.getVarNum()];
+          
+          if (idx == -1)
+          {
+            readIn[v.getVarNum()] = walkNum;
+          }
+          else
+          {
+            live.set(idx);
+          }
+        }
+      }
+    }
+    
+    return removed;
+  }
+}
\ No newline at end of file
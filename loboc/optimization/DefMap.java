@@ -1,8 +1,12 @@
 package optimization;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
 
+import threeaddress.Result;
+import threeaddress.ThreeAddress;
 import threeaddress.Var;
 
 /**
@@ -13,149 +17,603 @@ import threeaddress.Var;
  * @author Brendan Donohoe
  *
  * Basically our second symbol table for the optimization process.  This
- * includes a bit vector for each variable denoting the locations at which each
- * variable is defined, which are stored in separate arrays for user-defined
- * and temporary variables.
+ * numbers the definitions of each variable with bits in our reaching
+ * definition bit vectors.  The definitions of each variable are given a
+ * contiguous range of bits, so that we can find or kill every definition of a
+ * variable in a bit vector directly, without building a bit vector for each
+ * variable.  User-defined variables come first, so that the definitions of
+ * all user-defined variables form one range as well.  Everything is kept in
+ * arrays indexed by variable number, separately for user-defined and
+ * temporary variables.
+ *
+ * Only definitions of global variables - variables read in some block before
+ * being assigned in that block - are given bits, since only they can be
+ * looked up at the top of a block.  Each user-defined variable also has one
+ * bit (the first in its range) standing for an unknown definition of that
+ * variable - the value it held on entry to the program, or a value it may have
+ * been given by a store through a pointer.
+ *
+ * We also keep track of the optimizer's position as it passes through each
+ * basic block - the last definition of each variable seen so far in the block,
+ * and the stores through pointers - so that we can find the definitions
+ * reaching the instruction being optimized without storing a bit vector for
+ * every instruction.  The optimizer may work on several blocks at once, each
+ * with its own copy of this position sharing everything else.
+ *
+ * While blocks are being optimized together, instructions outside of the
+ * current block may be rewritten by another thread, so we answer questions
+ * about them from a snapshot of the instructions taken between rounds.
  */
 public class DefMap
 {
-  private int setSize;
-  private HashMap<Integer, BitSet> defMapU;
-  private HashMap<Integer, BitSet> defMapT;
+  /**
+   * Whether or not each temporary and user-defined variable is global.
+   */
+  private boolean [] globalT;
+  private boolean [] globalU;
+  
+  /**
+   * The first bit in the range of each temporary and user-defined variable.
+   * The range of variable k ends where the range of variable k + 1 begins.
+   * Before the ranges are computed, these hold the number of definitions of
+   * each variable.
+   */
+  private int [] startT;
+  private int [] startU;
+  
+  /**
+   * The next bit to hand out to a definition of each variable.
+   */
+  private int [] nextT;
+  private int [] nextU;
+  
+  /**
+   * The bit given to the definition at each position in the code (or -1 if
+   * it has none), and the position of the definition given each bit (or -1
+   * if the bit stands for an unknown definition).
+   */
+  private int [] idxToBit;
+  private int [] bitToIdx;
+  
+  /**
+   * The number of bits belonging to user-defined variables.
+   */
+  private int numUserBits;
+  
+  /**
+   * Mask of the unknown definitions of all of our user-defined variables.
+   */
+  private BitSet maskUnknown;
+  
+  /**
+   * The alias class of each user-defined variable, and for each alias class,
+   * the mask of every bit belonging to the user-defined variables in it and
+   * the mask of their unknown definitions - those a store through a pointer
+   * of that class kills and generates.
+   */
+  private int [] userClass;
+  private HashMap<Integer, BitSet> classMasks;
+  private HashMap<Integer, BitSet> classUnknown;
+  
+  /**
+   * The result each instruction would propagate and the definition of that
+   * result reaching it, as of the last snapshot, or null if no snapshot has
+   * been taken.
+   */
+  private Result [] snapProp;
+  private int [] snapSrcDef;
+  
+  /**
+   * The range of positions belonging to the current block, whose instructions
+   * are read directly rather than from the snapshot.
+   */
+  private int blkStart;
+  private int blkEnd;
+  
+  /**
+   * The definitions reaching the top of the current block.
+   */
+  private BitSet blkIn;
+  
+  /**
+   * The last definition of each temporary and user-defined variable seen in
+   * the current block, valid only if the matching stamp equals curStamp.
+   */
+  private int [] lastDefT;
+  private int [] lastDefU;
+  private int [] stampT;
+  private int [] stampU;
+  private int curStamp;
   
   /**
-   * Mask of definitions for our user-defined variables only.  Can use to
-   * filter either user variable definitions (by ANDing) or temp variable
-   * definitions (by XORing).
+   * The stores through pointers seen so far in the current block, in order.
    */
-  private BitSet maskU;
+  private ArrayList<ThreeAddress> blkStores;
   
-  public DefMap(int setSize)
+  public DefMap(int numInsts, int tempCount, int userCount)
   {
-    this.setSize = setSize;
+    globalT = new boolean [tempCount];
+    globalU = new boolean [userCount];
+    
+    startT = new int [tempCount + 1];
+    startU = new int [userCount + 1];
+    nextT = new int [tempCount];
+    nextU = new int [userCount];
+    
+    idxToBit = new int [numInsts];
+    bitToIdx = new int [numInsts + userCount];
+    Arrays.fill(idxToBit, -1);
+    
+    userClass = new int [userCount];
+    Arrays.fill(userClass, -1);
     
-    defMapU = new HashMap<Integer, BitSet>();
-    defMapT = new HashMap<Integer, BitSet>();
+    lastDefT = new int [tempCount];
+    lastDefU = new int [userCount];
+    stampT = new int [tempCount];
+    stampU = new int [userCount];
+    curStamp = 0;
+  }
+  
+  /**
+   * Create a map sharing the definitions of the given map, but with its own
+   * position in the code, so that it can be used alongside the original.
+   * @param dm - The map to be shared.
+   */
+  public DefMap(DefMap dm)
+  {
+    globalT = dm.globalT;
+    globalU = dm.globalU;
+    startT = dm.startT;
+    startU = dm.startU;
+    nextT = dm.nextT;
+    nextU = dm.nextU;
+    idxToBit = dm.idxToBit;
+    bitToIdx = dm.bitToIdx;
+    numUserBits = dm.numUserBits;
+    maskUnknown = dm.maskUnknown;
+    userClass = dm.userClass;
+    classMasks = dm.classMasks;
+    classUnknown = dm.classUnknown;
+    snapProp = dm.snapProp;
+    snapSrcDef = dm.snapSrcDef;
+    
+    lastDefT = new int [globalT.length];
+    lastDefU = new int [globalU.length];
+    stampT = new int [globalT.length];
+    stampU = new int [globalU.length];
+    curStamp = 0;
+  }
+  
+  /**
+   * Get the mask of the unknown definitions of all of our user-defined
+   * variables.  The mask is shared, and must not be modified.
+   * @return The mask of unknown definitions.
+   */
+  public BitSet getMaskUnknown()
+  {
+    return maskUnknown;
+  }
+  
+  /**
+   * Get the mask of every bit belonging to the user-defined variables a store
+   * through a pointer of the given alias class may change.  The mask is
+   * shared, and must not be modified.
+   * @param aliasClass - The alias class of the store.
+   * @return The mask of the variables' bits, or null if there are none.
+   */
+  public BitSet getClassMask(int aliasClass)
+  {
+    return classMasks.get(aliasClass);
   }
   
-  public BitSet getMaskU()
+  /**
+   * Get the mask of the unknown definitions of the user-defined variables a
+   * store through a pointer of the given alias class may change.  The mask is
+   * shared, and must not be modified.
+   * @param aliasClass - The alias class of the store.
+   * @return The mask of unknown definitions, or null if there are none.
+   */
+  public BitSet getClassUnknown(int aliasClass)
+  {
+    return classUnknown.get(aliasClass);
+  }
+  
+  /**
+   * Get the number of bits belonging to user-defined variables - the bits of
+   * every user-defined variable lie below this.
+   * @return The number of bits belonging to user-defined variables.
+   */
+  public int getNumUserBits()
   {
-    return (BitSet) maskU.clone();
+    return numUserBits;
+  }
+  
+  /**
+   * Get the first bit in the range of the given variable.
+   * @param v - The variable.
+   * @return The first bit belonging to v.
+   */
+  public int getStartBit(Var v)
+  {
+    return v.isTemp() ? startT[v.getVarNum()] : startU[v.getVarNum()];
+  }
+  
+  /**
+   * Get the bit just past the end of the range of the given variable.
+   * @param v - The variable.
+   * @return The first bit after those belonging to v.
+   */
+  public int getEndBit(Var v)
+  {
+    return v.isTemp() ? startT[v.getVarNum() + 1] : startU[v.getVarNum() + 1];
+  }
+  
+  /**
+   * Mark the variable as global, so that its definitions are given bits.
+   * @param v - The global variable.
+   */
+  public void setGlobal(Var v)
+  {
+    if (v.isTemp())
+    {
+      globalT[v.getVarNum()] = true;
+    }
+    else
+    {
+      // Only the definitions of global variables reach beyond their blocks,
+      // so only their alias classes matter to the stores killing them.
+      
+      globalU[v.getVarNum()] = true;
+      userClass[v.getVarNum()] = v.getAliasClass();
+    }
   }
   
-  public BitSet getBitSet(Var v)
+  /**
+   * Count a definition of the given variable, if the variable is global.
+   * @param v - The variable being defined.
+   */
+  public void countDef(Var v)
   {
     int varNum = v.getVarNum();
     
-    if (v.isTemp())
+    if (v.isTemp() && globalT[varNum])
+    {
+      startT[varNum]++;
+    }
+    else if (!v.isTemp() && globalU[varNum])
     {
-      BitSet bits = defMapT.get(varNum);
+      startU[varNum]++;
+    }
+  }
+  
+  /**
+   * Once every definition has been counted, lay out the range of bits for
+   * each variable - the unknown definition and counted definitions of each
+   * user-defined variable, followed by the counted definitions of each
+   * temporary.
+   */
+  public void computeRanges()
+  {
+    int bit = 0;
+    
+    maskUnknown = new BitSet();
+    
+    for (int varNum = 0; varNum < globalU.length; varNum++)
+    {
+      int count = startU[varNum];
       
-      if (bits == null)
-      {
-        bits = new BitSet(setSize);
-        defMapT.put(varNum, bits);
-      }
+      startU[varNum] = bit;
+      maskUnknown.set(bit);
+      bitToIdx[bit] = -1;
+      nextU[varNum] = bit + 1;
       
-      return (BitSet) bits.clone();
+      bit += count + 1;
     }
-    else
+    
+    startU[globalU.length] = bit;
+    numUserBits = bit;
+    
+    classMasks = new HashMap<Integer, BitSet>();
+    classUnknown = new HashMap<Integer, BitSet>();
+    
+    for (int varNum = 0; varNum < globalU.length; varNum++)
     {
-      BitSet bits = defMapU.get(varNum);
+      int c = userClass[varNum];
+      
+      if (c == -1)
+      {
+        continue;
+      }
       
-      if (bits == null)
+      if (!classMasks.containsKey(c))
       {
-        bits = new BitSet(setSize);
-        defMapU.put(varNum, bits);
+        classMasks.put(c, new BitSet());
+        classUnknown.put(c, new BitSet());
       }
       
-      return (BitSet) bits.clone();
+      classMasks.get(c).set(startU[varNum], startU[varNum + 1]);
+      classUnknown.get(c).set(startU[varNum]);
     }
+    
+    for (int varNum = 0; varNum < globalT.length; varNum++)
+    {
+      int count = startT[varNum];
+      
+      startT[varNum] = bit;
+      nextT[varNum] = bit;
+      
+      bit += count;
+    }
+    
+    startT[globalT.length] = bit;
+  }
+  
+  /**
+   * Get the bit given to the definition at the given position.
+   * @param idx - The position of the definition.
+   * @return The bit given to the definition, or -1 if it has none.
+   */
+  public int getDefBit(int idx)
+  {
+    return idxToBit[idx];
   }
   
   /**
-   * Set the bit for the relevant vector and relevant variable.
-   * @param v - The variable whose bit vector is to have its bit set.
-   * @param bit - The position of the bit to be set.
+   * Record a definition of the variable at the given position, giving the
+   * definition the next bit in the variable's range if the variable is
+   * global.
+   * @param v - The variable being defined.
+   * @param idx - The position of the definition.
    */
-  public void setBit(Var v, int bit)
+  public void setBit(Var v, int idx)
   {
     int varNum = v.getVarNum();
-    BitSet bits;
+    int bit;
     
     if (v.isTemp())
     {
-      bits = defMapT.get(varNum);
-      
-      if (bits == null)
+      if (!globalT[varNum])
       {
-        bits = new BitSet(setSize);
-        defMapT.put(varNum, bits);
+        return;
       }
+      
+      bit = nextT[varNum]++;
     }
     else
     {
-      bits = defMapU.get(varNum);
-      
-      if (bits == null)
+      if (!globalU[varNum])
       {
-        bits = new BitSet(setSize);
-        defMapU.put(varNum, bits);
+        return;
       }
+      
+      bit = nextU[varNum]++;
     }
     
-    bits.set(bit);
+    idxToBit[idx] = bit;
+    bitToIdx[bit] = idx;
   }
   
   /**
-   * Get the position of the reaching definition of this variable, provided
-   * with the instruction's reaching definition mask.
-   * @param v - The variable whose definition is to be computed.
-   * @param in - The mask of reaching definitions to the RHS of the instruction
-   * that called this method.
-   * @return The position of the reaching definition.
+   * Start passing through a new basic block.
+   * @param in - The mask of definitions reaching the top of the block.
    */
-  public int getDef(Var v, BitSet in)
+  public void enterBlock(BitSet in)
+  {
+    enterBlock(in, 0, idxToBit.length);
+  }
+  
+  /**
+   * Start passing through a new basic block, reading the instructions outside
+   * of it from the snapshot.
+   * @param in - The mask of definitions reaching the top of the block.
+   * @param start - The position of the first instruction in the block.
+   * @param end - The position just past the last instruction in the block.
+   */
+  public void enterBlock(BitSet in, int start, int end)
+  {
+    blkIn = in;
+    curStamp++;
+    blkStores = new ArrayList<ThreeAddress>();
+    blkStart = start;
+    blkEnd = end;
+  }
+  
+  /**
+   * Record the result each instruction in the given range would propagate,
+   * along with the definition of it reaching the instruction, in the
+   * snapshot.  Must not be called while blocks are being optimized.
+   * @param instArr - The array of instructions.
+   * @param start - The first position to record.
+   * @param end - The position just past the last to record.
+   */
+  public void snapshot(ThreeAddress [] instArr, int start, int end)
+  {
+    if (snapProp == null)
+    {
+      snapProp = new Result [instArr.length];
+      snapSrcDef = new int [instArr.length];
+    }
+    
+    for (int idx = start; idx < end; idx++)
+    {
+      ThreeAddress a = instArr[idx];
+      
+      snapProp[idx] = a == null ? null : a.getPropResult();
+      snapSrcDef[idx] = a == null ? -1 : a.getSrcDef();
+    }
+  }
+  
+  private boolean isLive(int idx)
   {
-    BitSet defns;
+    return snapProp == null || (idx >= blkStart && idx < blkEnd);
+  }
+  
+  /**
+   * Get the result the instruction at the given position would propagate.
+   * @param idx - The position of the instruction.
+   * @param instArr - The array of instructions.
+   * @return The result to propagate, or null if there is none (or the
+   * instruction has been removed).
+   */
+  public Result getPropResult(int idx, ThreeAddress [] instArr)
+  {
+    if (!isLive(idx))
+    {
+      return snapProp[idx];
+    }
     
-    if (v.isTemp())
+    return instArr[idx] == null ? null : instArr[idx].getPropResult();
+  }
+  
+  /**
+   * Get the definition reaching the instruction at the given position of the
+   * result it would propagate.
+   * @param idx - The position of the instruction.
+   * @param instArr - The array of instructions.
+   * @return The position of the definition, or -1 if there is none.
+   */
+  public int getSrcDef(int idx, ThreeAddress [] instArr)
+  {
+    if (!isLive(idx))
     {
-      defns = defMapT.get(v.getVarNum());
+      return snapSrcDef[idx];
+    }
+    
+    return instArr[idx] == null ? -1 : instArr[idx].getSrcDef();
+  }
+  
+  /**
+   * Move past the given instruction in the current block, recording the
+   * definition it makes (if any).  If the instruction is a copy, also record
+   * the definition of the copied variable that reaches it.
+   * @param a - The instruction being passed.
+   */
+  public void passInst(ThreeAddress a)
+  {
+    Result p = a.getPropResult();
+    
+    if (p != null && p.isVar())
+    {
+      a.setSrcDef(getDef(p.getVar()));
     }
     else
     {
-      defns = defMapU.get(v.getVarNum());
+      a.setSrcDef(-1);
     }
     
-    if (defns == null)
+    if (a.isPointerStore())
     {
-      return -1;
+      blkStores.add(a);
     }
     
-    defns = (BitSet) defns.clone();
+    Var def = a.getDef();
     
-    defns.and(in);
+    if (def == null)
+    {
+      return;
+    }
     
-    return defns.nextSetBit(0);
+    if (def.isTemp())
+    {
+      lastDefT[def.getVarNum()] = a.getIdx();
+      stampT[def.getVarNum()] = curStamp;
+    }
+    else
+    {
+      lastDefU[def.getVarNum()] = a.getIdx();
+      stampU[def.getVarNum()] = curStamp;
+    }
   }
   
   /**
-   * Compute the user-variable mask (i.e., just OR all of the masks for the
-   * user-defined variable.
+   * Get the position of the definition of this variable reaching the current
+   * instruction in the current block.
+   * @param v - The variable whose definition is to be computed.
+   * @return The position of the reaching definition, or -1 if there is not
+   * exactly one definition reaching the instruction, or if the definition
+   * reaching it is unknown.
    */
-  public void computeMaskU()
+  public int getDef(Var v)
   {
-    maskU = new BitSet(setSize);
+    int varNum = v.getVarNum();
     
-    for (BitSet m : defMapU.values())
+    if (v.isTemp())
     {
-      maskU.or(m);
+      if (stampT[varNum] == curStamp)
+      {
+        return lastDefT[varNum];
+      }
     }
+    else
+    {
+      // A store through a pointer since the last definition may have changed
+      // the variable, if it's of the variable's alias class.
+      
+      int lastStore = getLastStore(v);
+      
+      if (stampU[varNum] == curStamp && lastDefU[varNum] > lastStore)
+      {
+        return lastDefU[varNum];
+      }
+      
+      if (lastStore != -1)
+      {
+        return -1;
+      }
+    }
+    
+    // The variable has not been defined yet in this block, so look at the
+    // definitions reaching the top of it.
+    
+    return getDef(v, blkIn);
   }
   
-  public String toString()
+  /**
+   * Get the position of the last store through a pointer seen in the current
+   * block which may change the given variable.
+   * @param v - The user-defined variable.
+   * @return The position of the store, or -1 if there has been none.
+   */
+  private int getLastStore(Var v)
+  {
+    for (int i = blkStores.size() - 1; i >= 0; i--)
+    {
+      if (blkStores.get(i).mayStoreTo(v))
+      {
+        return blkStores.get(i).getIdx();
+      }
+    }
+    
+    return -1;
+  }
+  
+  /**
+   * Get the position of the reaching definition of this variable, provided
+   * with a mask of reaching definitions.  We only need to look at the range
+   * of bits belonging to the variable.
+   * @param v - The variable whose definition is to be computed.
+   * @param in - The mask of reaching definitions.
+   * @return The position of the reaching definition, or -1 if there is not
+   * exactly one definition in the mask, or if the definition in the mask is
+   * unknown.
+   */
+  public int getDef(Var v, BitSet in)
   {
-    return "For user defs: " + defMapU + ";\n\nFor temp defs: " + defMapT;
+    int end = getEndBit(v);
+    int bit = in.nextSetBit(getStartBit(v));
+    
+    if (bit == -1 || bit >= end)
+    {
+      return -1;
+    }
+    
+    int next = in.nextSetBit(bit + 1);
+    
+    if (next != -1 && next < end)
+    {
+      return -1;
+    }
+    
+    return bitToIdx[bit];
   }
 }
\ No newline at end of file
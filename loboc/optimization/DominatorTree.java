@@ -0,0 +1,358 @@
+package optimization;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * DominatorTree.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * The dominator tree of a control flow graph, along with the dominance
+ * frontier of each block.  Block a dominates block b if every path from the
+ * entry to b passes through a, and the immediate dominator of b is the
+ * closest of its dominators other than b itself.  The dominance frontier of a
+ * is the set of blocks b such that a dominates a predecessor of b, but does
+ * not strictly dominate b.
+ *
+ * We compute the dominators with the iterative algorithm of Cooper, Harvey and
+ * Kennedy, which walks the blocks in reverse postorder, intersecting the
+ * dominators of each block's predecessors by climbing the tree built so far.
+ * Blocks unreachable from the entry have no dominators, and are left out of
+ * the tree entirely.  Everything is indexed by block number.
+ */
+public class DominatorTree
+{
+  /**
+   * The reachable blocks, in reverse postorder, and the position of each
+   * block in that order (or -1 if it is unreachable).
+   */
+  private ArrayList<BasicBlock> rpo;
+  private int [] rpoNum;
+  
+  /**
+   * The immediate dominator of each block (null for the entry and for
+   * unreachable blocks), and the blocks each block immediately dominates.
+   */
+  private BasicBlock [] idom;
+  private ArrayList<LinkedList<BasicBlock>> children;
+  
+  /**
+   * The dominance frontier of each block.
+   */
+  private ArrayList<LinkedList<BasicBlock>> frontiers;
+  
+  /**
+   * The position of each block in a preorder and postorder walk of the tree,
+   * so that we can check dominance in constant time.
+   */
+  private int [] pre;
+  private int [] post;
+  
+  public DominatorTree(LinkedList<BasicBlock> blocks)
+  {
+    int n = blocks.size();
+    
+    rpoNum = new int [n];
+    idom = new BasicBlock [n];
+    pre = new int [n];
+    post = new int [n];
+    children = new ArrayList<LinkedList<BasicBlock>>(n);
+    frontiers = new ArrayList<LinkedList<BasicBlock>>(n);
+    
+    for (int i = 0; i < n; i++)
+    {
+      rpoNum[i] = -1;
+      children.add(new LinkedList<BasicBlock>());
+      frontiers.add(new LinkedList<BasicBlock>());
+    }
+    
+    if (n == 0)
+    {
+      rpo = new ArrayList<BasicBlock>();
+      return;
+    }
+    
+    computeOrder(blocks.getFirst(), n);
+    computeIdoms();
+    computeFrontiers();
+    numberTree();
+  }
+  
+  /**
+   * Compute the reverse postorder of the blocks reachable from the entry,
+   * using an explicit stack so that very long programs can't overflow ours.
+   * @param entry - The entry block.
+   * @param n - The number of blocks.
+   */
+  private void computeOrder(BasicBlock entry, int n)
+  {
+    ArrayList<BasicBlock> postorder = new ArrayList<BasicBlock>(n);
+    boolean [] visited = new boolean [n];
+    
+    LinkedList<BasicBlock> stack = new LinkedList<BasicBlock>();
+    LinkedList<Iterator<BasicBlock>> its =
+      new LinkedList<Iterator<BasicBlock>>();
+    
+    visited[entry.getNum()] = true;
+    stack.push(entry);
+    its.push(entry.getSuccs().iterator());
+    
+    while (!stack.isEmpty())
+    {
+      Iterator<BasicBlock> it = its.peek();
+      
+      if (it.hasNext())
+      {
+        BasicBlock s = it.next();
+        
+        if (!visited[s.getNum()])
+        {
+          visited[s.getNum()] = true;
+          stack.push(s);
+          its.push(s.getSuccs().iterator());
+        }
+      }
+      else
+      {
+        postorder.add(stack.pop());
+        its.pop();
+      }
+    }
+    
+    rpo = new ArrayList<BasicBlock>(postorder.size());
+    
+    for (int i = postorder.size() - 1; i >= 0; i--)
+    {
+      BasicBlock b = postorder.get(i);
+      
+      rpoNum[b.getNum()] = rpo.size();
+      rpo.add(b);
+    }
+  }
+  
+  /**
+   * Compute the immediate dominator of each reachable block, passing over the
+   * blocks in reverse postorder until nothing changes.
+   */
+  private void computeIdoms()
+  {
+    BasicBlock entry = rpo.get(0);
+    idom[entry.getNum()] = entry;
+    
+    boolean changed = true;
+    
+    while (changed)
+    {
+      changed = false;
+      
+      for (int i = 1; i < rpo.size(); i++)
+      {
+        BasicBlock b = rpo.get(i);
+        BasicBlock newIdom = null;
+        
+        for (BasicBlock p : b.getPreds())
+        {
+          if (idom[p.getNum()] == null)
+          {
+            // Either unreachable, or not processed yet.
+            
+            continue;
+          }
+          
+          newIdom = newIdom == null ? p : intersect(p, newIdom);
+        }
+        
+        if (idom[b.getNum()] != newIdom)
+        {
+          idom[b.getNum()] = newIdom;
+          changed = true;
+        }
+      }
+    }
+    
+    // The entry has no immediate dominator - it only pointed to itself to
+    // stop our climbs above.
+    
+    idom[entry.getNum()] = null;
+    
+    for (int i = 1; i < rpo.size(); i++)
+    {
+      BasicBlock b = rpo.get(i);
+      children.get(idom[b.getNum()].getNum()).add(b);
+    }
+  }
+  
+  /**
+   * Find the closest common dominator of two blocks in the tree built so far.
+   */
+  private BasicBlock intersect(BasicBlock a, BasicBlock b)
+  {
+    while (a != b)
+    {
+      while (rpoNum[a.getNum()] > rpoNum[b.getNum()])
+      {
+        a = idom[a.getNum()];
+      }
+      
+      while (rpoNum[b.getNum()] > rpoNum[a.getNum()])
+      {
+        b = idom[b.getNum()];
+      }
+    }
+    
+    return a;
+  }
+  
+  /**
+   * Compute the dominance frontier of each block.  Each join point b is in
+   * the frontier of every block on the path up the tree from each of its
+   * predecessors to its immediate dominator.
+   */
+  private void computeFrontiers()
+  {
+    for (BasicBlock b : rpo)
+    {
+      if (b.getPreds().size() < 2)
+      {
+        continue;
+      }
+      
+      for (BasicBlock p : b.getPreds())
+      {
+        if (rpoNum[p.getNum()] == -1)
+        {
+          continue;
+        }
+        
+        BasicBlock runner = p;
+        
+        while (runner != null && runner != idom[b.getNum()])
+        {
+          LinkedList<BasicBlock> df = frontiers.get(runner.getNum());
+          
+          if (df.isEmpty() || df.getLast() != b)
+          {
+            df.add(b);
+          }
+          
+          runner = idom[runner.getNum()];
+        }
+      }
+    }
+  }
+  
+  /**
+   * Number the blocks in preorder and postorder over the tree.
+   */
+  private void numberTree()
+  {
+    int count = 0;
+    
+    LinkedList<BasicBlock> stack = new LinkedList<BasicBlock>();
+    LinkedList<Iterator<BasicBlock>> its =
+      new LinkedList<Iterator<BasicBlock>>();
+    
+    BasicBlock entry = rpo.get(0);
+    pre[entry.getNum()] = count++;
+    stack.push(entry);
+    its.push(children.get(entry.getNum()).iterator());
+    
+    while (!stack.isEmpty())
+    {
+      Iterator<BasicBlock> it = its.peek();
+      
+      if (it.hasNext())
+      {
+        BasicBlock c = it.next();
+        
+        pre[c.getNum()] = count++;
+        stack.push(c);
+        its.push(children.get(c.getNum()).iterator());
+      }
+      else
+      {
+        post[stack.pop().getNum()] = count++;
+        its.pop();
+      }
+    }
+  }
+  
+  /**
+   * Get the reachable blocks, in reverse postorder.
+   * @return The list of reachable blocks.
+   */
+  public ArrayList<BasicBlock> getRPO()
+  {
+    return rpo;
+  }
+  
+  public boolean isReachable(BasicBlock b)
+  {
+    return rpoNum[b.getNum()] != -1;
+  }
+  
+  /**
+   * Get the position of the given block in reverse postorder.
+   * @param b - The block.
+   * @return The position of b in the list returned by getRPO, or -1 if b is
+   * unreachable.
+   */
+  public int getRPONum(BasicBlock b)
+  {
+    return rpoNum[b.getNum()];
+  }
+  
+  /**
+   * Get the immediate dominator of the given block.
+   * @param b - The block.
+   * @return The immediate dominator of b, or null if b is the entry or is
+   * unreachable.
+   */
+  public BasicBlock getIdom(BasicBlock b)
+  {
+    return idom[b.getNum()];
+  }
+  
+  /**
+   * Get the blocks immediately dominated by the given block.
+   * @param b - The block.
+   * @return The children of b in the dominator tree.
+   */
+  public LinkedList<BasicBlock> getChildren(BasicBlock b)
+  {
+    return children.get(b.getNum());
+  }
+  
+  /**
+   * Get the dominance frontier of the given block.
+   * @param b - The block.
+   * @return The blocks in the dominance frontier of b.
+   */
+  public LinkedList<BasicBlock> getFrontier(BasicBlock b)
+  {
+    return frontiers.get(b.getNum());
+  }
+  
+  /**
+   * Determine whether or not one block dominates another.  Every block
+   * dominates itself.
+   * @param a - The possible dominator.
+   * @param b - The possibly dominated block.
+   * @return True if both blocks are reachable and a dominates b - false
+   * otherwise.
+   */
+  public boolean dominates(BasicBlock a, BasicBlock b)
+  {
+    if (!isReachable(a) || !isReachable(b))
+    {
+      return false;
+    }
+    
+    return pre[a.getNum()] <= pre[b.getNum()]
+      && post[b.getNum()] <= post[a.getNum()];
+  }
+}
\ No newline at end of file
@@ -0,0 +1,426 @@
+package optimization;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import mips.Instruction;
+import mips.Registers;
+import threeaddress.Result;
+import threeaddress.ThreeAddress;
+import threeaddress.Var;
+
+/**
+ * LocalRegisterCache.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * A much cheaper alternative to the global RegisterAllocator, which generates
+ * the MIPS instructions for the three address code one basic block at a time
+ * while remembering which variable currently sits in which register.  A
+ * variable is loaded from memory the first time it is read in a block, and
+ * every later read in that block uses the register instead.
+ *
+ * Values are only ever held in registers within a single block.  Temporaries
+ * computed into a register are dirty, and are written back to memory when
+ * they are evicted or at the end of the block - unless every use of the
+ * temporary in the program follows its definition in this block, in which
+ * case no one will ever read it from memory.  User-defined variables are
+ * written through to memory when assigned, so they are never dirty, but
+ * their registers are forgotten after any store through a pointer, since it
+ * may have changed them.
+ */
+public class LocalRegisterCache
+{
+  /**
+   * The registers available for caching values.  We stick to temporary
+   * registers so that nothing needs to be saved around main.
+   */
+  private static final int [] CACHE_REGS = {2, 3, 4, 5, 6, 7, 8, 9};
+  
+  private LinkedList<ThreeAddress> addresses;
+  
+  /**
+   * Variables are numbered with temporaries first, followed by user-defined
+   * variables.
+   */
+  private int tempCount;
+  private int numVars;
+  
+  /**
+   * The number of times each temporary is read, in the whole program and in
+   * the current block, and the number of reads left in the current block.
+   */
+  private int [] totalUses;
+  private int [] blockUses;
+  private int [] remaining;
+  
+  /**
+   * Whether or not each temporary is read in the current block before being
+   * assigned in it.
+   */
+  private boolean [] exposed;
+  private boolean [] assigned;
+  
+  /**
+   * The register caching each variable, if any.
+   */
+  private int [] regOf;
+  
+  /**
+   * For each register, the variable it caches (and its index), whether that
+   * variable is dirty, and when the register was last used.
+   */
+  private Var [] holder;
+  private int [] holderIdx;
+  private boolean [] dirty;
+  private long [] lastUse;
+  private long clock;
+  
+  public LocalRegisterCache(LinkedList<ThreeAddress> addresses, int tempCount,
+    int userCount)
+  {
+    this.addresses = addresses;
+    this.tempCount = tempCount;
+    
+    numVars = tempCount + userCount;
+  }
+  
+  /**
+   * Generate the MIPS instructions for our three address code.
+   * @param ins - The list of instructions to which we add.
+   */
+  public void getInst(LinkedList<Instruction> ins)
+  {
+    totalUses = new int [numVars];
+    blockUses = new int [numVars];
+    remaining = new int [numVars];
+    exposed = new boolean [numVars];
+    assigned = new boolean [numVars];
+    regOf = new int [numVars];
+    
+    int numRegs = Registers.NUM_TEMP_REGS + Registers.NUM_SAVED_REGS;
+    
+    holder = new Var [numRegs];
+    holderIdx = new int [numRegs];
+    dirty = new boolean [numRegs];
+    lastUse = new long [numRegs];
+    
+    Arrays.fill(regOf, Registers.NO_REG);
+    Arrays.fill(holderIdx, -1);
+    
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (ThreeAddress a : addresses)
+    {
+      uses.clear();
+      a.getUses(uses);
+      
+      for (Result r : uses)
+      {
+        Var v = r.getUseVar();
+        
+        if (v != null)
+        {
+          totalUses[getIndex(v)]++;
+        }
+      }
+    }
+    
+    for (BasicBlock b : OptimizerUtils.getBlocks(addresses))
+    {
+      getBlockInst(b, ins);
+    }
+  }
+  
+  private int getIndex(Var v)
+  {
+    return v.isTemp() ? v.getVarNum() : tempCount + v.getVarNum();
+  }
+  
+  /**
+   * Generate the MIPS instructions for a single basic block, starting with
+   * nothing in our registers.
+   * @param b - The basic block.
+   * @param ins - The list of instructions to which we add.
+   */
+  private void getBlockInst(BasicBlock b, LinkedList<Instruction> ins)
+  {
+    LinkedList<ThreeAddress> blkAdds = b.getBlkAdds();
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    // Count the reads of each temporary in this block, and note which are read
+    // before being assigned.
+    
+    for (ThreeAddress a : blkAdds)
+    {
+      uses.clear();
+      a.getUses(uses);
+      
+      for (Result r : uses)
+      {
+        Var v = r.getUseVar();
+        
+        if (v != null)
+        {
+          int k = getIndex(v);
+          
+          if (!assigned[k])
+          {
+            exposed[k] = true;
+          }
+          
+          blockUses[k]++;
+          remaining[k]++;
+        }
+      }
+      
+      Var def = a.getDef();
+      
+      if (def != null)
+      {
+        assigned[getIndex(def)] = true;
+      }
+    }
+    
+    boolean [] pinned = new boolean [holder.length];
+    boolean written = false;
+    
+    for (ThreeAddress a : blkAdds)
+    {
+      Arrays.fill(pinned, false);
+      
+      uses.clear();
+      a.getUses(uses);
+      
+      for (Result r : uses)
+      {
+        Var v = r.getUseVar();
+        
+        if (v == null)
+        {
+          // Variables whose addresses are taken are used from memory.
+          
+          if (r.getVar() != null)
+          {
+            r.getVar().setReg(Registers.NO_REG);
+          }
+          
+          continue;
+        }
+        
+        int k = getIndex(v);
+        int reg = regOf[k];
+        
+        if (reg == Registers.NO_REG)
+        {
+          reg = grabReg(pinned, ins);
+          
+          v.setReg(Registers.NO_REG);
+          v.getLoadInst(ins, reg);
+          
+          bind(k, v, reg, false);
+        }
+        
+        v.setReg(reg);
+        pinned[reg] = true;
+        lastUse[reg] = ++clock;
+        remaining[k]--;
+      }
+      
+      Var def = a.getDef();
+      
+      if (def != null)
+      {
+        int k = getIndex(def);
+        int reg = regOf[k];
+        
+        if (reg == Registers.NO_REG)
+        {
+          reg = grabReg(pinned, ins);
+        }
+        
+        bind(k, def, reg, def.isTemp());
+        
+        def.setReg(reg);
+        lastUse[reg] = ++clock;
+      }
+      
+      // Write back our dirty registers before leaving the block.
+      
+      if (a == blkAdds.getLast()
+        && (a.getJumpLabel() != null || !a.canFallThrough()))
+      {
+        writeBack(ins);
+        written = true;
+      }
+      
+      a.getInst(ins);
+      
+      // A store through a pointer may have changed any user-defined variable
+      // of its alias class.
+      
+      if (a.isPointerStore())
+      {
+        for (int reg : CACHE_REGS)
+        {
+          if (holderIdx[reg] >= tempCount && a.mayStoreTo(holder[reg]))
+          {
+            unbind(reg);
+          }
+        }
+      }
+    }
+    
+    if (!written)
+    {
+      writeBack(ins);
+    }
+    
+    // Clear everything out for the next block.
+    
+    for (int reg : CACHE_REGS)
+    {
+      if (holderIdx[reg] != -1)
+      {
+        unbind(reg);
+      }
+    }
+    
+    for (ThreeAddress a : blkAdds)
+    {
+      uses.clear();
+      a.getUses(uses);
+      
+      for (Result r : uses)
+      {
+        Var v = r.getUseVar();
+        
+        if (v != null)
+        {
+          int k = getIndex(v);
+          
+          blockUses[k] = 0;
+          remaining[k] = 0;
+          exposed[k] = false;
+        }
+      }
+      
+      Var def = a.getDef();
+      
+      if (def != null)
+      {
+        assigned[getIndex(def)] = false;
+      }
+    }
+  }
+  
+  /**
+   * Determine whether or not the dirty temporary k must be written back to
+   * memory when it leaves its register.
+   */
+  private boolean needsStore(int k)
+  {
+    return remaining[k] > 0 || exposed[k] || blockUses[k] != totalUses[k];
+  }
+  
+  /**
+   * Find a register not pinned by the current instruction, evicting its
+   * current variable if need be.  We prefer free registers, then registers
+   * holding temporaries no one will read again, then whichever register was
+   * used least recently.
+   */
+  private int grabReg(boolean [] pinned, LinkedList<Instruction> ins)
+  {
+    int best = -1;
+    int bestRank = Integer.MAX_VALUE;
+    
+    for (int reg : CACHE_REGS)
+    {
+      if (pinned[reg])
+      {
+        continue;
+      }
+      
+      int k = holderIdx[reg];
+      int rank;
+      
+      if (k == -1)
+      {
+        rank = 0;
+      }
+      else if (k < tempCount && remaining[k] == 0 && !needsStore(k))
+      {
+        rank = 1;
+      }
+      else
+      {
+        rank = 2;
+      }
+      
+      if (rank < bestRank || (rank == bestRank && lastUse[reg] < lastUse[best]))
+      {
+        best = reg;
+        bestRank = rank;
+      }
+    }
+    
+    if (holderIdx[best] != -1)
+    {
+      if (dirty[best] && needsStore(holderIdx[best]))
+      {
+        store(best, ins);
+      }
+      
+      unbind(best);
+    }
+    
+    return best;
+  }
+  
+  private void bind(int k, Var v, int reg, boolean isDirty)
+  {
+    regOf[k] = reg;
+    holder[reg] = v;
+    holderIdx[reg] = k;
+    dirty[reg] = isDirty;
+  }
+  
+  private void unbind(int reg)
+  {
+    regOf[holderIdx[reg]] = Registers.NO_REG;
+    holder[reg] = null;
+    holderIdx[reg] = -1;
+    dirty[reg] = false;
+  }
+  
+  /**
+   * Store the variable cached in the given register to memory.
+   */
+  private void store(int reg, LinkedList<Instruction> ins)
+  {
+    Var v = holder[reg];
+    int oldReg = v.getReg();
+    
+    v.setReg(Registers.NO_REG);
+    v.getStoreInst(ins, reg);
+    v.setReg(oldReg);
+    
+    dirty[reg] = false;
+  }
+  
+  /**
+   * Write back every dirty register that needs it.
+   */
+  private void writeBack(LinkedList<Instruction> ins)
+  {
+    for (int reg : CACHE_REGS)
+    {
+      if (dirty[reg] && needsStore(holderIdx[reg]))
+      {
+        store(reg, ins);
+      }
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,247 @@
+package optimization;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+
+import threeaddress.ThreeAddress;
+import threeaddress.Var;
+
+/**
+ * Loop.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Class representing a natural loop in the control flow graph - a header
+ * block, along with every block which can reach one of the header's back
+ * edges (edges into the header from blocks it dominates) without passing
+ * through the header.  Loops sharing a header are treated as one.
+ */
+public class Loop
+{
+  private BasicBlock header;
+  
+  /**
+   * The blocks of the loop, both as a set (by number) and in reverse
+   * postorder.
+   */
+  private BitSet blockSet;
+  private LinkedList<BasicBlock> loopBlocks;
+  
+  private BasicBlock preheader;
+  
+  private Loop(BasicBlock header)
+  {
+    this.header = header;
+    this.blockSet = new BitSet();
+    this.loopBlocks = new LinkedList<BasicBlock>();
+  }
+  
+  public BasicBlock getHeader()
+  {
+    return header;
+  }
+  
+  public LinkedList<BasicBlock> getBlocks()
+  {
+    return loopBlocks;
+  }
+  
+  public boolean contains(BasicBlock b)
+  {
+    return blockSet.get(b.getNum());
+  }
+  
+  /**
+   * Get the block control passes through on its way into the loop, if there
+   * is one.
+   * @return The only block outside the loop leading to the header, if it
+   * leads nowhere else - null otherwise.
+   */
+  public BasicBlock getPreheader()
+  {
+    return preheader;
+  }
+  
+  /**
+   * Find the alias classes of the memory which may change within the loop -
+   * those of the pointers the loop stores through and the user-defined
+   * variables it assigns.
+   * @return The set of alias classes.
+   */
+  public BitSet getChangedClasses()
+  {
+    BitSet changed = new BitSet();
+    
+    for (BasicBlock b : loopBlocks)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        Var def = a.getDef();
+        
+        if (a.isPointerStore())
+        {
+          changed.set(a.getStoreClass());
+        }
+        else if (def != null && !def.isTemp())
+        {
+          changed.set(def.getAliasClass());
+        }
+      }
+    }
+    
+    return changed;
+  }
+  
+  /**
+   * Get the blocks of the loop control may leave the loop from.
+   * @return The list of exiting blocks.
+   */
+  public LinkedList<BasicBlock> getExitingBlocks()
+  {
+    LinkedList<BasicBlock> exiting = new LinkedList<BasicBlock>();
+    
+    for (BasicBlock b : loopBlocks)
+    {
+      for (BasicBlock s : b.getSuccs())
+      {
+        if (!contains(s))
+        {
+          exiting.add(b);
+          break;
+        }
+      }
+    }
+    
+    return exiting;
+  }
+  
+  /**
+   * Find the natural loops of the given blocks.
+   * @param blocks - The blocks, connected into a control flow graph.
+   * @param dt - The dominator tree of the blocks.
+   * @return The list of loops, with every loop coming before any loop
+   * containing it.
+   */
+  public static LinkedList<Loop> findLoops(LinkedList<BasicBlock> blocks,
+    DominatorTree dt)
+  {
+    LinkedList<Loop> loops = new LinkedList<Loop>();
+    
+    for (BasicBlock h : dt.getRPO())
+    {
+      Loop l = null;
+      
+      for (BasicBlock p : h.getPreds())
+      {
+        if (!dt.dominates(h, p))
+        {
+          continue;
+        }
+        
+        if (l == null)
+        {
+          l = new Loop(h);
+          l.blockSet.set(h.getNum());
+        }
+        
+        l.addBody(p, dt);
+      }
+      
+      if (l != null)
+      {
+        loops.add(l);
+      }
+    }
+    
+    BasicBlock [] blockArr = blocks.toArray(new BasicBlock [blocks.size()]);
+    
+    for (Loop l : loops)
+    {
+      l.finish(blockArr, dt);
+    }
+    
+    // A loop inside another has strictly fewer blocks.
+    
+    Collections.sort(loops, new Comparator<Loop>()
+    {
+      public int compare(Loop a, Loop b)
+      {
+        return a.blockSet.cardinality() - b.blockSet.cardinality();
+      }
+    });
+    
+    return loops;
+  }
+  
+  /**
+   * Add the blocks reaching the given latch without passing through the
+   * header to the loop.
+   * @param latch - The source of a back edge into the header.
+   * @param dt - The dominator tree.
+   */
+  private void addBody(BasicBlock latch, DominatorTree dt)
+  {
+    LinkedList<BasicBlock> work = new LinkedList<BasicBlock>();
+    
+    if (!blockSet.get(latch.getNum()))
+    {
+      blockSet.set(latch.getNum());
+      work.add(latch);
+    }
+    
+    while (!work.isEmpty())
+    {
+      BasicBlock b = work.remove();
+      
+      for (BasicBlock p : b.getPreds())
+      {
+        if (dt.isReachable(p) && !blockSet.get(p.getNum()))
+        {
+          blockSet.set(p.getNum());
+          work.add(p);
+        }
+      }
+    }
+  }
+  
+  /**
+   * List the blocks of the loop in reverse postorder and find its preheader.
+   * @param blockArr - All of our blocks, in order (and so by number).
+   * @param dt - The dominator tree.
+   */
+  private void finish(BasicBlock [] blockArr, final DominatorTree dt)
+  {
+    for (int i = blockSet.nextSetBit(0); i >= 0; i = blockSet.nextSetBit(i + 1))
+    {
+      loopBlocks.add(blockArr[i]);
+    }
+    
+    Collections.sort(loopBlocks, new Comparator<BasicBlock>()
+    {
+      public int compare(BasicBlock a, BasicBlock b)
+      {
+        return dt.getRPONum(a) - dt.getRPONum(b);
+      }
+    });
+    
+    for (BasicBlock p : header.getPreds())
+    {
+      if (!dt.isReachable(p) || contains(p))
+      {
+        continue;
+      }
+      
+      if (preheader != null || p.getSuccs().size() != 1)
+      {
+        preheader = null;
+        return;
+      }
+      
+      preheader = p;
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,317 @@
+package optimization;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+import general.Consts;
+import threeaddress.AddressOf;
+import threeaddress.Assign;
+import threeaddress.Binary;
+import threeaddress.Deref;
+import threeaddress.Result;
+import threeaddress.ThreeAddress;
+import threeaddress.Unary;
+import threeaddress.Var;
+import threeaddress.VarMap;
+
+/**
+ * LoopInvariantMover.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Loop-invariant code motion over code in SSA form.  An operation inside a
+ * loop whose operands are all defined outside the loop (or by other
+ * operations we're moving) computes the same value on every iteration, so
+ * we compute it once in the loop's preheader instead, into a new temporary,
+ * and copy that temporary where the operation used to be.  Loops are handled
+ * innermost first, so that what's moved out of an inner loop may be moved
+ * out of the loops around it in turn.
+ *
+ * Since nothing but loads can fault, arithmetic and addresses are moved out
+ * wherever they are in the loop.  A load is only moved out if the loop has no
+ * stores through pointers or assignments to user-defined variables (any of
+ * which could change the memory it reads), and if the load is made on every
+ * trip through the loop before control leaves it.
+ */
+public class LoopInvariantMover
+{
+  private SSAForm ssa;
+  private DominatorTree dt;
+  
+  /**
+   * The block defining each version of each variable, if it is defined by an
+   * instruction.
+   */
+  private ArrayList<BasicBlock> defBlocks;
+  
+  /**
+   * The temporary now holding each version whose definition was moved out of
+   * a loop.
+   */
+  private HashMap<Integer, Var> moved;
+  
+  public LoopInvariantMover(SSAForm ssa)
+  {
+    this.ssa = ssa;
+    this.dt = ssa.getDominatorTree();
+  }
+  
+  /**
+   * Move the invariant code out of every loop with a preheader.
+   * @return True if any change was made to the code.
+   */
+  public boolean run()
+  {
+    LinkedList<BasicBlock> blocks = ssa.getBlocks();
+    
+    defBlocks = new ArrayList<BasicBlock>();
+    moved = new HashMap<Integer, Var>();
+    
+    for (BasicBlock b : blocks)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        if (a.getDef() != null)
+        {
+          setDefBlock(a.getDef(), b);
+        }
+      }
+    }
+    
+    boolean changed = false;
+    
+    for (Loop l : Loop.findLoops(blocks, dt))
+    {
+      if (l.getPreheader() != null && hoist(l))
+      {
+        changed = true;
+      }
+    }
+    
+    if (changed)
+    {
+      // Anything reading a variable whose definition was moved can read the
+      // temporary instead, letting code depending on it be moved out of the
+      // loops around.
+      
+      VarMap m = new VarMap()
+      {
+        public Var map(Var v)
+        {
+          Var t = moved.get(ssa.getValueNum(v));
+          
+          return t == null ? v : t;
+        }
+      };
+      
+      for (BasicBlock b : blocks)
+      {
+        for (ThreeAddress a : b.getBlkAdds())
+        {
+          a.renameUses(m);
+        }
+      }
+    }
+    
+    return changed;
+  }
+  
+  private void setDefBlock(Var v, BasicBlock b)
+  {
+    int num = ssa.getValueNum(v);
+    
+    while (defBlocks.size() <= num)
+    {
+      defBlocks.add(null);
+    }
+    
+    defBlocks.set(num, b);
+  }
+  
+  private BasicBlock getDefBlock(Var v)
+  {
+    int num = ssa.getValueNum(v);
+    
+    return num < defBlocks.size() ? defBlocks.get(num) : null;
+  }
+  
+  /**
+   * Move the invariant code out of the given loop.
+   * @param l - The loop.
+   * @return True if anything was moved.
+   */
+  private boolean hoist(Loop l)
+  {
+    BitSet memChanges = l.getChangedClasses();
+    LinkedList<BasicBlock> exiting = l.getExitingBlocks();
+    LinkedList<ThreeAddress> hoisted = new LinkedList<ThreeAddress>();
+    BasicBlock pre = l.getPreheader();
+    
+    VarMap m = new VarMap()
+    {
+      public Var map(Var v)
+      {
+        Var t = moved.get(ssa.getValueNum(v));
+        
+        return t == null ? v : t;
+      }
+    };
+    
+    // Visit the blocks in reverse postorder, so that we see the definitions
+    // of the operands of each instruction before the instruction itself.
+    
+    for (BasicBlock b : l.getBlocks())
+    {
+      ListIterator<ThreeAddress> it = b.getBlkAdds().listIterator();
+      
+      while (it.hasNext())
+      {
+        ThreeAddress a = it.next();
+        
+        if (!isMovable(a, l, memChanges, exiting, b))
+        {
+          continue;
+        }
+        
+        Var def = a.getDef();
+        Var t = ssa.newTemp(def.getSize(), def.getAlign());
+        
+        Assign copy = new Assign(def, t);
+        copy.setIdx(a.getIdx());
+        it.set(copy);
+        
+        a.renameUses(m);
+        a.setDef(t);
+        hoisted.add(a);
+        setDefBlock(t, pre);
+        
+        // A variable smaller than a word doesn't hold the full value computed,
+        // so only a copy of it may be read in its place.
+        
+        if (def.getSize() >= Consts.INT_SIZE)
+        {
+          moved.put(ssa.getValueNum(def), t);
+        }
+      }
+    }
+    
+    if (hoisted.isEmpty())
+    {
+      return false;
+    }
+    
+    // The moved code goes at the end of the preheader, before the jump into
+    // the loop if there is one.
+    
+    LinkedList<ThreeAddress> preAdds = pre.getBlkAdds();
+    
+    if (!preAdds.isEmpty() && preAdds.getLast().isJump())
+    {
+      preAdds.addAll(preAdds.size() - 1, hoisted);
+    }
+    else
+    {
+      preAdds.addAll(hoisted);
+    }
+    
+    return true;
+  }
+  
+  /**
+   * Determine whether or not an instruction may be moved out of a loop.
+   * @param a - The instruction.
+   * @param l - The loop.
+   * @param memChanges - The alias classes of memory changed within the loop.
+   * @param exiting - The blocks of the loop control may leave from.
+   * @param b - The block holding the instruction.
+   * @return True if a computes the same value on every trip around the loop
+   * and may safely be computed before the loop instead.
+   */
+  private boolean isMovable(ThreeAddress a, Loop l, BitSet memChanges,
+    LinkedList<BasicBlock> exiting, BasicBlock b)
+  {
+    if (a instanceof Assign)
+    {
+      Result r = ((Assign) a).getResult();
+      
+      // Copies are left to the ordinary optimizer - only addresses and loads
+      // are worth moving.
+      
+      if (!(r instanceof AddressOf) && !(r instanceof Deref))
+      {
+        return false;
+      }
+      
+      if (r instanceof Deref
+        && memChanges.get(((Deref) r).getAliasClass()))
+      {
+        return false;
+      }
+      
+      if (r instanceof Deref)
+      {
+        for (BasicBlock e : exiting)
+        {
+          if (!dt.dominates(b, e))
+          {
+            return false;
+          }
+        }
+      }
+    }
+    else if (!(a instanceof Binary) && !(a instanceof Unary))
+    {
+      return false;
+    }
+    
+    LinkedList<Result> uses = new LinkedList<Result>();
+    a.getUses(uses);
+    
+    for (Result r : uses)
+    {
+      Var v = r.getUseVar();
+      
+      if (v != null && !isInvariant(v, l, memChanges))
+      {
+        return false;
+      }
+    }
+    
+    return true;
+  }
+  
+  /**
+   * Determine whether or not a version of a variable holds the same value
+   * throughout a loop.
+   * @param v - The version.
+   * @param l - The loop.
+   * @param memChanges - The alias classes of memory changed within the loop.
+   * @return True if v is defined outside l, or by code moved out of l.
+   */
+  private boolean isInvariant(Var v, Loop l, BitSet memChanges)
+  {
+    if (moved.containsKey(ssa.getValueNum(v)))
+    {
+      return true;
+    }
+    
+    BasicBlock db = getDefBlock(v);
+    
+    if (db != null)
+    {
+      return !l.contains(db);
+    }
+    
+    // Versions not defined by an instruction are either the values held on
+    // entry, or those left by stores through pointers (which only come from
+    // within the loop if it stores through a pointer of the same class).
+    
+    return v.getVersion() == 0
+      || (!v.isTemp() && !memChanges.get(v.getAliasClass()));
+  }
+}
\ No newline at end of file
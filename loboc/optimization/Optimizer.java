@@ -1,9 +1,17 @@
 package optimization;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import general.LabelFactory;
+import general.TempFactory;
+import threeaddress.Result;
 import threeaddress.ThreeAddress;
+import threeaddress.Var;
 
 /**
  * Optimizer.java
@@ -20,20 +28,65 @@ public class Optimizer
   private VarCounter ct;
   private DefMap dm;
   
-  public Optimizer(LinkedList<ThreeAddress> addresses, int tempCount)
+  /**
+   * For each variable (temporaries first, followed by user-defined
+   * variables), the blocks which define it and the blocks which use it.  The
+   * lists of using blocks may grow as we propagate variables into new blocks,
+   * and may hold blocks which no longer use the variable.
+   */
+  private int tempCount;
+  private ArrayList<LinkedList<BasicBlock>> defBlocks;
+  private ArrayList<LinkedList<BasicBlock>> useBlocks;
+  
+  /**
+   * Rounds with fewer blocks than this are optimized on the calling thread.
+   */
+  private static final int PAR_THRESHOLD = 64;
+  
+  /**
+   * The blocks being optimized in the current round, the outcome for each,
+   * and whether we are removing dead code (rather than propagating, folding
+   * and simplifying) this phase of the round.
+   */
+  private ArrayList<BasicBlock> round;
+  private BlockResult [] results;
+  private boolean deadPhase;
+  
+  /**
+   * The counters and reaching definition maps used by each of our workers.
+   */
+  private VarCounter [] workerCts;
+  private DefMap [] workerDms;
+  
+  /**
+   * The factories for any new temporaries and labels we need, and the number
+   * of user-defined variables.
+   */
+  private TempFactory tf;
+  private LabelFactory lf;
+  private int userCount;
+  
+  public Optimizer(LinkedList<ThreeAddress> addresses, TempFactory tf,
+    LabelFactory lf, int userCount)
   {
-    init(addresses, tempCount);
+    this.tf = tf;
+    this.lf = lf;
+    this.userCount = userCount;
+    
+    init(addresses, tf.getTempNum(), userCount);
   }
   
   /**
    * Set up the optimizer - separate instructions into basic blocks, get a
    * count of the number of times temporaries are used in the code, and compute
-   * the reaching definitions vectors for our instructions as well as the
+   * the reaching definitions vectors for our blocks as well as the
    * definition vectors for each of our variables.
    * @param addresses - The list of three address code instructions.
    * @param tempCount - The number of temporaries in the code.
+   * @param userCount - The number of user-defined variables in the code.
    */
-  public void init(LinkedList<ThreeAddress> addresses, int tempCount)
+  public void init(LinkedList<ThreeAddress> addresses, int tempCount,
+    int userCount)
   {
     // First, label all of our addresses with nonnegative integers, and store
     // them inside of an array.
@@ -45,22 +98,50 @@ public class Optimizer
     for (ThreeAddress a : addresses)
     {
       a.setIdx(idx);
+      a.setSrcDef(-1);
       instArr[idx++] = a;
     }
     
-    // Next, create a DefMap object with size equal to the number of
-    // instructions.
+    // Split the code into basic blocks, and connect them into a control flow
+    // graph.
+    
+    blocks = OptimizerUtils.getBlocks(addresses);
+    OptimizerUtils.linkBlocks(blocks);
+    
+    idx = 0;
+    
+    for (BasicBlock b : blocks)
+    {
+      b.setRange(idx, idx + b.getBlkAdds().size());
+      idx += b.getBlkAdds().size();
+    }
+    
+    // Next, create a DefMap object for our instructions and variables, and
+    // find our global variables.
+    
+    dm = new DefMap(addresses.size(), tempCount, userCount);
     
-    dm = new DefMap(addresses.size());
+    findGlobals(tempCount, userCount);
     
-    // Set up the map.
+    // Set up the map, counting the definitions of each variable so that we
+    // can give each variable its range of bits.
     
     for (ThreeAddress a : addresses)
     {
-      a.setDefInfo(dm);
+      Var def = a.getDef();
+      
+      if (def != null)
+      {
+        dm.countDef(def);
+      }
     }
     
-    dm.computeMaskU();
+    dm.computeRanges();
+    
+    for (ThreeAddress a : addresses)
+    {
+      a.setDefInfo(dm);
+    }
     
     // Get the used counts of all variables for this set of instructions.
     
@@ -71,36 +152,514 @@ public class Optimizer
       a.addUseCount(ct);
     }
     
-    // Split the code into basic blocks.
+    // And compute the reachable definitions for each block.
     
-    blocks = OptimizerUtils.getBlocks(addresses);
+    computeReachingDefs();
+    
+    // Finally, find the blocks defining and using each variable.
+    
+    this.tempCount = tempCount;
+    
+    defBlocks = new ArrayList<LinkedList<BasicBlock>>();
+    useBlocks = new ArrayList<LinkedList<BasicBlock>>();
+    
+    for (int i = 0; i < tempCount + userCount; i++)
+    {
+      defBlocks.add(new LinkedList<BasicBlock>());
+      useBlocks.add(new LinkedList<BasicBlock>());
+    }
+    
+    for (BasicBlock b : blocks)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        Var def = a.getDef();
+        
+        if (def != null)
+        {
+          addBlock(defBlocks.get(getKey(def)), b);
+        }
+      }
+      
+      addUseBlocks(b);
+    }
+  }
+  
+  private int getKey(Var v)
+  {
+    return v.isTemp() ? v.getVarNum() : tempCount + v.getVarNum();
+  }
+  
+  /**
+   * Add the block to the end of the list, unless it's already there.
+   */
+  private void addBlock(LinkedList<BasicBlock> blks, BasicBlock b)
+  {
+    if (blks.isEmpty() || blks.getLast() != b)
+    {
+      blks.add(b);
+    }
+  }
+  
+  /**
+   * Record the block as using each of the variables it uses.
+   * @param b - The block.
+   */
+  private void addUseBlocks(BasicBlock b)
+  {
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (ThreeAddress a : b.getBlkAdds())
+    {
+      a.getUses(uses);
+    }
+    
+    for (Result r : uses)
+    {
+      Var v = r.getVar();
+      
+      if (v != null)
+      {
+        LinkedList<BasicBlock> blks = useBlocks.get(getKey(v));
+        
+        if (!blks.contains(b))
+        {
+          blks.add(b);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Mark each variable read in some block before being assigned in that block
+   * as global in our DefMap.  We mark each variable with the last block it was
+   * assigned in, so that we don't need to clear anything between blocks.
+   * @param tempCount - The number of temporaries in the code.
+   * @param userCount - The number of user-defined variables in the code.
+   */
+  private void findGlobals(int tempCount, int userCount)
+  {
+    int [] killedInT = new int [tempCount];
+    int [] killedInU = new int [userCount];
+    
+    Arrays.fill(killedInT, -1);
+    Arrays.fill(killedInU, -1);
+    
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (BasicBlock b : blocks)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        uses.clear();
+        a.getUses(uses);
+        
+        for (Result r : uses)
+        {
+          Var v = r.getUseVar();
+          
+          if (v == null)
+          {
+            continue;
+          }
+          
+          int [] killedIn = v.isTemp() ? killedInT : killedInU;
+          
+          if (killedIn[v.getVarNum()] != b.getNum())
+          {
+            dm.setGlobal(v);
+          }
+        }
+        
+        Var def = a.getDef();
+        
+        if (def != null)
+        {
+          int [] killedIn = def.isTemp() ? killedInT : killedInU;
+          
+          killedIn[def.getVarNum()] = b.getNum();
+        }
+      }
+    }
+  }
+  
+  /**
+   * Compute the reaching definitions for each of our blocks across the whole
+   * control flow graph.  The definitions reaching the top of a block are those
+   * leaving any of its predecessors (plus the unknown definitions of every
+   * user variable, for the first block), and we pass over the blocks until the
+   * definitions leaving each stop changing.  Finally, we make one pass through
+   * each block to record the definitions reaching each copy instruction.
+   */
+  private void computeReachingDefs()
+  {
+    for (BasicBlock b : blocks)
+    {
+      b.computeGenKill(dm);
+    }
+    
+    boolean changed = true;
     
-    // And compute the reachable definitions for each.
+    while (changed)
+    {
+      changed = false;
+      
+      for (BasicBlock b : blocks)
+      {
+        BitSet in = new BitSet();
+        
+        if (b.getNum() == 0)
+        {
+          in.or(dm.getMaskUnknown());
+        }
+        
+        for (BasicBlock p : b.getPreds())
+        {
+          if (p.getOutMask() != null)
+          {
+            in.or(p.getOutMask());
+          }
+        }
+        
+        b.setInMask(in);
+        
+        if (b.computeOutMask())
+        {
+          changed = true;
+        }
+      }
+    }
     
     for (BasicBlock b : blocks)
     {
-      b.computeDefMask(new BitSet(addresses.size()), dm);
+      dm.enterBlock(b.getInMask());
+      
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        dm.passInst(a);
+      }
     }
   }
   
   /**
    * Perform optimization on the list of instructions, doing so until no more
-   * optimizations can be found.
+   * optimizations can be found.  Each time the blocks settle, the control
+   * flow is simplified - folded branches leave behind unreachable blocks and
+   * jumps to jumps - and assignments overwritten before they're read are
+   * removed, and we carry on with whatever blocks that leaves to optimize.
    */
   public void optimize()
   {
-    int numOpts;
+    BitSet queued = new BitSet();
+    queued.set(0, blocks.size());
+    
+    while (!queued.isEmpty())
+    {
+      optimizeBlocks(queued);
+      simplify(queued);
+    }
+  }
+  
+  /**
+   * Simplify the control flow of our instructions, setting the optimizer up
+   * again on the result if that changes anything, and remove their dead
+   * assignments, in place.
+   * @param queued - The set to which the number of each block left with
+   * something to optimize is added.
+   */
+  private void simplify(BitSet queued)
+  {
+    ControlFlowSimplifier cfs = new ControlFlowSimplifier(getAddresses());
+    
+    if (cfs.run())
+    {
+      init(cfs.getAddresses(), tf.getTempNum(), userCount);
+      queued.set(0, blocks.size());
+    }
+    
+    // The blocks which lose assignments may have more to fold, and the
+    // definitions of the temporaries they read may now be dead, just as with
+    // our own dead code removal.
+    
+    VarCounter dct = new VarCounter(ct);
+    
+    new DeadStoreEliminator(blocks, tempCount, dct, instArr).run(queued);
+    
+    LinkedList<Integer> decremented = dct.takeDecremented();
+    
+    ct.apply(dct.takeIncremented(), decremented);
+    enqueueDefBlocks(queued, decremented);
+  }
+  
+  /**
+   * Optimize our blocks until no more optimizations can be found within
+   * them.
+   * @param queued - The numbers of the blocks to start with, which are taken
+   * from the set.
+   */
+  private void optimizeBlocks(BitSet queued)
+  {
+    // We keep a worklist of the blocks which may have something left to
+    // optimize, starting with those given.  Whenever we change a block, we
+    // revisit it, along with the blocks using any variable whose definition
+    // changed, and the blocks defining any temporary which lost a use (since
+    // its definition may now be dead).
     
-    do
+    // The blocks on the worklist are optimized together in rounds, spread
+    // across the threads of a fork/join pool.  So that the code we produce
+    // doesn't depend on how the blocks are spread, each block sees the other
+    // blocks (and the use counts) only as they were at the start of the
+    // round, and the changes made to each are applied in program order once
+    // the round is over.  Each round has two phases - first propagation,
+    // folding and simplification, then dead code removal - since a block
+    // must not remove a definition which another block may be propagating
+    // from in the same phase.
+    
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    int numWorkers = Math.max(1, pool.getParallelism());
+    
+    dm.snapshot(instArr, 0, instArr.length);
+    
+    workerCts = new VarCounter [numWorkers];
+    workerDms = new DefMap [numWorkers];
+    
+    for (int w = 0; w < numWorkers; w++)
+    {
+      workerCts[w] = new VarCounter(ct);
+      workerDms[w] = new DefMap(dm);
+    }
+    
+    BasicBlock [] blockArr = blocks.toArray(new BasicBlock [blocks.size()]);
+    round = new ArrayList<BasicBlock>();
+    
+    while (!queued.isEmpty())
     {
-      numOpts = 0;
+      round.clear();
       
-      for (BasicBlock b : blocks)
+      for (int i = queued.nextSetBit(0); i != -1; i = queued.nextSetBit(i + 1))
+      {
+        round.add(blockArr[i]);
+      }
+      
+      queued.clear();
+      results = new BlockResult [round.size()];
+      
+      // Propagate, fold and simplify.
+      
+      runPhase(pool, false);
+      
+      for (int i = 0; i < round.size(); i++)
+      {
+        BasicBlock b = round.get(i);
+        BlockResult r = results[i];
+        
+        ct.apply(r.incremented, r.decremented);
+        
+        if (r.numOpts == 0)
+        {
+          continue;
+        }
+        
+        // Propagation may have given this block uses of new variables.
+        
+        addUseBlocks(b);
+        
+        queued.set(b.getNum());
+        
+        for (Var def : r.changed)
+        {
+          if (def != null)
+          {
+            for (BasicBlock u : useBlocks.get(getKey(def)))
+            {
+              queued.set(u.getNum());
+            }
+          }
+        }
+        
+        enqueueDefBlocks(queued, r.decremented);
+      }
+      
+      // Remove dead code.
+      
+      runPhase(pool, true);
+      
+      for (int i = 0; i < round.size(); i++)
+      {
+        BlockResult r = results[i];
+        
+        ct.apply(r.incremented, r.decremented);
+        enqueueDefBlocks(queued, r.decremented);
+      }
+      
+      for (BasicBlock b : round)
+      {
+        dm.snapshot(instArr, b.getStartIdx(), b.getEndIdx());
+      }
+    }
+  }
+  
+  /**
+   * Queue up the blocks defining each of the given temporaries.
+   * @param queued - The set of queued blocks.
+   * @param keys - The numbers of the temporaries.
+   */
+  private void enqueueDefBlocks(BitSet queued, LinkedList<Integer> keys)
+  {
+    for (int key : keys)
+    {
+      for (BasicBlock d : defBlocks.get(key))
+      {
+        queued.set(d.getNum());
+      }
+    }
+  }
+  
+  /**
+   * Run one phase of optimization on every block in the current round,
+   * storing the outcome for each in our results.
+   * @param pool - The pool to run the phase on.
+   * @param deadPhase - Whether we are removing dead code, rather than
+   * propagating, folding and simplifying.
+   */
+  private void runPhase(ForkJoinPool pool, boolean deadPhase)
+  {
+    this.deadPhase = deadPhase;
+    
+    if (round.size() < PAR_THRESHOLD)
+    {
+      runChunk(0, 0, round.size());
+    }
+    else
+    {
+      pool.invoke(new PhaseTask(0, workerCts.length));
+    }
+  }
+  
+  /**
+   * Run the current phase on a contiguous chunk of the current round.
+   * @param w - The worker whose counter and map are to be used.
+   * @param start - The position in the round of the first block.
+   * @param end - The position in the round just past the last block.
+   */
+  private void runChunk(int w, int start, int end)
+  {
+    VarCounter wct = workerCts[w];
+    DefMap wdm = workerDms[w];
+    
+    for (int i = start; i < end; i++)
+    {
+      BasicBlock b = round.get(i);
+      BlockResult r = new BlockResult();
+      
+      if (deadPhase)
+      {
+        r.numOpts = b.removeDeadCode(wct, instArr);
+      }
+      else
+      {
+        r.numOpts = b.optimize(wct, wdm, instArr, r.changed);
+      }
+      
+      r.incremented = wct.takeIncremented();
+      r.decremented = wct.takeDecremented();
+      
+      results[i] = r;
+    }
+  }
+  
+  /**
+   * The outcome of optimizing a single block for one phase of a round.
+   */
+  private static class BlockResult
+  {
+    int numOpts;
+    LinkedList<Var> changed = new LinkedList<Var>();
+    LinkedList<Integer> incremented;
+    LinkedList<Integer> decremented;
+  }
+  
+  /**
+   * Task running the current phase for a range of workers, each of which
+   * takes an equal share of the current round.
+   */
+  private class PhaseTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+    
+    private int lo;
+    private int hi;
+    
+    public PhaseTask(int lo, int hi)
+    {
+      this.lo = lo;
+      this.hi = hi;
+    }
+    
+    protected void compute()
+    {
+      if (hi - lo == 1)
       {
-        numOpts += b.optimize(ct, dm, instArr);
+        int n = workerCts.length;
+        
+        runChunk(lo, (int) ((long) round.size() * lo / n),
+          (int) ((long) round.size() * hi / n));
       }
+      else
+      {
+        int mid = (lo + hi) / 2;
+        invokeAll(new PhaseTask(lo, mid), new PhaseTask(mid, hi));
+      }
+    }
+  }
+  
+  /**
+   * Perform the optimizations working over the whole control flow graph at
+   * once, most of which are carried out in SSA form.  This should only be
+   * called once optimize has finished, as it leaves the rest of our state
+   * behind.
+   */
+  public void optimizeGlobal()
+  {
+    LinkedList<ThreeAddress> addresses =
+      OptimizerUtils.addPreheaders(getAddresses(), lf);
+    
+    SSAForm ssa = new SSAForm(addresses, tf, lf, userCount);
+    
+    boolean changed = new ConstantPropagator(ssa).run();
+    changed |= new LoopInvariantMover(ssa).run();
+    changed |= new StrengthReducer(ssa).run();
+    changed |= new SubexpressionEliminator(ssa).run();
+    
+    addresses = ssa.destroy();
+    
+    // If anything changed, clean up after ourselves with another round of
+    // ordinary optimization - propagating the constants and copies we
+    // introduced, and removing the code they leave unneeded.
+    
+    if (changed)
+    {
+      init(addresses, tf.getTempNum(), userCount);
+      optimize();
+    }
+    else
+    {
+      blocks = OptimizerUtils.getBlocks(addresses);
+      OptimizerUtils.linkBlocks(blocks);
+    }
+    
+    // Partial redundancy elimination works on the ordinary code, by the
+    // names of the variables read, so it's left until the copies out of SSA
+    // form have been cleaned up.
+    
+    PartialRedundancyEliminator pre =
+      new PartialRedundancyEliminator(getAddresses(), tf, lf);
+    
+    if (pre.run())
+    {
+      init(pre.getAddresses(), tf.getTempNum(), userCount);
+      optimize();
     }
-    while (numOpts > 0);
   }
   
   /**
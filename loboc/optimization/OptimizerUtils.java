@@ -1,7 +1,12 @@
 package optimization;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 
+import general.LabelFactory;
+import threeaddress.CompareGoto;
+import threeaddress.CondGoto;
+import threeaddress.Label;
 import threeaddress.ThreeAddress;
 
 /**
@@ -60,4 +65,203 @@ public class OptimizerUtils
     
     return blks;
   }
+  
+  /**
+   * Number the basic blocks in the order they appear in the program and
+   * connect them into a control flow graph.  Control passes from one block to
+   * another if the first block ends in a jump to the label at the top of the
+   * second, or if the second block immediately follows the first and the last
+   * instruction of the first block is not an unconditional jump or a return.
+   * @param blks - The list of basic blocks, in program order.
+   */
+  public static void linkBlocks(LinkedList<BasicBlock> blks)
+  {
+    // First, number our blocks and find the block belonging to each label.
+    
+    HashMap<String, BasicBlock> labelMap = new HashMap<String, BasicBlock>();
+    
+    int num = 0;
+    
+    for (BasicBlock b : blks)
+    {
+      b.setNum(num++);
+      
+      String label = b.getLabel();
+      
+      if (label != null)
+      {
+        labelMap.put(label, b);
+      }
+    }
+    
+    // Now add our edges, based on the last instruction of each block.
+    
+    BasicBlock prev = null;
+    
+    for (BasicBlock b : blks)
+    {
+      if (prev != null)
+      {
+        ThreeAddress last = prev.getBlkAdds().getLast();
+        
+        if (last.canFallThrough())
+        {
+          prev.addSucc(b);
+        }
+      }
+      
+      String target = b.getBlkAdds().getLast().getJumpLabel();
+      
+      if (target != null)
+      {
+        b.addSucc(labelMap.get(target));
+      }
+      
+      prev = b;
+    }
+  }
+  
+  /**
+   * Fuse each comparison whose result is only used by the conditional goto
+   * right after it into a single compare-and-branch, so that the result of
+   * the comparison is never computed, let alone stored.  This is the last
+   * thing done to the code before registers are allocated, as the optimizer
+   * doesn't know what to do with the fused gotos.
+   * @param addresses - The list of three address code instructions.
+   * @param tempCount - The number of temporaries in the code.
+   * @return The new list of instructions.
+   */
+  public static LinkedList<ThreeAddress> fuseBranches(
+    LinkedList<ThreeAddress> addresses, int tempCount)
+  {
+    VarCounter ct = new VarCounter(tempCount);
+    
+    for (ThreeAddress a : addresses)
+    {
+      a.addUseCount(ct);
+    }
+    
+    LinkedList<ThreeAddress> result = new LinkedList<ThreeAddress>();
+    
+    for (ThreeAddress a : addresses)
+    {
+      if (a instanceof CondGoto && !result.isEmpty())
+      {
+        CompareGoto cg = ((CondGoto) a).fuse(result.getLast(), ct);
+        
+        if (cg != null)
+        {
+          result.removeLast();
+          result.add(cg);
+          continue;
+        }
+      }
+      
+      result.add(a);
+    }
+    
+    return result;
+  }
+  
+  /**
+   * Give every loop a preheader - an empty block which is the only way into
+   * the loop from outside it, and which leads only to the loop, so that code
+   * may be moved out of the loop into it.  The preheader is placed right
+   * before the header, and every jump into the loop from outside is sent to
+   * it instead.  Loops entered by falling through from a block inside the
+   * loop are left alone.
+   * @param addresses - The list of three address code instructions.
+   * @param lf - The factory to make the preheaders' labels with.
+   * @return The new list of instructions.
+   */
+  public static LinkedList<ThreeAddress> addPreheaders(
+    LinkedList<ThreeAddress> addresses, LabelFactory lf)
+  {
+    LinkedList<BasicBlock> blks = getBlocks(addresses);
+    linkBlocks(blks);
+    
+    DominatorTree dt = new DominatorTree(blks);
+    LinkedList<ThreeAddress> result = new LinkedList<ThreeAddress>();
+    
+    BasicBlock prev = null;
+    
+    for (BasicBlock b : blks)
+    {
+      if (needsPreheader(b, prev, dt))
+      {
+        String label = lf.gen();
+        
+        for (BasicBlock p : b.getPreds())
+        {
+          ThreeAddress last = p.getBlkAdds().getLast();
+          
+          if (!dt.dominates(b, p) && b.getLabel().equals(last.getJumpLabel()))
+          {
+            last.setJumpLabel(label);
+          }
+        }
+        
+        result.add(new Label(label));
+      }
+      
+      result.addAll(b.getBlkAdds());
+      prev = b;
+    }
+    
+    return result;
+  }
+  
+  /**
+   * Determine whether or not the given block is a loop header in need of a
+   * preheader.
+   * @param b - The block.
+   * @param prev - The block before it, or null if it comes first.
+   * @param dt - The dominator tree of our blocks.
+   * @return True if b is the header of a loop without a preheader, and a
+   * preheader can be placed right before it.
+   */
+  private static boolean needsPreheader(BasicBlock b, BasicBlock prev,
+    DominatorTree dt)
+  {
+    if (!dt.isReachable(b) || b.getLabel() == null)
+    {
+      return false;
+    }
+    
+    boolean isHeader = false;
+    int numOutside = 0;
+    BasicBlock outside = null;
+    
+    for (BasicBlock p : b.getPreds())
+    {
+      if (dt.dominates(b, p))
+      {
+        isHeader = true;
+      }
+      else
+      {
+        numOutside++;
+        outside = p;
+      }
+    }
+    
+    if (!isHeader)
+    {
+      return false;
+    }
+    
+    // If the only way in is already a block going nowhere else, there's
+    // nothing to do.
+    
+    if (numOutside == 1 && outside.getSuccs().size() == 1)
+    {
+      return false;
+    }
+    
+    // The preheader goes between the header and the block before it, so
+    // that block mustn't fall through into the header from inside the loop.
+    
+    return prev == null || !prev.getBlkAdds().getLast().canFallThrough()
+      || !dt.dominates(b, prev);
+  }
 }
\ No newline at end of file
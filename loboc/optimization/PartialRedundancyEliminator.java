@@ -0,0 +1,847 @@
+package optimization;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+import general.Consts;
+import general.LabelFactory;
+import general.TempFactory;
+import threeaddress.Assign;
+import threeaddress.Goto;
+import threeaddress.Imm;
+import threeaddress.Label;
+import threeaddress.Result;
+import threeaddress.ThreeAddress;
+import threeaddress.ValueMap;
+import threeaddress.Var;
+
+/**
+ * PartialRedundancyEliminator.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Partial redundancy elimination by lazy code motion.  An expression is
+ * partially redundant when it has already been computed along some, but not
+ * all, of the paths reaching it - say, in one arm of an if statement and
+ * again after the join.  We compute the expression on the edges where it's
+ * missing, which makes the later computation fully redundant, and replace
+ * that with a copy.  Computations are only placed where the expression is
+ * certain to be computed anyway before its operands change (so no path is
+ * lengthened, and nothing is computed that could fault when it otherwise
+ * wouldn't), and as late as that allows (so values aren't kept around any
+ * longer than they need to be).
+ *
+ * This works on the ordinary three address code rather than SSA form, with
+ * expressions named by the variables they read: an expression is killed by
+ * an assignment to any of them, and by a store through a pointer of the
+ * alias class of a user-defined variable among them.  A load is also killed
+ * by a store through a pointer or an assignment to a user-defined variable
+ * of the class loaded.  Each expression we move gets a temporary of its own,
+ * assigned wherever the expression is computed, and the redundant
+ * computations copy it.  The ordinary optimizer cleans up whichever of these
+ * copies end up unneeded.
+ *
+ * The code must start with a block nothing jumps back to and end with a
+ * return, and control must be able to leave every block for the return -
+ * otherwise we leave it alone.
+ */
+public class PartialRedundancyEliminator
+{
+  private LinkedList<ThreeAddress> addresses;
+  private TempFactory tf;
+  private LabelFactory lf;
+  
+  private LinkedList<BasicBlock> blks;
+  private BasicBlock [] blkArr;
+  
+  /**
+   * The number given each distinct expression, an instruction computing
+   * each, and the set of all of them.
+   */
+  private HashMap<ValueTable.Key, Integer> exprNums;
+  private ArrayList<ThreeAddress> reps;
+  private BitSet all;
+  
+  /**
+   * The expressions reading each variable (by the number from getVarId),
+   * the expressions reading user-defined variables of each alias class, and
+   * the loads of each alias class.
+   */
+  private HashMap<Integer, BitSet> varExprs;
+  private HashMap<Integer, BitSet> userExprs;
+  private HashMap<Integer, BitSet> loadExprs;
+  
+  /**
+   * For each block, the expressions computed before anything kills them, the
+   * expressions computed and not killed afterward, and the expressions
+   * killed.
+   */
+  private BitSet [] ueExpr;
+  private BitSet [] deExpr;
+  private BitSet [] exprKill;
+  
+  /**
+   * For each block, the expressions to be computed on each edge out of it (in
+   * the order of its successors), and the redundant expressions to be
+   * replaced with copies.
+   */
+  private BitSet [] [] insert;
+  private BitSet [] delete;
+  
+  /**
+   * The temporary holding each expression we move, once it's needed.
+   */
+  private ArrayList<Var> holders;
+  
+  private ValueMap values;
+  
+  public PartialRedundancyEliminator(LinkedList<ThreeAddress> addresses,
+    TempFactory tf, LabelFactory lf)
+  {
+    this.addresses = addresses;
+    this.tf = tf;
+    this.lf = lf;
+    
+    // Variables are named by their ids, and constants by negative numbers.
+    
+    values = new ValueMap()
+    {
+      private HashMap<Integer, Integer> constNums =
+        new HashMap<Integer, Integer>();
+      
+      public int getValueNum(Result r)
+      {
+        if (r.isVar())
+        {
+          return getVarId((Var) r);
+        }
+        
+        if (r.isImm())
+        {
+          int bits = ((Imm) r).getBits();
+          Integer num = constNums.get(bits);
+          
+          if (num == null)
+          {
+            num = -2 - constNums.size();
+            constNums.put(bits, num);
+          }
+          
+          return num;
+        }
+        
+        return -1;
+      }
+    };
+  }
+  
+  public LinkedList<ThreeAddress> getAddresses()
+  {
+    return addresses;
+  }
+  
+  /**
+   * Move the partially redundant computations in our instructions.
+   * @return True if any change was made to the code.
+   */
+  public boolean run()
+  {
+    blks = OptimizerUtils.getBlocks(addresses);
+    
+    if (blks.isEmpty())
+    {
+      return false;
+    }
+    
+    OptimizerUtils.linkBlocks(blks);
+    blkArr = blks.toArray(new BasicBlock [blks.size()]);
+    
+    if (!isWellFormed())
+    {
+      return false;
+    }
+    
+    findExprs();
+    
+    if (exprNums.isEmpty())
+    {
+      return false;
+    }
+    
+    computeLocal();
+    placeComputations();
+    
+    boolean changed = false;
+    
+    for (BasicBlock b : blkArr)
+    {
+      changed |= !delete[b.getNum()].isEmpty();
+    }
+    
+    if (!changed)
+    {
+      return false;
+    }
+    
+    rewrite();
+    
+    return true;
+  }
+  
+  /**
+   * Get the number naming a variable in our expressions.
+   * @param v - The variable.
+   * @return A number distinct for each variable.
+   */
+  private static int getVarId(Var v)
+  {
+    return v.isTemp() ? 2 * v.getVarNum() : 2 * v.getVarNum() + 1;
+  }
+  
+  /**
+   * Determine whether or not we can work on our blocks - the first must have
+   * no predecessors, the last instruction must never fall through, no block
+   * may both jump and fall through to the next, and every block must be able
+   * to reach one with no successors.
+   * @return True if we can work on our blocks.
+   */
+  private boolean isWellFormed()
+  {
+    if (!blkArr[0].getPreds().isEmpty() || addresses.getLast().canFallThrough())
+    {
+      return false;
+    }
+    
+    for (int i = 0; i + 1 < blkArr.length; i++)
+    {
+      ThreeAddress last = blkArr[i].getBlkAdds().getLast();
+      String label = last.getJumpLabel();
+      
+      if (last.canFallThrough() && label != null
+        && label.equals(blkArr[i + 1].getLabel()))
+      {
+        return false;
+      }
+    }
+    
+    // Walk backward from the blocks with no successors.
+    
+    boolean [] reaches = new boolean [blkArr.length];
+    LinkedList<BasicBlock> stack = new LinkedList<BasicBlock>();
+    
+    for (BasicBlock b : blkArr)
+    {
+      if (b.getSuccs().isEmpty())
+      {
+        reaches[b.getNum()] = true;
+        stack.push(b);
+      }
+    }
+    
+    while (!stack.isEmpty())
+    {
+      for (BasicBlock p : stack.pop().getPreds())
+      {
+        if (!reaches[p.getNum()])
+        {
+          reaches[p.getNum()] = true;
+          stack.push(p);
+        }
+      }
+    }
+    
+    for (boolean r : reaches)
+    {
+      if (!r)
+      {
+        return false;
+      }
+    }
+    
+    return true;
+  }
+  
+  /**
+   * Get the expression computed by the given instruction, if it's one we can
+   * move.
+   * @param a - The instruction.
+   * @return The expression, or null if it isn't one of ours.
+   */
+  private ValueTable.Key getKey(ThreeAddress a)
+  {
+    Var def = a.getDef();
+    
+    // A variable smaller than a word doesn't hold the full value of what's
+    // assigned to it.
+    
+    if (def == null || def.getSize() < Consts.INT_SIZE)
+    {
+      return null;
+    }
+    
+    return a.getValueKey(values);
+  }
+  
+  private static BitSet getSet(HashMap<Integer, BitSet> sets, int key)
+  {
+    BitSet s = sets.get(key);
+    
+    if (s == null)
+    {
+      s = new BitSet();
+      sets.put(key, s);
+    }
+    
+    return s;
+  }
+  
+  /**
+   * Number the expressions computed in our blocks, and find the expressions
+   * each variable and alias class is read by.
+   */
+  private void findExprs()
+  {
+    exprNums = new HashMap<ValueTable.Key, Integer>();
+    reps = new ArrayList<ThreeAddress>();
+    varExprs = new HashMap<Integer, BitSet>();
+    userExprs = new HashMap<Integer, BitSet>();
+    loadExprs = new HashMap<Integer, BitSet>();
+    
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (ThreeAddress a : addresses)
+    {
+      ValueTable.Key key = getKey(a);
+      
+      if (key == null || exprNums.containsKey(key))
+      {
+        continue;
+      }
+      
+      int num = reps.size();
+      exprNums.put(key, num);
+      reps.add(a);
+      
+      if (key.isLoad())
+      {
+        getSet(loadExprs, key.getLoadClass()).set(num);
+      }
+      
+      uses.clear();
+      a.getUses(uses);
+      
+      for (Result r : uses)
+      {
+        Var v = r.getUseVar();
+        
+        if (v != null)
+        {
+          getSet(varExprs, getVarId(v)).set(num);
+          
+          if (!v.isTemp())
+          {
+            getSet(userExprs, v.getAliasClass()).set(num);
+          }
+        }
+      }
+    }
+    
+    all = new BitSet();
+    all.set(0, reps.size());
+  }
+  
+  /**
+   * Add the expressions the given instruction kills to a set.
+   * @param a - The instruction.
+   * @param killed - The set.
+   */
+  private void addKills(ThreeAddress a, BitSet killed)
+  {
+    Var def = a.getDef();
+    
+    if (def != null)
+    {
+      killed.or(getSet(varExprs, getVarId(def)));
+      
+      if (!def.isTemp())
+      {
+        killed.or(getSet(loadExprs, def.getAliasClass()));
+      }
+    }
+    
+    if (a.isPointerStore())
+    {
+      killed.or(getSet(userExprs, a.getStoreClass()));
+      killed.or(getSet(loadExprs, a.getStoreClass()));
+    }
+  }
+  
+  /**
+   * Find the expressions each block computes and kills.
+   */
+  private void computeLocal()
+  {
+    int n = blkArr.length;
+    
+    ueExpr = new BitSet [n];
+    deExpr = new BitSet [n];
+    exprKill = new BitSet [n];
+    
+    for (BasicBlock b : blkArr)
+    {
+      BitSet ue = new BitSet();
+      BitSet de = new BitSet();
+      BitSet killed = new BitSet();
+      
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        ValueTable.Key key = getKey(a);
+        
+        // An instruction computes its expression before assigning the result,
+        // so it may kill its own expression.
+        
+        if (key != null)
+        {
+          int num = exprNums.get(key);
+          
+          if (!killed.get(num))
+          {
+            ue.set(num);
+          }
+          
+          de.set(num);
+        }
+        
+        BitSet k = new BitSet();
+        addKills(a, k);
+        
+        de.andNot(k);
+        killed.or(k);
+      }
+      
+      ueExpr[b.getNum()] = ue;
+      deExpr[b.getNum()] = de;
+      exprKill[b.getNum()] = killed;
+    }
+  }
+  
+  /**
+   * Decide where to compute each expression - the edges to insert new
+   * computations on, and the computations they make redundant.
+   */
+  private void placeComputations()
+  {
+    int n = blkArr.length;
+    BasicBlock entry = blkArr[0];
+    
+    // First, find the expressions available at the bottom of each block -
+    // those computed along every path to it and not killed since.
+    
+    BitSet [] availOut = new BitSet [n];
+    
+    for (int i = 0; i < n; i++)
+    {
+      availOut[i] = (BitSet) all.clone();
+    }
+    
+    boolean changed = true;
+    
+    while (changed)
+    {
+      changed = false;
+      
+      for (BasicBlock b : blkArr)
+      {
+        BitSet in = new BitSet();
+        
+        if (b != entry)
+        {
+          in.or(all);
+          
+          for (BasicBlock p : b.getPreds())
+          {
+            in.and(availOut[p.getNum()]);
+          }
+        }
+        
+        in.andNot(exprKill[b.getNum()]);
+        in.or(deExpr[b.getNum()]);
+        
+        if (!in.equals(availOut[b.getNum()]))
+        {
+          availOut[b.getNum()] = in;
+          changed = true;
+        }
+      }
+    }
+    
+    // Next, the expressions anticipated at the top and bottom of each block -
+    // those computed along every path from it before they're killed.
+    
+    BitSet [] antIn = new BitSet [n];
+    BitSet [] antOut = new BitSet [n];
+    
+    for (int i = 0; i < n; i++)
+    {
+      antIn[i] = (BitSet) all.clone();
+      antOut[i] = new BitSet();
+    }
+    
+    changed = true;
+    
+    while (changed)
+    {
+      changed = false;
+      
+      for (int i = n - 1; i >= 0; i--)
+      {
+        BasicBlock b = blkArr[i];
+        BitSet out = new BitSet();
+        
+        if (!b.getSuccs().isEmpty())
+        {
+          out.or(all);
+          
+          for (BasicBlock s : b.getSuccs())
+          {
+            out.and(antIn[s.getNum()]);
+          }
+        }
+        
+        antOut[i] = out;
+        
+        BitSet in = (BitSet) out.clone();
+        in.andNot(exprKill[i]);
+        in.or(ueExpr[i]);
+        
+        if (!in.equals(antIn[i]))
+        {
+          antIn[i] = in;
+          changed = true;
+        }
+      }
+    }
+    
+    // The earliest an expression may be computed on an edge is where it's
+    // anticipated at the end, but not available at the start, and couldn't
+    // have been computed any earlier (as it's either killed in the block at
+    // the start or not anticipated at its bottom).
+    
+    BitSet [] [] earliest = new BitSet [n] [];
+    
+    for (BasicBlock b : blkArr)
+    {
+      LinkedList<BasicBlock> succs = b.getSuccs();
+      BitSet [] e = new BitSet [succs.size()];
+      int k = 0;
+      
+      for (BasicBlock s : succs)
+      {
+        BitSet x = (BitSet) antIn[s.getNum()].clone();
+        x.andNot(availOut[b.getNum()]);
+        
+        if (b != entry)
+        {
+          BitSet early = (BitSet) all.clone();
+          early.andNot(antOut[b.getNum()]);
+          early.or(exprKill[b.getNum()]);
+          x.and(early);
+        }
+        
+        e[k++] = x;
+      }
+      
+      earliest[b.getNum()] = e;
+    }
+    
+    // Now push each computation as late as it can go - past a block which
+    // doesn't compute the expression itself, so long as it could be pushed
+    // down every edge into the block. The sets only ever shrink, so a block
+    // need only be looked at again once one of its predecessors' has.
+    
+    BitSet [] laterIn = new BitSet [n];
+    boolean [] queued = new boolean [n];
+    LinkedList<BasicBlock> work = new LinkedList<BasicBlock>();
+    
+    for (BasicBlock b : blkArr)
+    {
+      laterIn[b.getNum()] = b == entry ? new BitSet() : (BitSet) all.clone();
+      
+      if (b != entry)
+      {
+        queued[b.getNum()] = true;
+        work.add(b);
+      }
+    }
+    
+    BitSet in = new BitSet();
+    BitSet l = new BitSet();
+    
+    while (!work.isEmpty())
+    {
+      BasicBlock b = work.removeFirst();
+      queued[b.getNum()] = false;
+      
+      in.clear();
+      in.or(all);
+      
+      for (BasicBlock p : b.getPreds())
+      {
+        getLater(p, p.getSuccs().indexOf(b), laterIn, earliest, l);
+        in.and(l);
+      }
+      
+      if (in.equals(laterIn[b.getNum()]))
+      {
+        continue;
+      }
+      
+      laterIn[b.getNum()].and(in);
+      
+      for (BasicBlock s : b.getSuccs())
+      {
+        if (s != entry && !queued[s.getNum()])
+        {
+          queued[s.getNum()] = true;
+          work.add(s);
+        }
+      }
+    }
+    
+    // Finally, compute each expression on the edges it can be pushed down no
+    // further, and replace the computations made redundant by them.
+    
+    insert = new BitSet [n] [];
+    delete = new BitSet [n];
+    
+    for (BasicBlock b : blkArr)
+    {
+      LinkedList<BasicBlock> succs = b.getSuccs();
+      BitSet [] ins = new BitSet [succs.size()];
+      int k = 0;
+      
+      for (BasicBlock s : succs)
+      {
+        BitSet x = new BitSet();
+        getLater(b, k, laterIn, earliest, x);
+        x.andNot(laterIn[s.getNum()]);
+        ins[k++] = x;
+      }
+      
+      insert[b.getNum()] = ins;
+      
+      BitSet d = new BitSet();
+      
+      if (b != entry)
+      {
+        d.or(ueExpr[b.getNum()]);
+        d.andNot(laterIn[b.getNum()]);
+      }
+      
+      delete[b.getNum()] = d;
+    }
+  }
+  
+  /**
+   * Find the expressions which may be computed as late as a given edge -
+   * those which may be computed there earliest, or pushed down through the
+   * block it leaves.
+   * @param b - The block the edge leaves.
+   * @param k - The index of the edge among the block's successors.
+   * @param laterIn - The expressions which may be computed as late as the
+   * top of each block.
+   * @param earliest - The expressions which may be computed earliest on each
+   * edge.
+   * @param later - The set to put the expressions in.
+   */
+  private void getLater(BasicBlock b, int k, BitSet [] laterIn,
+    BitSet [] [] earliest, BitSet later)
+  {
+    later.clear();
+    later.or(laterIn[b.getNum()]);
+    later.andNot(ueExpr[b.getNum()]);
+    later.or(earliest[b.getNum()][k]);
+  }
+  
+  /**
+   * Get the temporary holding the given expression, creating it if need be.
+   * @param num - The number of the expression.
+   * @return The temporary.
+   */
+  private Var getHolder(int num)
+  {
+    Var t = holders.get(num);
+    
+    if (t == null)
+    {
+      Var def = reps.get(num).getDef();
+      
+      t = tf.gen(def.getSize(), def.getAlign());
+      holders.set(num, t);
+    }
+    
+    return t;
+  }
+  
+  /**
+   * Get new computations of each of a set of expressions into their
+   * temporaries.
+   * @param exprs - The set of expressions.
+   * @return The list of computations.
+   */
+  private LinkedList<ThreeAddress> getComputations(BitSet exprs)
+  {
+    LinkedList<ThreeAddress> comps = new LinkedList<ThreeAddress>();
+    
+    for (int e = exprs.nextSetBit(0); e != -1; e = exprs.nextSetBit(e + 1))
+    {
+      comps.add(reps.get(e).recompute(getHolder(e)));
+    }
+    
+    return comps;
+  }
+  
+  /**
+   * Rewrite our instructions, inserting and replacing computations as
+   * decided.
+   */
+  private void rewrite()
+  {
+    holders = new ArrayList<Var>();
+    
+    for (int i = 0; i < reps.size(); i++)
+    {
+      holders.add(null);
+    }
+    
+    // Every expression we compute somewhere new or replace somewhere needs
+    // its temporary kept up to date wherever else it's computed.
+    
+    BitSet moved = new BitSet();
+    
+    for (BasicBlock b : blkArr)
+    {
+      moved.or(delete[b.getNum()]);
+      
+      for (BitSet x : insert[b.getNum()])
+      {
+        moved.or(x);
+      }
+    }
+    
+    for (BasicBlock b : blkArr)
+    {
+      replaceRedundant(b, moved);
+    }
+    
+    // Place the new computations.  On an edge into a block with only the one
+    // predecessor, they go at the top of the block; on an edge out of a block
+    // with only the one successor, at the bottom.  Otherwise, they go in a
+    // new block between the two - if control falls through along the edge,
+    // right after the first block, and if it jumps, at the end of the code,
+    // with the jump sent there instead.
+    
+    LinkedList<ThreeAddress> result = new LinkedList<ThreeAddress>();
+    LinkedList<ThreeAddress> split = new LinkedList<ThreeAddress>();
+    
+    for (BasicBlock b : blkArr)
+    {
+      LinkedList<ThreeAddress> blkAdds = b.getBlkAdds();
+      
+      for (BasicBlock p : b.getPreds())
+      {
+        BitSet x = insert[p.getNum()][p.getSuccs().indexOf(b)];
+        
+        if (!x.isEmpty() && p.getSuccs().size() > 1
+          && b.getPreds().size() == 1)
+        {
+          blkAdds.addAll(blkAdds.getFirst().isLabel() ? 1 : 0,
+            getComputations(x));
+        }
+      }
+      
+      ThreeAddress last = blkAdds.getLast();
+      LinkedList<ThreeAddress> fallen = new LinkedList<ThreeAddress>();
+      int k = 0;
+      
+      for (BasicBlock s : b.getSuccs())
+      {
+        BitSet x = insert[b.getNum()][k++];
+        
+        if (x.isEmpty())
+        {
+          continue;
+        }
+        
+        if (b.getSuccs().size() == 1)
+        {
+          int pos = last.isJump() ? blkAdds.size() - 1 : blkAdds.size();
+          blkAdds.addAll(pos, getComputations(x));
+        }
+        else if (s.getPreds().size() > 1)
+        {
+          if (s.getLabel() != null && s.getLabel().equals(last.getJumpLabel()))
+          {
+            String label = lf.gen();
+            last.setJumpLabel(label);
+            
+            split.add(new Label(label));
+            split.addAll(getComputations(x));
+            split.add(new Goto(s.getLabel()));
+          }
+          else
+          {
+            fallen.addAll(getComputations(x));
+          }
+        }
+      }
+      
+      result.addAll(blkAdds);
+      result.addAll(fallen);
+    }
+    
+    result.addAll(split);
+    addresses = result;
+  }
+  
+  /**
+   * Replace the redundant computations in a block with copies of the
+   * temporaries holding their values, and copy the other computations of
+   * the expressions we move into their temporaries.
+   * @param b - The block.
+   * @param moved - The expressions we move.
+   */
+  private void replaceRedundant(BasicBlock b, BitSet moved)
+  {
+    BitSet killed = new BitSet();
+    ListIterator<ThreeAddress> it = b.getBlkAdds().listIterator();
+    
+    while (it.hasNext())
+    {
+      ThreeAddress a = it.next();
+      ValueTable.Key key = getKey(a);
+      
+      if (key != null)
+      {
+        int num = exprNums.get(key);
+        
+        if (!killed.get(num) && delete[b.getNum()].get(num))
+        {
+          Assign copy = new Assign(a.getDef(), getHolder(num));
+          it.set(copy);
+        }
+        else if (moved.get(num))
+        {
+          it.add(new Assign(getHolder(num), a.getDef()));
+        }
+      }
+      
+      addKills(a, killed);
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,840 @@
+package optimization;
+
+import general.Consts;
+import general.TempFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+import mips.Exit;
+import mips.Instruction;
+import mips.Registers;
+import threeaddress.Result;
+import threeaddress.TempVar;
+import threeaddress.ThreeAddress;
+import threeaddress.Var;
+
+/**
+ * RegisterAllocator.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Global register allocator, run over the final list of three address code
+ * instructions just before we generate MIPS instructions from them.  We
+ * compute the variables live at each point of the program over its control
+ * flow graph, build the graph of variables which interfere with one another
+ * (that is, which are live at the same time), and color that graph with the
+ * registers available to us in the style of Chaitin and Briggs.  Variables we
+ * fail to find a color for are spilled - they simply stay in memory, and are
+ * loaded into and stored from the scratch registers as before.
+ *
+ * Temporaries can never be addressed, so they can live in registers without
+ * ever touching memory.  User-defined variables are trickier, since they may
+ * be read or written through a pointer.  To deal with this, we never allocate
+ * a register to a variable whose address is taken, we write the new value of a
+ * user-defined variable through to memory whenever it is assigned, and we
+ * never allocate a register to a user-defined variable which is live across a
+ * store through a pointer (which might change its value out from under us).
+ */
+public class RegisterAllocator
+{
+  /**
+   * The registers available for allocation, in the order we prefer to hand
+   * them out.  The temporary registers come first since, unlike the saved
+   * registers, they do not need to be saved and restored around main.
+   */
+  private static final int [] ALLOC_REGS =
+  {
+    2, 3, 4, 5, 6, 7, 8, 9,
+    10, 11, 12, 13, 14, 15, 16, 17
+  };
+  
+  /**
+   * The cost of a variable access inside of a loop is scaled by this much for
+   * each loop it is nested within, capped at MAX_LOOP_DEPTH loops.
+   */
+  private static final double LOOP_WEIGHT = 10.0;
+  private static final int MAX_LOOP_DEPTH = 6;
+  
+  private LinkedList<ThreeAddress> addresses;
+  private TempFactory tFac;
+  
+  /**
+   * Variables are numbered with temporaries first, followed by user-defined
+   * variables.
+   */
+  private int tempCount;
+  private int numVars;
+  
+  /**
+   * One occurrence of each variable, or null if the variable never appears.
+   */
+  private Var [] vars;
+  
+  /**
+   * Whether or not each variable has its address taken somewhere.
+   */
+  private boolean [] addressed;
+  
+  /**
+   * Whether or not each user-defined variable is live across a store through
+   * a pointer.
+   */
+  private boolean [] excluded;
+  
+  /**
+   * The estimated cost of spilling each variable.
+   */
+  private double [] cost;
+  
+  /**
+   * The interference graph and, for each variable, the variables it is copied
+   * to or from (which we'd like to give the same register).
+   */
+  private ArrayList<HashSet<Integer>> adj;
+  private ArrayList<LinkedList<Integer>> moves;
+  
+  /**
+   * The register allocated to each variable.
+   */
+  private int [] color;
+  
+  private BasicBlock [] blkArr;
+  
+  /**
+   * Only variables read in some block before being assigned in that block
+   * (our "global" variables) can be live on entry to a block.  These are
+   * numbered separately so that our per-block live sets stay small.
+   */
+  private int [] globalIdx;
+  private int [] globalVars;
+  private BitSet [] liveIn;
+  private BitSet [] liveOut;
+  
+  /**
+   * Instructions to be executed on entry to the program and just before
+   * exiting it.
+   */
+  private LinkedList<Instruction> entryInst;
+  private LinkedList<Instruction> exitInst;
+  
+  public RegisterAllocator(LinkedList<ThreeAddress> addresses, TempFactory tFac,
+    int tempCount, int userCount)
+  {
+    this.addresses = addresses;
+    this.tFac = tFac;
+    this.tempCount = tempCount;
+    
+    numVars = tempCount + userCount;
+  }
+  
+  /**
+   * Allocate registers to the variables in our code, labeling each variable
+   * appearing in the code with the register it has been allocated (if any).
+   */
+  public void allocate()
+  {
+    LinkedList<BasicBlock> blocks = OptimizerUtils.getBlocks(addresses);
+    OptimizerUtils.linkBlocks(blocks);
+    
+    blkArr = blocks.toArray(new BasicBlock [blocks.size()]);
+    
+    findVars();
+    computeLiveness();
+    buildGraph();
+    colorGraph();
+    
+    // Generate our entry and exit code before labeling the variables in the
+    // code with their registers, since the entry code needs to load user-
+    // defined variables from memory.
+    
+    genEntryAndExit();
+    setRegs();
+  }
+  
+  /**
+   * Add the instructions needed to save and restore the saved registers we
+   * use, and to load user-defined variables living in registers on entry to
+   * the program, into the list of generated instructions.
+   * @param ins - The list of instructions generated for the program.
+   */
+  public void insertEntryAndExitInst(LinkedList<Instruction> ins)
+  {
+    ins.addAll(0, entryInst);
+    
+    ListIterator<Instruction> it = ins.listIterator();
+    
+    while (it.hasNext())
+    {
+      if (it.next() instanceof Exit)
+      {
+        it.previous();
+        
+        for (Instruction i : exitInst)
+        {
+          it.add(i);
+        }
+        
+        it.next();
+      }
+    }
+  }
+  
+  private int getIndex(Var v)
+  {
+    return v.isTemp() ? v.getVarNum() : tempCount + v.getVarNum();
+  }
+  
+  /**
+   * Find an occurrence of each variable in the code, and figure out which
+   * variables have their addresses taken.
+   */
+  private void findVars()
+  {
+    vars = new Var [numVars];
+    addressed = new boolean [numVars];
+    
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (ThreeAddress a : addresses)
+    {
+      uses.clear();
+      a.getUses(uses);
+      
+      for (Result r : uses)
+      {
+        Var v = r.getVar();
+        
+        if (v == null)
+        {
+          continue;
+        }
+        
+        int k = getIndex(v);
+        
+        vars[k] = v;
+        
+        if (r.getUseVar() == null)
+        {
+          addressed[k] = true;
+        }
+      }
+      
+      Var def = a.getDef();
+      
+      if (def != null)
+      {
+        vars[getIndex(def)] = def;
+      }
+    }
+  }
+  
+  /**
+   * Compute the global variables live on entry to and exit from each basic
+   * block, iterating over the control flow graph until nothing changes.
+   */
+  private void computeLiveness()
+  {
+    int numBlks = blkArr.length;
+    
+    // First, find our global variables.  We mark each variable with the last
+    // block it was assigned in, so that we don't need to clear anything
+    // between blocks.
+    
+    int [] killedIn = new int [numVars];
+    Arrays.fill(killedIn, -1);
+    
+    globalIdx = new int [numVars];
+    Arrays.fill(globalIdx, -1);
+    
+    globalVars = new int [numVars];
+    
+    int numGlobals = 0;
+    
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (BasicBlock b : blkArr)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        uses.clear();
+        a.getUses(uses);
+        
+        for (Result r : uses)
+        {
+          Var v = r.getUseVar();
+          
+          if (v == null)
+          {
+            continue;
+          }
+          
+          int k = getIndex(v);
+          
+          if (killedIn[k] != b.getNum() && globalIdx[k] == -1)
+          {
+            globalIdx[k] = numGlobals;
+            globalVars[numGlobals++] = k;
+          }
+        }
+        
+        Var def = a.getDef();
+        
+        if (def != null)
+        {
+          killedIn[getIndex(def)] = b.getNum();
+        }
+      }
+    }
+    
+    // Next, compute the global variables read before being assigned (ueVar)
+    // and assigned (varKill) in each block.
+    
+    BitSet [] ueVar = new BitSet [numBlks];
+    BitSet [] varKill = new BitSet [numBlks];
+    
+    Arrays.fill(killedIn, -1);
+    
+    for (BasicBlock b : blkArr)
+    {
+      int num = b.getNum();
+      
+      ueVar[num] = new BitSet();
+      varKill[num] = new BitSet();
+      
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        uses.clear();
+        a.getUses(uses);
+        
+        for (Result r : uses)
+        {
+          Var v = r.getUseVar();
+          
+          if (v == null)
+          {
+            continue;
+          }
+          
+          int k = getIndex(v);
+          
+          if (globalIdx[k] != -1 && killedIn[k] != num)
+          {
+            ueVar[num].set(globalIdx[k]);
+          }
+        }
+        
+        Var def = a.getDef();
+        
+        if (def != null)
+        {
+          int k = getIndex(def);
+          
+          killedIn[k] = num;
+          
+          if (globalIdx[k] != -1)
+          {
+            varKill[num].set(globalIdx[k]);
+          }
+        }
+      }
+    }
+    
+    // Finally, iterate until we reach a fixed point.  Since liveness flows
+    // backward, we visit the blocks in reverse order.
+    
+    liveIn = new BitSet [numBlks];
+    liveOut = new BitSet [numBlks];
+    
+    for (int i = 0; i < numBlks; i++)
+    {
+      liveIn[i] = new BitSet();
+      liveOut[i] = new BitSet();
+    }
+    
+    boolean changed = true;
+    
+    while (changed)
+    {
+      changed = false;
+      
+      for (int i = numBlks - 1; i >= 0; i--)
+      {
+        BitSet out = new BitSet();
+        
+        for (BasicBlock s : blkArr[i].getSuccs())
+        {
+          out.or(liveIn[s.getNum()]);
+        }
+        
+        BitSet in = (BitSet) out.clone();
+        in.andNot(varKill[i]);
+        in.or(ueVar[i]);
+        
+        liveOut[i] = out;
+        
+        if (!in.equals(liveIn[i]))
+        {
+          liveIn[i] = in;
+          changed = true;
+        }
+      }
+    }
+  }
+  
+  /**
+   * Estimate how deeply each block is nested within loops.  Since our code is
+   * generated from structured statements, every loop shows up as a jump
+   * backward from the bottom of the loop to the top, and each block between
+   * the two is inside of the loop.
+   * @return The loop depth of each block.
+   */
+  private int [] getLoopDepths()
+  {
+    int [] depth = new int [blkArr.length];
+    
+    for (BasicBlock b : blkArr)
+    {
+      for (BasicBlock s : b.getSuccs())
+      {
+        if (s.getNum() <= b.getNum())
+        {
+          for (int i = s.getNum(); i <= b.getNum(); i++)
+          {
+            depth[i]++;
+          }
+        }
+      }
+    }
+    
+    return depth;
+  }
+  
+  /**
+   * Build the interference graph, walking backward through each block from
+   * the set of variables live on exit from it.  Along the way, compute the
+   * spill cost of each variable and rule out user-defined variables which are
+   * live across stores through pointers.
+   */
+  private void buildGraph()
+  {
+    excluded = new boolean [numVars];
+    cost = new double [numVars];
+    
+    adj = new ArrayList<HashSet<Integer>>(numVars);
+    moves = new ArrayList<LinkedList<Integer>>(numVars);
+    
+    for (int k = 0; k < numVars; k++)
+    {
+      adj.add(null);
+      moves.add(null);
+    }
+    
+    int [] depth = getLoopDepths();
+    
+    // We keep the set of live variables as a sparse set, so that adding,
+    // removing and iterating over live variables is cheap no matter how many
+    // variables there are in the program.
+    
+    int [] dense = new int [numVars];
+    int [] sparse = new int [numVars];
+    int size = 0;
+    
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (BasicBlock b : blkArr)
+    {
+      double weight = Math.pow(LOOP_WEIGHT,
+        Math.min(depth[b.getNum()], MAX_LOOP_DEPTH));
+      
+      size = 0;
+      
+      BitSet out = liveOut[b.getNum()];
+      
+      for (int g = out.nextSetBit(0); g >= 0; g = out.nextSetBit(g + 1))
+      {
+        int k = globalVars[g];
+        
+        sparse[k] = size;
+        dense[size++] = k;
+      }
+      
+      Iterator<ThreeAddress> it = b.getBlkAdds().descendingIterator();
+      
+      while (it.hasNext())
+      {
+        ThreeAddress a = it.next();
+        
+        // Any user-defined variable of the store's alias class live after a
+        // store through a pointer may have been changed by it.
+        
+        if (a.isPointerStore())
+        {
+          for (int i = 0; i < size; i++)
+          {
+            if (dense[i] >= tempCount && a.mayStoreTo(vars[dense[i]]))
+            {
+              excluded[dense[i]] = true;
+            }
+          }
+        }
+        
+        Var def = a.getDef();
+        
+        if (def != null)
+        {
+          int k = getIndex(def);
+          
+          // A copy does not make its source and destination interfere - in
+          // fact, we'd like to give them the same register.
+          
+          int src = -1;
+          Result p = a.getPropResult();
+          
+          if (p != null && p.isVar())
+          {
+            src = getIndex(p.getVar());
+            addMove(k, src);
+          }
+          
+          for (int i = 0; i < size; i++)
+          {
+            int l = dense[i];
+            
+            if (l != k && l != src)
+            {
+              addEdge(k, l);
+            }
+          }
+          
+          // Remove the definition from our live set.
+          
+          if (sparse[k] < size && dense[sparse[k]] == k)
+          {
+            int last = dense[--size];
+            dense[sparse[k]] = last;
+            sparse[last] = sparse[k];
+          }
+          
+          cost[k] += weight;
+        }
+        
+        uses.clear();
+        a.getUses(uses);
+        
+        for (Result r : uses)
+        {
+          Var v = r.getUseVar();
+          
+          if (v == null)
+          {
+            continue;
+          }
+          
+          int k = getIndex(v);
+          
+          if (!(sparse[k] < size && dense[sparse[k]] == k))
+          {
+            sparse[k] = size;
+            dense[size++] = k;
+          }
+          
+          cost[k] += weight;
+        }
+      }
+      
+      // The variables live on entry to the program are all loaded at once,
+      // so they interfere with one another as well.
+      
+      if (b.getNum() == 0)
+      {
+        for (int i = 0; i < size; i++)
+        {
+          for (int j = i + 1; j < size; j++)
+          {
+            addEdge(dense[i], dense[j]);
+          }
+        }
+      }
+    }
+  }
+  
+  private void addEdge(int k, int l)
+  {
+    if (addressed[k] || addressed[l])
+    {
+      return;
+    }
+    
+    getAdj(k).add(l);
+    getAdj(l).add(k);
+  }
+  
+  private HashSet<Integer> getAdj(int k)
+  {
+    HashSet<Integer> s = adj.get(k);
+    
+    if (s == null)
+    {
+      s = new HashSet<Integer>();
+      adj.set(k, s);
+    }
+    
+    return s;
+  }
+  
+  private void addMove(int k, int l)
+  {
+    for (int [] pair : new int [] [] {{k, l}, {l, k}})
+    {
+      LinkedList<Integer> m = moves.get(pair[0]);
+      
+      if (m == null)
+      {
+        m = new LinkedList<Integer>();
+        moves.set(pair[0], m);
+      }
+      
+      m.add(pair[1]);
+    }
+  }
+  
+  /**
+   * Color the interference graph.  We repeatedly remove a variable with fewer
+   * neighbors than we have registers from the graph (as such a variable can
+   * always be colored) and push it onto a stack.  If there is no such
+   * variable, we optimistically push the variable which is cheapest to spill
+   * relative to its number of neighbors instead.  Then, we pop variables off
+   * the stack one by one, giving each a register not used by any of its
+   * neighbors, if one exists.
+   */
+  private void colorGraph()
+  {
+    int numRegs = ALLOC_REGS.length;
+    
+    color = new int [numVars];
+    Arrays.fill(color, Registers.NO_REG);
+    
+    boolean [] isNode = new boolean [numVars];
+    int [] degree = new int [numVars];
+    
+    ArrayList<Integer> nodes = new ArrayList<Integer>();
+    
+    for (int k = 0; k < numVars; k++)
+    {
+      isNode[k] = vars[k] != null && !addressed[k] && !excluded[k];
+      
+      if (isNode[k])
+      {
+        nodes.add(k);
+      }
+    }
+    
+    LinkedList<Integer> low = new LinkedList<Integer>();
+    
+    for (int k : nodes)
+    {
+      if (adj.get(k) != null)
+      {
+        for (int n : adj.get(k))
+        {
+          if (isNode[n])
+          {
+            degree[k]++;
+          }
+        }
+      }
+      
+      if (degree[k] < numRegs)
+      {
+        low.add(k);
+      }
+    }
+    
+    // Simplify.
+    
+    boolean [] removed = new boolean [numVars];
+    LinkedList<Integer> stack = new LinkedList<Integer>();
+    int remaining = nodes.size();
+    
+    while (remaining > 0)
+    {
+      int k = -1;
+      
+      while (!low.isEmpty() && k == -1)
+      {
+        int n = low.removeFirst();
+        
+        if (!removed[n])
+        {
+          k = n;
+        }
+      }
+      
+      if (k == -1)
+      {
+        // Every variable left has too many neighbors, so pick one to
+        // (potentially) spill.
+        
+        double best = Double.MAX_VALUE;
+        
+        for (int n : nodes)
+        {
+          if (!removed[n] && cost[n] / degree[n] < best)
+          {
+            best = cost[n] / degree[n];
+            k = n;
+          }
+        }
+      }
+      
+      removed[k] = true;
+      remaining--;
+      stack.push(k);
+      
+      if (adj.get(k) != null)
+      {
+        for (int n : adj.get(k))
+        {
+          if (isNode[n] && !removed[n] && --degree[n] == numRegs - 1)
+          {
+            low.add(n);
+          }
+        }
+      }
+    }
+    
+    // Select.
+    
+    boolean [] used = new boolean [Registers.NUM_TEMP_REGS
+      + Registers.NUM_SAVED_REGS];
+    
+    while (!stack.isEmpty())
+    {
+      int k = stack.pop();
+      
+      Arrays.fill(used, false);
+      
+      if (adj.get(k) != null)
+      {
+        for (int n : adj.get(k))
+        {
+          if (color[n] != Registers.NO_REG)
+          {
+            used[color[n]] = true;
+          }
+        }
+      }
+      
+      // If we're copied to or from a variable which already has a register
+      // we're free to use, use that one, so the copy goes away.
+      
+      if (moves.get(k) != null)
+      {
+        for (int m : moves.get(k))
+        {
+          if (color[m] != Registers.NO_REG && !used[color[m]])
+          {
+            color[k] = color[m];
+            break;
+          }
+        }
+      }
+      
+      for (int i = 0; i < numRegs && color[k] == Registers.NO_REG; i++)
+      {
+        if (!used[ALLOC_REGS[i]])
+        {
+          color[k] = ALLOC_REGS[i];
+        }
+      }
+    }
+  }
+  
+  /**
+   * Generate the instructions to save and restore any saved registers we've
+   * allocated, as well as to load any user-defined variables which live in
+   * registers and are live on entry to the program.
+   */
+  private void genEntryAndExit()
+  {
+    entryInst = new LinkedList<Instruction>();
+    exitInst = new LinkedList<Instruction>();
+    
+    boolean [] usedRegs = new boolean [Registers.NUM_TEMP_REGS
+      + Registers.NUM_SAVED_REGS];
+    
+    for (int k = 0; k < numVars; k++)
+    {
+      if (color[k] != Registers.NO_REG)
+      {
+        usedRegs[color[k]] = true;
+      }
+    }
+    
+    for (int reg = 0; reg < usedRegs.length; reg++)
+    {
+      if (usedRegs[reg] && Registers.isSaved(reg))
+      {
+        TempVar slot = tFac.gen(Consts.INT_SIZE, Consts.INT_ALIGN);
+        slot.getStoreInst(entryInst, reg);
+        slot.getLoadInst(exitInst, reg);
+      }
+    }
+    
+    if (blkArr.length == 0)
+    {
+      return;
+    }
+    
+    BitSet in = liveIn[0];
+    
+    for (int g = in.nextSetBit(0); g >= 0; g = in.nextSetBit(g + 1))
+    {
+      int k = globalVars[g];
+      
+      if (k >= tempCount && color[k] != Registers.NO_REG)
+      {
+        vars[k].getLoadInst(entryInst, color[k]);
+      }
+    }
+  }
+  
+  /**
+   * Label each variable appearing in the code with its register.
+   */
+  private void setRegs()
+  {
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (ThreeAddress a : addresses)
+    {
+      Var def = a.getDef();
+      
+      if (def != null)
+      {
+        def.setReg(color[getIndex(def)]);
+      }
+      
+      uses.clear();
+      a.getUses(uses);
+      
+      for (Result r : uses)
+      {
+        Var v = r.getVar();
+        
+        if (v != null)
+        {
+          v.setReg(color[getIndex(v)]);
+        }
+      }
+    }
+  }
+}
\ No newline at end of file
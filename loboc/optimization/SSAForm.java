@@ -0,0 +1,959 @@
+package optimization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+import general.LabelFactory;
+import general.TempFactory;
+import threeaddress.Assign;
+import threeaddress.CondGoto;
+import threeaddress.Goto;
+import threeaddress.Imm;
+import threeaddress.Label;
+import threeaddress.Phi;
+import threeaddress.Result;
+import threeaddress.ThreeAddress;
+import threeaddress.ValueMap;
+import threeaddress.Var;
+import threeaddress.VarMap;
+
+/**
+ * SSAForm.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Class which puts a list of three address code instructions into static
+ * single assignment (SSA) form, and takes it back out again.  In SSA form,
+ * every definition of a variable gets its own version of the variable, every
+ * use names the one version reaching it, and phis at the top of join points
+ * pick between the versions arriving from each predecessor.  This lets
+ * analyses follow each use straight to its definition rather than going
+ * through reaching definition bit vectors.
+ *
+ * We place phis with the dominance frontiers of the blocks defining each
+ * variable (only for variables which are read in some block before being
+ * assigned in it, since no others can need one), and then rename the
+ * variables in a walk over the dominator tree.  As elsewhere, a store through
+ * a pointer may change any user-defined variable, so it counts as a
+ * definition of each of them - the versions it defines are created as they
+ * are needed.
+ *
+ * Versions of a variable share its storage, so as long as the code is only
+ * changed in ways that keep the live ranges of the versions of each variable
+ * apart (replacing uses with constants, removing code and so on), leaving SSA
+ * form is just a matter of dropping the versions and the phis.  Any phi
+ * argument which isn't a version of the phi's own variable is turned into a
+ * copy on the incoming edge, splitting the edge with a new block if its
+ * predecessor has anywhere else to go.
+ */
+public class SSAForm
+{
+  private LinkedList<BasicBlock> blocks;
+  private DominatorTree dt;
+  
+  /**
+   * The empty block we gave the entry to come from, if any.
+   */
+  private Label entryLabel;
+  
+  private TempFactory tf;
+  private LabelFactory lf;
+  
+  /**
+   * Variables are keyed by number, with the temporaries first, followed by
+   * the user-defined variables.
+   */
+  private int tempCount;
+  private int userCount;
+  
+  /**
+   * An unversioned instance of each variable, and the number of versions of
+   * each variable handed out so far.
+   */
+  private Var [] baseVars;
+  private int [] numVersions;
+  
+  /**
+   * Every version of every variable is given a number, with the versions of
+   * each variable numbered consecutively from the given start.
+   */
+  private int [] valueStart;
+  
+  /**
+   * The temporaries made by newTemp since we went into SSA form, and the
+   * numbers given to each of their versions (following the numbers of the
+   * versions of the other variables).
+   */
+  private HashMap<Integer, Var> newTemps;
+  private HashMap<Integer, ArrayList<Integer>> newTempNums;
+  private int numNewValues;
+  
+  private ValueMap values;
+  
+  /**
+   * While renaming, the current version of each variable (or null if it has
+   * not been defined on the way down the tree), and the number of stores
+   * through pointers passed on the way down the tree when it was defined.
+   */
+  private Var [] cur;
+  private int [] curDepth;
+  
+  /**
+   * While renaming, the stores through pointers passed on the way down the
+   * dominator tree, each with the versions of the user-defined variables it
+   * defines and the alias class it stores to, and a log of the changes to cur
+   * so that we can undo them on the way back up.
+   */
+  private ArrayList<HashMap<Integer, Var>> stores;
+  private ArrayList<Integer> storeClasses;
+  private ArrayList<RenameEntry> log;
+  
+  public SSAForm(LinkedList<ThreeAddress> addresses, TempFactory tf,
+    LabelFactory lf, int userCount)
+  {
+    this.tf = tf;
+    this.lf = lf;
+    this.tempCount = tf.getTempNum();
+    this.userCount = userCount;
+    this.newTemps = new HashMap<Integer, Var>();
+    this.newTempNums = new HashMap<Integer, ArrayList<Integer>>();
+    
+    // Versions are numbered as above, and constants are given negative
+    // numbers of their own.
+    
+    this.values = new ValueMap()
+    {
+      private HashMap<Integer, Integer> constNums =
+        new HashMap<Integer, Integer>();
+      
+      public int getValueNum(Result r)
+      {
+        if (r.isVar())
+        {
+          return SSAForm.this.getValueNum((Var) r);
+        }
+        
+        if (r.isImm())
+        {
+          int bits = ((Imm) r).getBits();
+          Integer num = constNums.get(bits);
+          
+          if (num == null)
+          {
+            num = -2 - constNums.size();
+            constNums.put(bits, num);
+          }
+          
+          return num;
+        }
+        
+        return -1;
+      }
+    };
+    
+    // The entry block must not have any predecessors, or there would be
+    // nowhere for its phis to take the values the variables hold on entry
+    // from.  If it may be jumped to, give it a new empty block to come from.
+    
+    if (!addresses.isEmpty() && addresses.getFirst().isLabel())
+    {
+      entryLabel = new Label(lf.gen());
+      addresses.addFirst(entryLabel);
+    }
+    
+    blocks = OptimizerUtils.getBlocks(addresses);
+    OptimizerUtils.linkBlocks(blocks);
+    
+    dt = new DominatorTree(blocks);
+    
+    build();
+  }
+  
+  public LinkedList<BasicBlock> getBlocks()
+  {
+    return blocks;
+  }
+  
+  public DominatorTree getDominatorTree()
+  {
+    return dt;
+  }
+  
+  private int getKey(Var v)
+  {
+    return v.isTemp() ? v.getVarNum() : tempCount + v.getVarNum();
+  }
+  
+  /**
+   * Get the number of versions of all variables.
+   * @return The number of versions.
+   */
+  public int getNumValues()
+  {
+    return valueStart[valueStart.length - 1] + numNewValues;
+  }
+  
+  /**
+   * Get the number given to a version of a variable, so that analyses can
+   * keep what they know about each version in an array.
+   * @param v - The version of the variable.
+   * @return The number of the version, between 0 and getNumValues().
+   */
+  public int getValueNum(Var v)
+  {
+    if (v.isTemp() && v.getVarNum() >= tempCount)
+    {
+      ArrayList<Integer> nums = newTempNums.get(v.getVarNum());
+      
+      return valueStart[valueStart.length - 1] + nums.get(v.getVersion());
+    }
+    
+    return valueStart[getKey(v)] + v.getVersion();
+  }
+  
+  /**
+   * Get a mapping from each result to a value number, where every version of
+   * every variable and every constant has a number of its own.
+   * @return The mapping.
+   */
+  public ValueMap getValueMap()
+  {
+    return values;
+  }
+  
+  /**
+   * Make a new temporary, whose first version is to be assigned exactly once.
+   * @param size - The size of the temporary.
+   * @param align - The alignment of the temporary.
+   * @return The first version of the new temporary.
+   */
+  public Var newTemp(int size, int align)
+  {
+    Var t = tf.gen(size, align);
+    
+    newTemps.put(t.getVarNum(), t);
+    newTempNums.put(t.getVarNum(), new ArrayList<Integer>());
+    
+    return newTempVersion(t);
+  }
+  
+  /**
+   * Make another version of a temporary made by newTemp, to be assigned
+   * exactly once.  As with the versions we make ourselves, the versions of
+   * the temporary must be kept from interfering with one another.
+   * @param t - The temporary (any version of it).
+   * @return The new version.
+   */
+  public Var newTempVersion(Var t)
+  {
+    ArrayList<Integer> nums = newTempNums.get(t.getVarNum());
+    Var v = t.withVersion(nums.size());
+    
+    nums.add(numNewValues++);
+    
+    return v;
+  }
+  
+  /**
+   * Put our blocks into SSA form.
+   */
+  private void build()
+  {
+    int numKeys = tempCount + userCount;
+    
+    baseVars = new Var [numKeys];
+    numVersions = new int [numKeys];
+    
+    // First, find the global variables, the blocks defining each variable,
+    // and the blocks containing stores through pointers of each alias class.
+    
+    boolean [] global = new boolean [numKeys];
+    int [] killedIn = new int [numKeys];
+    
+    ArrayList<LinkedList<BasicBlock>> defBlocks =
+      new ArrayList<LinkedList<BasicBlock>>(numKeys);
+    HashMap<Integer, LinkedList<BasicBlock>> storeBlocks =
+      new HashMap<Integer, LinkedList<BasicBlock>>();
+    
+    for (int k = 0; k < numKeys; k++)
+    {
+      killedIn[k] = -1;
+      defBlocks.add(new LinkedList<BasicBlock>());
+    }
+    
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (BasicBlock b : dt.getRPO())
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        uses.clear();
+        a.getUses(uses);
+        
+        for (Result r : uses)
+        {
+          Var v = r.getUseVar();
+          
+          if (v != null)
+          {
+            int key = getKey(v);
+            
+            baseVars[key] = v;
+            
+            if (killedIn[key] != b.getNum())
+            {
+              global[key] = true;
+            }
+          }
+        }
+        
+        if (a.isPointerStore())
+        {
+          LinkedList<BasicBlock> blks = storeBlocks.get(a.getStoreClass());
+          
+          if (blks == null)
+          {
+            blks = new LinkedList<BasicBlock>();
+            storeBlocks.put(a.getStoreClass(), blks);
+          }
+          
+          if (blks.isEmpty() || blks.getLast() != b)
+          {
+            blks.add(b);
+          }
+        }
+        
+        Var def = a.getDef();
+        
+        if (def != null)
+        {
+          int key = getKey(def);
+          
+          baseVars[key] = def;
+          killedIn[key] = b.getNum();
+          
+          LinkedList<BasicBlock> blks = defBlocks.get(key);
+          
+          if (blks.isEmpty() || blks.getLast() != b)
+          {
+            blks.add(b);
+          }
+        }
+      }
+    }
+    
+    // Next, place phis for each global variable at the iterated dominance
+    // frontier of the blocks defining it.
+    
+    ArrayList<LinkedList<Phi>> phis =
+      new ArrayList<LinkedList<Phi>>(blocks.size());
+    
+    for (int i = 0; i < blocks.size(); i++)
+    {
+      phis.add(new LinkedList<Phi>());
+    }
+    
+    int [] hasPhi = new int [blocks.size()];
+    int [] inWork = new int [blocks.size()];
+    
+    for (int key = 0; key < numKeys; key++)
+    {
+      if (!global[key])
+      {
+        continue;
+      }
+      
+      LinkedList<BasicBlock> work = new LinkedList<BasicBlock>();
+      
+      for (BasicBlock b : defBlocks.get(key))
+      {
+        inWork[b.getNum()] = key + 1;
+        work.add(b);
+      }
+      
+      // A store through a pointer of a user-defined variable's alias class
+      // may define it as well.
+      
+      LinkedList<BasicBlock> blks = key < tempCount ? null
+        : storeBlocks.get(baseVars[key].getAliasClass());
+      
+      if (blks != null)
+      {
+        for (BasicBlock b : blks)
+        {
+          if (inWork[b.getNum()] != key + 1)
+          {
+            inWork[b.getNum()] = key + 1;
+            work.add(b);
+          }
+        }
+      }
+      
+      while (!work.isEmpty())
+      {
+        BasicBlock b = work.remove();
+        
+        for (BasicBlock f : dt.getFrontier(b))
+        {
+          if (hasPhi[f.getNum()] == key + 1)
+          {
+            continue;
+          }
+          
+          hasPhi[f.getNum()] = key + 1;
+          
+          // Until renaming fills them in, every argument is just the variable
+          // itself - which is what the arguments from unreachable
+          // predecessors will stay.
+          
+          Phi phi = new Phi(baseVars[key], f.getPreds().size());
+          
+          for (int i = 0; i < phi.getNumArgs(); i++)
+          {
+            phi.setArg(i, baseVars[key]);
+          }
+          
+          phis.get(f.getNum()).add(phi);
+          
+          if (inWork[f.getNum()] != key + 1)
+          {
+            inWork[f.getNum()] = key + 1;
+            work.add(f);
+          }
+        }
+      }
+    }
+    
+    // Insert the phis at the top of each block, just after its label.
+    
+    for (BasicBlock b : blocks)
+    {
+      LinkedList<Phi> bPhis = phis.get(b.getNum());
+      
+      if (bPhis.isEmpty())
+      {
+        continue;
+      }
+      
+      ListIterator<ThreeAddress> it = b.getBlkAdds().listIterator();
+      
+      if (it.hasNext() && !it.next().isLabel())
+      {
+        it.previous();
+      }
+      
+      for (Phi phi : bPhis)
+      {
+        it.add(phi);
+      }
+    }
+    
+    rename();
+    
+    valueStart = new int [numKeys + 1];
+    
+    for (int key = 0; key < numKeys; key++)
+    {
+      valueStart[key + 1] = valueStart[key] + numVersions[key] + 1;
+    }
+    
+    // Finally, number the instructions in their new order.
+    
+    int idx = 0;
+    
+    for (BasicBlock b : blocks)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        a.setIdx(idx++);
+      }
+    }
+  }
+  
+  /**
+   * Rename every variable in the reachable blocks, walking down the dominator
+   * tree with the current version of each variable.
+   */
+  private void rename()
+  {
+    int numKeys = tempCount + userCount;
+    
+    cur = new Var [numKeys];
+    curDepth = new int [numKeys];
+    stores = new ArrayList<HashMap<Integer, Var>>();
+    storeClasses = new ArrayList<Integer>();
+    log = new ArrayList<RenameEntry>();
+    
+    if (blocks.isEmpty())
+    {
+      return;
+    }
+    
+    VarMap lookup = new VarMap()
+    {
+      public Var map(Var v)
+      {
+        return getCurrent(v);
+      }
+    };
+    
+    // Each frame of our stack holds a block whose children we are visiting,
+    // along with how far to unwind the log and the stores once we are done.
+    
+    LinkedList<RenameFrame> stack = new LinkedList<RenameFrame>();
+    
+    stack.push(enterBlock(blocks.getFirst(), lookup));
+    
+    while (!stack.isEmpty())
+    {
+      RenameFrame f = stack.peek();
+      
+      if (f.children.hasNext())
+      {
+        stack.push(enterBlock(f.children.next(), lookup));
+        continue;
+      }
+      
+      stack.pop();
+      
+      while (log.size() > f.logSize)
+      {
+        RenameEntry e = log.remove(log.size() - 1);
+        
+        cur[e.key] = e.prev;
+        curDepth[e.key] = e.prevDepth;
+      }
+      
+      while (stores.size() > f.numStores)
+      {
+        stores.remove(stores.size() - 1);
+        storeClasses.remove(storeClasses.size() - 1);
+      }
+    }
+  }
+  
+  /**
+   * Rename the variables in the given block, and fill in the arguments of
+   * the phis in its successors.
+   * @param b - The block.
+   * @param lookup - The mapping from each variable to its current version.
+   * @return The stack frame for the block.
+   */
+  private RenameFrame enterBlock(BasicBlock b, VarMap lookup)
+  {
+    RenameFrame f = new RenameFrame();
+    f.logSize = log.size();
+    f.numStores = stores.size();
+    f.children = dt.getChildren(b).iterator();
+    
+    for (ThreeAddress a : b.getBlkAdds())
+    {
+      if (!(a instanceof Phi))
+      {
+        a.renameUses(lookup);
+      }
+      
+      if (a.isPointerStore())
+      {
+        stores.add(new HashMap<Integer, Var>());
+        storeClasses.add(a.getStoreClass());
+      }
+      
+      Var def = a.getDef();
+      
+      if (def != null)
+      {
+        a.setDef(newVersion(def));
+      }
+    }
+    
+    for (BasicBlock s : b.getSuccs())
+    {
+      int j = s.getPreds().indexOf(b);
+      
+      for (ThreeAddress a : s.getBlkAdds())
+      {
+        if (a instanceof Phi)
+        {
+          Phi phi = (Phi) a;
+          phi.setArg(j, getCurrent(phi.getDef()));
+        }
+        else if (!a.isLabel())
+        {
+          break;
+        }
+      }
+    }
+    
+    return f;
+  }
+  
+  /**
+   * Give the variable a new version, making it the current one.
+   * @param v - The variable being defined.
+   * @return The new version.
+   */
+  private Var newVersion(Var v)
+  {
+    int key = getKey(v);
+    Var nv = v.withVersion(++numVersions[key]);
+    
+    log.add(new RenameEntry(key, cur[key], curDepth[key]));
+    
+    cur[key] = nv;
+    curDepth[key] = stores.size();
+    
+    return nv;
+  }
+  
+  /**
+   * Get the current version of the variable.
+   * @param v - The variable (any version of it).
+   * @return The version of v reaching the current point in the walk.
+   */
+  private Var getCurrent(Var v)
+  {
+    int key = getKey(v);
+    
+    // A user-defined variable last defined before the latest store through a
+    // pointer of its alias class takes the version defined by that store.
+    
+    if (!v.isTemp())
+    {
+      for (int i = stores.size() - 1; i >= curDepth[key]; i--)
+      {
+        if (storeClasses.get(i) != v.getAliasClass())
+        {
+          continue;
+        }
+        
+        HashMap<Integer, Var> store = stores.get(i);
+        Var sv = store.get(key);
+        
+        if (sv == null)
+        {
+          sv = v.withVersion(++numVersions[key]);
+          store.put(key, sv);
+        }
+        
+        return sv;
+      }
+    }
+    
+    if (cur[key] == null)
+    {
+      return baseVars[key] != null ? baseVars[key] : v;
+    }
+    
+    return cur[key];
+  }
+  
+  /**
+   * Take our blocks back out of SSA form, replacing each version of a
+   * variable with the variable itself and each phi with copies on the
+   * incoming edges (where needed).
+   * @return The resulting list of instructions.
+   */
+  public LinkedList<ThreeAddress> destroy()
+  {
+    VarMap strip = new VarMap()
+    {
+      public Var map(Var v)
+      {
+        // Temporaries made since we entered SSA form are kept apart from
+        // the others.
+        
+        if (v.isTemp() && v.getVarNum() >= tempCount)
+        {
+          Var base = newTemps.get(v.getVarNum());
+          
+          return base != null ? base : v;
+        }
+        
+        Var base = baseVars[getKey(v)];
+        
+        return base != null ? base : v;
+      }
+    };
+    
+    // First, gather the copies needed on each edge into a block with phis,
+    // removing the phis as we go.  Then drop the versions everywhere else.
+    
+    HashMap<BasicBlock, LinkedList<ThreeAddress>> after =
+      new HashMap<BasicBlock, LinkedList<ThreeAddress>>();
+    LinkedList<ThreeAddress> atEnd = new LinkedList<ThreeAddress>();
+    
+    for (BasicBlock b : blocks)
+    {
+      LinkedList<Phi> bPhis = new LinkedList<Phi>();
+      
+      Iterator<ThreeAddress> it = b.getBlkAdds().iterator();
+      
+      while (it.hasNext())
+      {
+        ThreeAddress a = it.next();
+        
+        if (a instanceof Phi)
+        {
+          bPhis.add((Phi) a);
+          it.remove();
+        }
+      }
+      
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        a.renameUses(strip);
+        
+        if (a.getDef() != null)
+        {
+          a.setDef(strip.map(a.getDef()));
+        }
+      }
+      
+      if (bPhis.isEmpty())
+      {
+        continue;
+      }
+      
+      int j = 0;
+      
+      for (BasicBlock p : b.getPreds())
+      {
+        LinkedList<Copy> copies = new LinkedList<Copy>();
+        
+        for (Phi phi : bPhis)
+        {
+          Var dst = strip.map(phi.getDef());
+          Result src = phi.getArg(j).renameUses(strip);
+          
+          if (!src.isVar() || !src.getVar().equals(dst))
+          {
+            copies.add(new Copy(dst, src));
+          }
+        }
+        
+        if (!copies.isEmpty())
+        {
+          placeCopies(p, b, sequentialize(copies), after, atEnd);
+        }
+        
+        j++;
+      }
+    }
+    
+    // Reassemble the instructions, adding any blocks we split edges with.
+    
+    LinkedList<ThreeAddress> addresses = new LinkedList<ThreeAddress>();
+    
+    for (BasicBlock b : blocks)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        if (a != entryLabel)
+        {
+          addresses.add(a);
+        }
+      }
+      
+      if (after.containsKey(b))
+      {
+        addresses.addAll(after.get(b));
+      }
+    }
+    
+    if (!atEnd.isEmpty())
+    {
+      // Make sure we don't fall into the new blocks from the end of the
+      // program.
+      
+      if (addresses.isEmpty() || addresses.getLast().canFallThrough())
+      {
+        String endLabel = lf.gen();
+        
+        addresses.add(new Goto(endLabel));
+        atEnd.add(new Label(endLabel));
+      }
+      
+      addresses.addAll(atEnd);
+    }
+    
+    return addresses;
+  }
+  
+  /**
+   * Place a list of copies on the edge from p to b.  If p goes nowhere else,
+   * the copies go at the end of p (before its jump, if any).  Otherwise, we
+   * split the edge with a new block holding the copies - just after p if the
+   * edge is p's fall through, or at the end of the program if p jumps to b.
+   * @param p - The predecessor.
+   * @param b - The block with the phis.
+   * @param copies - The copies, in order.
+   * @param after - The new blocks to place after each block.
+   * @param atEnd - The new blocks to place at the end of the program.
+   */
+  private void placeCopies(BasicBlock p, BasicBlock b,
+    LinkedList<ThreeAddress> copies,
+    HashMap<BasicBlock, LinkedList<ThreeAddress>> after,
+    LinkedList<ThreeAddress> atEnd)
+  {
+    LinkedList<ThreeAddress> pAdds = p.getBlkAdds();
+    ThreeAddress last = pAdds.isEmpty() ? null : pAdds.getLast();
+    
+    boolean jumps = last != null && b.getLabel() != null
+      && b.getLabel().equals(last.getJumpLabel());
+    
+    if (last == null || !last.isJump())
+    {
+      pAdds.addAll(copies);
+    }
+    else if (last instanceof Goto)
+    {
+      pAdds.addAll(pAdds.size() - 1, copies);
+    }
+    else
+    {
+      // A conditional goto, which may go to b either way.
+      
+      boolean fallsThrough = !jumps || p.getSuccs().size() == 1;
+      
+      LinkedList<ThreeAddress> split = new LinkedList<ThreeAddress>();
+      
+      if (jumps)
+      {
+        String label = lf.gen();
+        
+        ((CondGoto) last).setJumpLabel(label);
+        split.add(new Label(label));
+      }
+      
+      split.addAll(copies);
+      
+      if (fallsThrough)
+      {
+        after.put(p, split);
+      }
+      else
+      {
+        split.add(new Goto(b.getLabel()));
+        atEnd.addAll(split);
+      }
+    }
+  }
+  
+  /**
+   * Order a set of copies meant to happen all at once so that no copy
+   * overwrites a variable before another copy reads it, breaking any cycles
+   * with a new temporary.
+   * @param copies - The copies.
+   * @return The instructions carrying out the copies.
+   */
+  private LinkedList<ThreeAddress> sequentialize(LinkedList<Copy> copies)
+  {
+    LinkedList<ThreeAddress> ret = new LinkedList<ThreeAddress>();
+    
+    while (!copies.isEmpty())
+    {
+      Copy ready = null;
+      
+      for (Copy c : copies)
+      {
+        if (!isRead(c, copies))
+        {
+          ready = c;
+          break;
+        }
+      }
+      
+      if (ready != null)
+      {
+        copies.remove(ready);
+        ret.add(new Assign(ready.dst, ready.src));
+        continue;
+      }
+      
+      // Every remaining destination is still to be read, so we have a cycle.
+      // Save one destination in a temporary and read it from there.
+      
+      Var saved = copies.getFirst().dst;
+      Var t = tf.gen(saved.getSize(), saved.getAlign());
+      
+      ret.add(new Assign(t, saved));
+      
+      for (Copy c : copies)
+      {
+        if (c.src.isVar() && c.src.getVar().equals(saved))
+        {
+          c.src = t;
+        }
+      }
+    }
+    
+    return ret;
+  }
+  
+  /**
+   * Determine whether or not the destination of a copy is read by any of the
+   * other copies.
+   */
+  private boolean isRead(Copy copy, LinkedList<Copy> copies)
+  {
+    for (Copy c : copies)
+    {
+      Var u = c.src.getUseVar();
+      
+      if (c != copy && u != null && u.equals(copy.dst))
+      {
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  /**
+   * A copy of a result into a variable on some edge.
+   */
+  private static class Copy
+  {
+    Var dst;
+    Result src;
+    
+    Copy(Var dst, Result src)
+    {
+      this.dst = dst;
+      this.src = src;
+    }
+  }
+  
+  /**
+   * A change to the current version of a variable while renaming.
+   */
+  private static class RenameEntry
+  {
+    int key;
+    Var prev;
+    int prevDepth;
+    
+    RenameEntry(int key, Var prev, int prevDepth)
+    {
+      this.key = key;
+      this.prev = prev;
+      this.prevDepth = prevDepth;
+    }
+  }
+  
+  /**
+   * A block on the renaming stack.
+   */
+  private static class RenameFrame
+  {
+    int logSize;
+    int numStores;
+    Iterator<BasicBlock> children;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,690 @@
+package optimization;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import general.Consts;
+import threeaddress.Assign;
+import threeaddress.BOpType;
+import threeaddress.Binary;
+import threeaddress.Phi;
+import threeaddress.Result;
+import threeaddress.ThreeAddress;
+import threeaddress.ValueMap;
+import threeaddress.Var;
+
+/**
+ * StrengthReducer.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Strength reduction of induction variables over code in SSA form.  A basic
+ * induction variable of a loop is one stepped by the same loop-invariant
+ * amount on each trip around the loop - in SSA form, a phi at the top of the
+ * loop whose value from around the loop is the phi plus or minus an invariant.
+ * A derived induction variable is the product of a basic one with another
+ * invariant, such as the offset of an element in an array indexed by a loop
+ * counter.
+ *
+ * Rather than multiply on every trip, we give each distinct product a new
+ * induction variable of its own, starting at the product of the starting
+ * value of the basic one and stepped by the product of its step, and copy
+ * that in place of the multiplication.  Once we're done, any basic induction
+ * variable (held in a temporary) which is no longer read but to step itself
+ * is removed.
+ */
+public class StrengthReducer
+{
+  private SSAForm ssa;
+  private DominatorTree dt;
+  private ValueMap values;
+  
+  /**
+   * The instruction defining each version of each variable, and the block it
+   * is in, if it is defined by an instruction.
+   */
+  private ArrayList<ThreeAddress> defInsts;
+  private ArrayList<BasicBlock> defBlocks;
+  
+  public StrengthReducer(SSAForm ssa)
+  {
+    this.ssa = ssa;
+    this.dt = ssa.getDominatorTree();
+    this.values = ssa.getValueMap();
+  }
+  
+  /**
+   * Reduce the multiplications of induction variables in every loop with a
+   * preheader.
+   * @return True if any change was made to the code.
+   */
+  public boolean run()
+  {
+    LinkedList<BasicBlock> blocks = ssa.getBlocks();
+    
+    defInsts = new ArrayList<ThreeAddress>();
+    defBlocks = new ArrayList<BasicBlock>();
+    
+    for (BasicBlock b : blocks)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        if (a.getDef() != null)
+        {
+          setDef(a, b);
+        }
+      }
+    }
+    
+    boolean changed = false;
+    LinkedList<InductionVar> basics = new LinkedList<InductionVar>();
+    
+    for (Loop l : Loop.findLoops(blocks, dt))
+    {
+      if (l.getPreheader() == null)
+      {
+        continue;
+      }
+      
+      BasicBlock latch = getLatch(l);
+      
+      if (latch == null)
+      {
+        continue;
+      }
+      
+      LinkedList<InductionVar> ivs = findBasics(l, latch);
+      
+      // Only the loops we've changed may have induction variables left
+      // unneeded.
+      
+      if (!ivs.isEmpty() && reduce(l, latch, ivs))
+      {
+        changed = true;
+        basics.addAll(ivs);
+      }
+    }
+    
+    if (changed)
+    {
+      removeUnused(blocks, basics);
+    }
+    
+    return changed;
+  }
+  
+  private void setDef(ThreeAddress a, BasicBlock b)
+  {
+    int num = ssa.getValueNum(a.getDef());
+    
+    while (defInsts.size() <= num)
+    {
+      defInsts.add(null);
+      defBlocks.add(null);
+    }
+    
+    defInsts.set(num, a);
+    defBlocks.set(num, b);
+  }
+  
+  private ThreeAddress getDefInst(Var v)
+  {
+    int num = ssa.getValueNum(v);
+    
+    return num < defInsts.size() ? defInsts.get(num) : null;
+  }
+  
+  private BasicBlock getDefBlock(Var v)
+  {
+    int num = ssa.getValueNum(v);
+    
+    return num < defBlocks.size() ? defBlocks.get(num) : null;
+  }
+  
+  /**
+   * Get the block at the end of the only back edge of a loop.
+   * @param l - The loop.
+   * @return The only block in the loop leading to its header, or null if
+   * there is more than one.
+   */
+  private BasicBlock getLatch(Loop l)
+  {
+    BasicBlock latch = null;
+    
+    for (BasicBlock p : l.getHeader().getPreds())
+    {
+      if (l.contains(p))
+      {
+        if (latch != null)
+        {
+          return null;
+        }
+        
+        latch = p;
+      }
+    }
+    
+    return latch;
+  }
+  
+  /**
+   * Determine whether or not a result holds the same value throughout a loop.
+   * @param r - The result.
+   * @param l - The loop.
+   * @param memChanges - The alias classes of memory changed within the loop.
+   * @return True if r is a constant, an address, or a version defined
+   * outside l.
+   */
+  private boolean isInvariant(Result r, Loop l, BitSet memChanges)
+  {
+    if (!r.isVar())
+    {
+      return r.getUseVar() == null;
+    }
+    
+    Var v = (Var) r;
+    BasicBlock db = getDefBlock(v);
+    
+    if (db != null)
+    {
+      return !l.contains(db);
+    }
+    
+    // As with moving code out of loops, versions left by stores through
+    // pointers only come from within the loop if it stores through a pointer
+    // of the same class.
+    
+    return v.getVersion() == 0
+      || (!v.isTemp() && !memChanges.get(v.getAliasClass()));
+  }
+  
+  /**
+   * Find the basic induction variables of a loop.
+   * @param l - The loop.
+   * @param latch - The source of the loop's back edge.
+   * @return The list of basic induction variables.
+   */
+  private LinkedList<InductionVar> findBasics(Loop l, BasicBlock latch)
+  {
+    LinkedList<InductionVar> ivs = new LinkedList<InductionVar>();
+    BasicBlock header = l.getHeader();
+    BitSet memChanges = l.getChangedClasses();
+    
+    int preIdx = header.getPreds().indexOf(l.getPreheader());
+    int latchIdx = header.getPreds().indexOf(latch);
+    
+    for (ThreeAddress a : header.getBlkAdds())
+    {
+      if (!(a instanceof Phi))
+      {
+        continue;
+      }
+      
+      Phi phi = (Phi) a;
+      Var x = phi.getDef();
+      Result next = phi.getArg(latchIdx);
+      
+      if (x.getSize() < Consts.INT_SIZE || !next.isVar())
+      {
+        continue;
+      }
+      
+      // The value from around the loop must be the phi stepped by some
+      // invariant (perhaps by way of some copies).
+      
+      ThreeAddress ni = getDefInst((Var) next);
+      
+      while (ni instanceof Assign && ni.getPropResult() != null
+        && ni.getPropResult().isVar())
+      {
+        ni = getDefInst((Var) ni.getPropResult());
+      }
+      
+      if (!(ni instanceof Binary) || !l.contains(getDefBlock(ni.getDef())))
+      {
+        continue;
+      }
+      
+      Binary inc = (Binary) ni;
+      Result step = null;
+      
+      if (inc.getOp() == BOpType.ADD && isSame(inc.getR1(), x))
+      {
+        step = inc.getR2();
+      }
+      else if (inc.getOp() == BOpType.ADD && isSame(inc.getR2(), x))
+      {
+        step = inc.getR1();
+      }
+      else if (inc.getOp() == BOpType.SUB && isSame(inc.getR1(), x))
+      {
+        step = inc.getR2();
+      }
+      
+      if (step != null && isInvariant(step, l, memChanges))
+      {
+        InductionVar iv = new InductionVar();
+        iv.header = header;
+        iv.phi = phi;
+        iv.next = next;
+        iv.inc = inc;
+        iv.init = phi.getArg(preIdx);
+        iv.step = step;
+        iv.down = inc.getOp() == BOpType.SUB;
+        ivs.add(iv);
+      }
+    }
+    
+    return ivs;
+  }
+  
+  private boolean isSame(Result r, Var v)
+  {
+    return r.isVar() && ssa.getValueNum((Var) r) == ssa.getValueNum(v);
+  }
+  
+  /**
+   * Replace the multiplications of the given basic induction variables by
+   * invariants in a loop with induction variables of their own.
+   * @param l - The loop.
+   * @param latch - The source of the loop's back edge.
+   * @param ivs - The basic induction variables of the loop.
+   * @return True if any multiplication was replaced.
+   */
+  private boolean reduce(Loop l, BasicBlock latch,
+    LinkedList<InductionVar> ivs)
+  {
+    BitSet memChanges = l.getChangedClasses();
+    boolean changed = false;
+    
+    // The induction variable made for each distinct product, and the basic
+    // induction variables offset by invariants (by the number of the version
+    // holding each).
+    
+    HashMap<ValueTable.Key, Var> reduced = new HashMap<ValueTable.Key, Var>();
+    HashMap<Integer, InductionVar> offsets =
+      new HashMap<Integer, InductionVar>();
+    
+    for (BasicBlock b : l.getBlocks())
+    {
+      // Making a new induction variable may add to this very block, so we go
+      // through a copy of it.
+      
+      LinkedList<ThreeAddress> adds = b.getBlkAdds();
+      
+      for (ThreeAddress a : new ArrayList<ThreeAddress>(adds))
+      {
+        if (!(a instanceof Binary) || a.getDef().getSize() < Consts.INT_SIZE)
+        {
+          continue;
+        }
+        
+        Binary mul = (Binary) a;
+        
+        if (mul.getOp() == BOpType.ADD || mul.getOp() == BOpType.SUB)
+        {
+          InductionVar off = getOffset(ivs, mul, l, memChanges);
+          
+          if (off != null)
+          {
+            offsets.put(ssa.getValueNum(mul.getDef()), off);
+          }
+          
+          continue;
+        }
+        
+        if (mul.getOp() != BOpType.MULT && mul.getOp() != BOpType.MULTU)
+        {
+          continue;
+        }
+        
+        // One side must be an induction variable (basic, or offset by an
+        // invariant), and the other an invariant.
+        
+        InductionVar iv = getInductionVar(ivs, offsets, mul.getR1());
+        Result factor = mul.getR2();
+        
+        if (iv == null)
+        {
+          iv = getInductionVar(ivs, offsets, mul.getR2());
+          factor = mul.getR1();
+        }
+        
+        if (iv == null || !isInvariant(factor, l, memChanges))
+        {
+          continue;
+        }
+        
+        ValueTable.Key key = mul.getValueKey(values);
+        Var s = reduced.get(key);
+        
+        if (s == null)
+        {
+          s = addDerived(l, latch, iv, factor, mul);
+          reduced.put(key, s);
+        }
+        
+        Assign copy = new Assign(mul.getDef(), s);
+        copy.setIdx(mul.getIdx());
+        adds.set(adds.indexOf(mul), copy);
+        changed = true;
+      }
+    }
+    
+    return changed;
+  }
+  
+  private InductionVar getInductionVar(LinkedList<InductionVar> ivs,
+    HashMap<Integer, InductionVar> offsets, Result r)
+  {
+    if (!r.isVar())
+    {
+      return null;
+    }
+    
+    for (InductionVar iv : ivs)
+    {
+      if (isSame(r, iv.phi.getDef()))
+      {
+        return iv;
+      }
+    }
+    
+    return offsets.get(ssa.getValueNum((Var) r));
+  }
+  
+  /**
+   * Determine whether or not an addition or subtraction offsets a basic
+   * induction variable by an invariant.
+   * @param ivs - The basic induction variables of the loop.
+   * @param bin - The addition or subtraction.
+   * @param l - The loop.
+   * @param memChanges - The alias classes of memory changed within the loop.
+   * @return The induction variable computed by bin, or null if it isn't one.
+   */
+  private InductionVar getOffset(LinkedList<InductionVar> ivs, Binary bin,
+    Loop l, BitSet memChanges)
+  {
+    InductionVar basic = null;
+    Result offset = null;
+    
+    for (InductionVar iv : ivs)
+    {
+      if (isSame(bin.getR1(), iv.phi.getDef()))
+      {
+        basic = iv;
+        offset = bin.getR2();
+      }
+      else if (bin.getOp() == BOpType.ADD
+        && isSame(bin.getR2(), iv.phi.getDef()))
+      {
+        basic = iv;
+        offset = bin.getR1();
+      }
+    }
+    
+    if (basic == null || !isInvariant(offset, l, memChanges))
+    {
+      return null;
+    }
+    
+    InductionVar off = new InductionVar();
+    off.header = basic.header;
+    off.phi = basic.phi;
+    off.inc = basic.inc;
+    off.init = basic.init;
+    off.step = basic.step;
+    off.down = basic.down;
+    off.offset = offset;
+    off.offsetOp = bin.getOp();
+    
+    return off;
+  }
+  
+  /**
+   * Make a new induction variable holding the product of an induction
+   * variable and an invariant.
+   * @param l - The loop.
+   * @param latch - The source of the loop's back edge.
+   * @param iv - The induction variable.
+   * @param factor - The invariant.
+   * @param mul - The multiplication being replaced.
+   * @return The version of the new induction variable defined at the top of
+   * the loop.
+   */
+  private Var addDerived(Loop l, BasicBlock latch, InductionVar iv,
+    Result factor, Binary mul)
+  {
+    Var def = mul.getDef();
+    
+    Var s0 = ssa.newTemp(def.getSize(), def.getAlign());
+    Var s1 = ssa.newTempVersion(s0);
+    Var s2 = ssa.newTempVersion(s0);
+    Var inc = ssa.newTemp(def.getSize(), def.getAlign());
+    
+    // The starting value and the step are computed in the preheader, ...
+    
+    LinkedList<ThreeAddress> pre = new LinkedList<ThreeAddress>();
+    Result start = iv.init;
+    
+    if (iv.offset != null)
+    {
+      start = ssa.newTemp(def.getSize(), def.getAlign());
+      pre.add(new Binary((Var) start, iv.init, iv.offset, iv.offsetOp));
+    }
+    
+    pre.add(new Binary(s0, start, factor, mul.getOp()));
+    pre.add(new Binary(inc, iv.step, factor, mul.getOp()));
+    insertAtEnd(l.getPreheader(), pre);
+    
+    // ... the value on each trip is picked at the top of the loop, ...
+    
+    BasicBlock header = l.getHeader();
+    Phi phi = new Phi(s1, header.getPreds().size());
+    
+    for (int j = 0; j < phi.getNumArgs(); j++)
+    {
+      BasicBlock p = header.getPreds().get(j);
+      phi.setArg(j, p == l.getPreheader() ? s0 : (p == latch ? s2 : s1));
+    }
+    
+    header.getBlkAdds().add(header.getLabel() != null ? 1 : 0, phi);
+    
+    // ... and the step is taken at the very end of the trip, so that every
+    // copy of the new variable in the loop sees the value for this trip.
+    
+    LinkedList<ThreeAddress> step = new LinkedList<ThreeAddress>();
+    step.add(new Binary(s2, s1, inc, iv.down ? BOpType.SUB : BOpType.ADD));
+    insertAtEnd(latch, step);
+    
+    for (ThreeAddress a : pre)
+    {
+      a.setIdx(mul.getIdx());
+      setDef(a, l.getPreheader());
+    }
+    
+    phi.setIdx(mul.getIdx());
+    setDef(phi, header);
+    step.getFirst().setIdx(mul.getIdx());
+    setDef(step.getFirst(), latch);
+    
+    return s1;
+  }
+  
+  /**
+   * Add instructions to the end of a block, before the jump ending it (if
+   * there is one).
+   * @param b - The block.
+   * @param adds - The instructions to add.
+   */
+  private void insertAtEnd(BasicBlock b, LinkedList<ThreeAddress> adds)
+  {
+    LinkedList<ThreeAddress> blkAdds = b.getBlkAdds();
+    
+    if (!blkAdds.isEmpty() && blkAdds.getLast().isJump())
+    {
+      blkAdds.addAll(blkAdds.size() - 1, adds);
+    }
+    else
+    {
+      blkAdds.addAll(adds);
+    }
+  }
+  
+  /**
+   * Remove the basic induction variables held in temporaries which are no
+   * longer read by anything but their own steps.
+   * @param blocks - Our blocks.
+   * @param basics - The basic induction variables of the loops we changed.
+   */
+  private void removeUnused(LinkedList<BasicBlock> blocks,
+    LinkedList<InductionVar> basics)
+  {
+    removeDeadPhis(blocks);
+    
+    int [] numUses = new int [ssa.getNumValues()];
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (BasicBlock b : blocks)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        uses.clear();
+        a.getUses(uses);
+        
+        for (Result r : uses)
+        {
+          Var v = r.getUseVar();
+          
+          if (v != null)
+          {
+            numUses[ssa.getValueNum(v)]++;
+          }
+        }
+      }
+    }
+    
+    for (InductionVar iv : basics)
+    {
+      Var x = iv.phi.getDef();
+      Var next = iv.inc.getDef();
+      
+      // The step must be read straight from around the loop by the phi - if
+      // it's copied first, the copy still needs it.
+      
+      if (!x.isTemp() || !isSame(iv.next, next)
+        || numUses[ssa.getValueNum(x)] != 1
+        || numUses[ssa.getValueNum(next)] != 1)
+      {
+        continue;
+      }
+      
+      iv.header.getBlkAdds().remove(iv.phi);
+      getDefBlock(iv.inc.getDef()).getBlkAdds().remove(iv.inc);
+    }
+  }
+  
+  /**
+   * Remove the phis of temporaries whose values nothing but dead phis reads
+   * - such as those left at the exits of rotated loops, and the cycles of
+   * phis carrying an induction variable around the loops enclosing its own -
+   * so that they aren't counted as uses of what they read.
+   * @param blocks - Our blocks.
+   */
+  private void removeDeadPhis(LinkedList<BasicBlock> blocks)
+  {
+    // Everything read by an instruction other than such a phi is live, as is
+    // everything read by a phi whose own value is live.
+    
+    BitSet live = new BitSet();
+    LinkedList<Var> work = new LinkedList<Var>();
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (BasicBlock b : blocks)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        if (!(a instanceof Phi) || !a.getDef().isTemp())
+        {
+          uses.clear();
+          a.getUses(uses);
+          markLive(uses, live, work);
+        }
+      }
+    }
+    
+    while (!work.isEmpty())
+    {
+      ThreeAddress d = getDefInst(work.pop());
+      
+      if (d instanceof Phi)
+      {
+        uses.clear();
+        d.getUses(uses);
+        markLive(uses, live, work);
+      }
+    }
+    
+    for (BasicBlock b : blocks)
+    {
+      Iterator<ThreeAddress> it = b.getBlkAdds().iterator();
+      
+      while (it.hasNext())
+      {
+        ThreeAddress a = it.next();
+        
+        if (a instanceof Phi && a.getDef().isTemp()
+          && !live.get(ssa.getValueNum(a.getDef())))
+        {
+          it.remove();
+        }
+      }
+    }
+  }
+  
+  /**
+   * Mark the versions read by the given uses as live, adding those not
+   * already marked to a worklist.
+   * @param uses - The uses.
+   * @param live - The set of the numbers of the live versions.
+   * @param work - The worklist.
+   */
+  private void markLive(LinkedList<Result> uses, BitSet live,
+    LinkedList<Var> work)
+  {
+    for (Result r : uses)
+    {
+      Var v = r.getUseVar();
+      
+      if (v != null && !live.get(ssa.getValueNum(v)))
+      {
+        live.set(ssa.getValueNum(v));
+        work.push(v);
+      }
+    }
+  }
+  
+  /**
+   * An induction variable - the phi choosing the value of the basic induction
+   * variable on each trip (and the loop header holding it), the value the phi
+   * takes from around the loop, the instruction stepping it, its value on
+   * entry and its step, along with the invariant it is offset by, if any.
+   */
+  private static class InductionVar
+  {
+    BasicBlock header;
+    Phi phi;
+    Result next;
+    Binary inc;
+    Result init;
+    Result step;
+    boolean down;
+    Result offset;
+    BOpType offsetOp;
+  }
+}
\ No newline at end of file
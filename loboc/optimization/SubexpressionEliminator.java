@@ -0,0 +1,491 @@
+package optimization;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.ListIterator;
+
+import general.Consts;
+import threeaddress.Assign;
+import threeaddress.Phi;
+import threeaddress.Result;
+import threeaddress.ThreeAddress;
+import threeaddress.ValueMap;
+import threeaddress.Var;
+
+/**
+ * SubexpressionEliminator.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Global common subexpression elimination over code in SSA form.  We find
+ * the expressions available at the top of each block - those computed along
+ * every path reaching it - and replace each instruction computing an
+ * expression already available with a copy.
+ *
+ * In SSA form, no version of a variable is ever assigned twice, so once an
+ * expression over some versions has been computed, it holds the same value
+ * for as long as those versions can be used.  Nothing kills an expression
+ * but a load through a pointer, whose memory may be changed by a store
+ * through a pointer or an assignment to a user-defined variable of the alias
+ * class loaded.  So the analysis is the intersection of what's computed
+ * along each path, less the loads of the classes changed since.
+ *
+ * The earlier computations of an expression may be in different blocks, and
+ * versions of the same variable share its storage, so rather than copying
+ * from whichever variable was assigned the value we give each redundant
+ * expression a new temporary, copy every computation of the expression into
+ * it, and copy the temporary in place of the redundant computations.  The
+ * ordinary optimizer cleans up whichever of these copies end up unneeded.
+ * The copies left by earlier passes aren't cleaned up until then either, so
+ * before anything else we number the value each version holds: a version
+ * assigned a copy holds the value copied, and a version assigned the same
+ * expression as another (over the same values) holds the same value - save
+ * for loads, as the memory read may differ.
+ * As these temporaries are assigned in several places, this must be the last
+ * pass made over the code in SSA form.
+ */
+public class SubexpressionEliminator
+{
+  private SSAForm ssa;
+  private ArrayList<BasicBlock> rpo;
+  
+  /**
+   * The number we've given each distinct expression, and the numbers of the
+   * loads of each alias class.
+   */
+  private HashMap<ValueTable.Key, Integer> exprNums;
+  private HashMap<Integer, BitSet> classLoads;
+  
+  /**
+   * The expressions computed in each block (and still available at its
+   * bottom), the alias classes of the memory each block changes, and the
+   * expressions available at the top of each block.
+   */
+  private BitSet [] gen;
+  private BitSet [] killed;
+  private BitSet [] availIn;
+  
+  /**
+   * The temporary holding each redundant expression, once it's needed.
+   */
+  private ArrayList<Var> holders;
+  
+  /**
+   * The number of the value each version holds - that of the version itself,
+   * unless it holds the same value as some other.
+   */
+  private int [] valueNums;
+  
+  private ValueMap values;
+  
+  public SubexpressionEliminator(SSAForm ssa)
+  {
+    this.ssa = ssa;
+    
+    values = new ValueMap()
+    {
+      public int getValueNum(Result r)
+      {
+        int num = SubexpressionEliminator.this.ssa.getValueMap()
+          .getValueNum(r);
+        
+        return r.isVar() && num < valueNums.length ? valueNums[num] : num;
+      }
+    };
+  }
+  
+  /**
+   * Find the expressions computed more than once along some path and replace
+   * the later computations with copies.
+   * @return True if any change was made to the code.
+   */
+  public boolean run()
+  {
+    if (ssa.getBlocks().isEmpty())
+    {
+      return false;
+    }
+    
+    rpo = ssa.getDominatorTree().getRPO();
+    
+    numberValues();
+    findExprs();
+    computeAvail();
+    
+    return replace();
+  }
+  
+  /**
+   * Get the expression computed by the given instruction, if it's one we can
+   * eliminate.
+   * @param a - The instruction.
+   * @return The expression, or null if it isn't one of ours.
+   */
+  private ValueTable.Key getKey(ThreeAddress a)
+  {
+    Var def = a.getDef();
+    
+    // A variable smaller than a word doesn't hold the full value of what's
+    // assigned to it.
+    
+    if (def == null || def.getSize() < Consts.INT_SIZE)
+    {
+      return null;
+    }
+    
+    return a.getValueKey(values);
+  }
+  
+  /**
+   * Number the value each version holds.  Every use of a version (other than
+   * by a phi) is dominated by its assignment, so visiting the blocks in
+   * reverse postorder, we always number the operands of an instruction
+   * before the instruction itself.
+   */
+  private void numberValues()
+  {
+    valueNums = new int [ssa.getNumValues()];
+    
+    for (int i = 0; i < valueNums.length; i++)
+    {
+      valueNums[i] = i;
+    }
+    
+    HashMap<ValueTable.Key, Integer> keyNums =
+      new HashMap<ValueTable.Key, Integer>();
+    
+    for (BasicBlock b : rpo)
+    {
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        Var def = a.getDef();
+        
+        if (def == null || def.getSize() < Consts.INT_SIZE)
+        {
+          continue;
+        }
+        
+        int num = ssa.getValueNum(def);
+        Result p = a.getPropResult();
+        
+        if (a instanceof Assign && p != null)
+        {
+          // A copy out of a variable smaller than a word may not keep the
+          // whole value.
+          
+          if (!p.isVar() || ((Var) p).getSize() >= Consts.INT_SIZE)
+          {
+            valueNums[num] = values.getValueNum(p);
+          }
+          
+          continue;
+        }
+        
+        ValueTable.Key key = a.getValueKey(values);
+        
+        if (key == null || key.isLoad())
+        {
+          continue;
+        }
+        
+        Integer same = keyNums.get(key);
+        
+        if (same == null)
+        {
+          keyNums.put(key, num);
+        }
+        else
+        {
+          valueNums[num] = same;
+        }
+      }
+    }
+  }
+  
+  /**
+   * Get the alias class of the memory the given instruction may change.
+   * @param a - The instruction.
+   * @return The alias class, or -1 if a changes no memory a load may read.
+   */
+  private int getKilledClass(ThreeAddress a)
+  {
+    if (a.isPointerStore())
+    {
+      return a.getStoreClass();
+    }
+    
+    // A phi changes nothing itself - the assignments it merges already have.
+    
+    Var def = a.getDef();
+    
+    if (def == null || def.isTemp() || a instanceof Phi)
+    {
+      return -1;
+    }
+    
+    return def.getAliasClass();
+  }
+  
+  /**
+   * Get the loads of an alias class.
+   * @param c - The alias class.
+   * @return The set of the numbers of the loads of c found so far.
+   */
+  private BitSet getClassLoads(int c)
+  {
+    BitSet loads = classLoads.get(c);
+    
+    if (loads == null)
+    {
+      loads = new BitSet();
+      classLoads.put(c, loads);
+    }
+    
+    return loads;
+  }
+  
+  /**
+   * Number the expressions computed in our blocks and find those computed in
+   * each block.
+   */
+  private void findExprs()
+  {
+    int n = ssa.getBlocks().size();
+    
+    exprNums = new HashMap<ValueTable.Key, Integer>();
+    classLoads = new HashMap<Integer, BitSet>();
+    gen = new BitSet [n];
+    killed = new BitSet [n];
+    availIn = new BitSet [n];
+    
+    for (BasicBlock b : rpo)
+    {
+      BitSet g = new BitSet();
+      BitSet k = new BitSet();
+      
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        ValueTable.Key key = getKey(a);
+        
+        if (key != null)
+        {
+          Integer num = exprNums.get(key);
+          
+          if (num == null)
+          {
+            num = exprNums.size();
+            exprNums.put(key, num);
+            
+            if (key.isLoad())
+            {
+              getClassLoads(key.getLoadClass()).set(num);
+            }
+          }
+          
+          g.set(num);
+        }
+        
+        int c = getKilledClass(a);
+        
+        if (c != -1)
+        {
+          g.andNot(getClassLoads(c));
+          k.set(c);
+        }
+      }
+      
+      gen[b.getNum()] = g;
+      killed[b.getNum()] = k;
+    }
+  }
+  
+  /**
+   * Find the expressions available at the top of each reachable block, by
+   * iterating in reverse postorder until nothing changes.
+   */
+  private void computeAvail()
+  {
+    DominatorTree dt = ssa.getDominatorTree();
+    BasicBlock entry = rpo.get(0);
+    
+    // Find the loads each block kills, now that we know all of them.
+    
+    BitSet [] kill = new BitSet [killed.length];
+    
+    for (BasicBlock b : rpo)
+    {
+      BitSet k = new BitSet();
+      BitSet classes = killed[b.getNum()];
+      
+      for (int c = classes.nextSetBit(0); c != -1;
+        c = classes.nextSetBit(c + 1))
+      {
+        k.or(getClassLoads(c));
+      }
+      
+      kill[b.getNum()] = k;
+    }
+    
+    // Everything starts out available (save at the entry), and is whittled
+    // down to what's computed along every path.
+    
+    for (BasicBlock b : rpo)
+    {
+      BitSet in = new BitSet();
+      
+      if (b != entry)
+      {
+        in.set(0, exprNums.size());
+      }
+      
+      availIn[b.getNum()] = in;
+    }
+    
+    boolean changed = true;
+    
+    while (changed)
+    {
+      changed = false;
+      
+      for (BasicBlock b : rpo)
+      {
+        if (b == entry)
+        {
+          continue;
+        }
+        
+        BitSet in = new BitSet();
+        in.set(0, exprNums.size());
+        
+        for (BasicBlock p : b.getPreds())
+        {
+          if (dt.isReachable(p))
+          {
+            BitSet out = (BitSet) availIn[p.getNum()].clone();
+            out.andNot(kill[p.getNum()]);
+            out.or(gen[p.getNum()]);
+            in.and(out);
+          }
+        }
+        
+        if (!in.equals(availIn[b.getNum()]))
+        {
+          availIn[b.getNum()] = in;
+          changed = true;
+        }
+      }
+    }
+  }
+  
+  /**
+   * Replace every computation of an expression already available with a copy
+   * of the temporary holding it, and copy the other computations of those
+   * expressions into their temporaries.
+   * @return True if anything was replaced.
+   */
+  private boolean replace()
+  {
+    holders = new ArrayList<Var>();
+    
+    for (int i = 0; i < exprNums.size(); i++)
+    {
+      holders.add(null);
+    }
+    
+    boolean changed = false;
+    
+    for (BasicBlock b : rpo)
+    {
+      BitSet avail = (BitSet) availIn[b.getNum()].clone();
+      
+      ListIterator<ThreeAddress> it = b.getBlkAdds().listIterator();
+      
+      while (it.hasNext())
+      {
+        ThreeAddress a = it.next();
+        ValueTable.Key key = getKey(a);
+        
+        if (key != null)
+        {
+          int num = exprNums.get(key);
+          
+          if (avail.get(num))
+          {
+            Var t = getHolder(num, a.getDef());
+            Assign copy = new Assign(a.getDef(), t);
+            copy.setIdx(a.getIdx());
+            it.set(copy);
+            changed = true;
+          }
+          
+          avail.set(num);
+        }
+        
+        int c = getKilledClass(a);
+        
+        if (c != -1)
+        {
+          avail.andNot(getClassLoads(c));
+        }
+      }
+    }
+    
+    if (!changed)
+    {
+      return false;
+    }
+    
+    // Now copy each remaining computation of a redundant expression into its
+    // temporary.  The redundant computations are copies by now, so they're
+    // passed over.
+    
+    for (BasicBlock b : rpo)
+    {
+      ListIterator<ThreeAddress> it = b.getBlkAdds().listIterator();
+      
+      while (it.hasNext())
+      {
+        ThreeAddress a = it.next();
+        ValueTable.Key key = getKey(a);
+        
+        if (key == null)
+        {
+          continue;
+        }
+        
+        Var t = holders.get(exprNums.get(key));
+        
+        if (t != null)
+        {
+          Assign copy = new Assign(t, a.getDef());
+          copy.setIdx(a.getIdx());
+          it.add(copy);
+        }
+      }
+    }
+    
+    return true;
+  }
+  
+  /**
+   * Get the temporary holding the given expression, creating it if need be.
+   * @param num - The number of the expression.
+   * @param def - A variable the expression is assigned to.
+   * @return The temporary.
+   */
+  private Var getHolder(int num, Var def)
+  {
+    Var t = holders.get(num);
+    
+    if (t == null)
+    {
+      t = ssa.newTemp(def.getSize(), def.getAlign());
+      holders.set(num, t);
+    }
+    
+    return t;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,343 @@
+package optimization;
+
+import java.util.HashMap;
+
+import general.Consts;
+import threeaddress.Imm;
+import threeaddress.Result;
+import threeaddress.ThreeAddress;
+import threeaddress.ValueMap;
+import threeaddress.Var;
+
+/**
+ * ValueTable.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Table for local value numbering within a basic block.  Every value computed
+ * in the block is given a number, such that two results with the same number
+ * are known to hold the same value.  Each expression (an operator applied to
+ * the value numbers of its operands) is mapped to the number of the value it
+ * computes and a variable known to hold it, so that when the same expression
+ * is computed again we can copy that variable instead.
+ *
+ * Stores through pointers may change any user-defined variable of the alias
+ * class stored to, so they give every such variable a new, unknown value.
+ * Loads through pointers read memory, which both stores through pointers and
+ * assignments to user-defined variables of the class loaded may change, so
+ * the values loaded are only remembered until the next such instruction.
+ * A store through a pointer also leaves the value stored as the value of a
+ * load through the same pointer, so that reading it straight back becomes a
+ * copy of what was stored.
+ */
+public class ValueTable implements ValueMap
+{
+  /**
+   * Operator codes for the expressions computed by unary operations, the
+   * addresses of variables and loads through pointers, following those of
+   * the binary operations.
+   */
+  public static final int UNARY_BASE = 100;
+  public static final int ADDRESS_OP = 150;
+  public static final int LOAD_BASE = 200;
+  
+  /**
+   * An expression - an operator and the value numbers of its operands.
+   */
+  public static class Key
+  {
+    private int op;
+    private int vn1;
+    private int vn2;
+    
+    public Key(int op, int vn1, int vn2)
+    {
+      this.op = op;
+      this.vn1 = vn1;
+      this.vn2 = vn2;
+    }
+    
+    public boolean isLoad()
+    {
+      return op >= LOAD_BASE;
+    }
+    
+    /**
+     * Get the alias class of the memory read, if this is a load.
+     * @return The alias class loaded.
+     */
+    public int getLoadClass()
+    {
+      return op - LOAD_BASE;
+    }
+    
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof Key))
+      {
+        return false;
+      }
+      
+      Key k = (Key) o;
+      
+      return op == k.op && vn1 == k.vn1 && vn2 == k.vn2;
+    }
+    
+    public int hashCode()
+    {
+      return (op * 31 + vn1) * 31 + vn2;
+    }
+  }
+  
+  /**
+   * The value computed by an expression, the variable (or, for a value
+   * stored through a pointer, the constant) last known to hold it, and for
+   * loads, the memory epoch in which it was loaded.
+   */
+  private static class Entry
+  {
+    int vn;
+    Result holder;
+    int epoch;
+  }
+  
+  private int nextVN;
+  
+  /**
+   * The value numbers of our temporaries, user-defined variables and
+   * constants.  The value numbers of user-defined variables are stamped with
+   * the user epoch they were given in.
+   */
+  private HashMap<Integer, Integer> tempVNs;
+  private HashMap<Integer, int []> userVNs;
+  private HashMap<Integer, Integer> constVNs;
+  
+  private HashMap<Key, Entry> exprs;
+  
+  /**
+   * Counters for each alias class, bumped whenever every user-defined
+   * variable of the class may have changed (on a store through a pointer),
+   * and whenever any memory of the class may have changed (on a store through
+   * a pointer or an assignment to a user-defined variable).
+   */
+  private HashMap<Integer, Integer> userEpochs;
+  private HashMap<Integer, Integer> memEpochs;
+  
+  public ValueTable()
+  {
+    tempVNs = new HashMap<Integer, Integer>();
+    userVNs = new HashMap<Integer, int []>();
+    constVNs = new HashMap<Integer, Integer>();
+    exprs = new HashMap<Key, Entry>();
+    userEpochs = new HashMap<Integer, Integer>();
+    memEpochs = new HashMap<Integer, Integer>();
+  }
+  
+  private int getEpoch(HashMap<Integer, Integer> epochs, int aliasClass)
+  {
+    Integer epoch = epochs.get(aliasClass);
+    
+    return epoch == null ? 0 : epoch;
+  }
+  
+  private void bumpEpoch(HashMap<Integer, Integer> epochs, int aliasClass)
+  {
+    epochs.put(aliasClass, getEpoch(epochs, aliasClass) + 1);
+  }
+  
+  /**
+   * Get the memory epoch an expression's value is stamped with.
+   * @param key - The expression.
+   * @return The memory epoch of the class loaded, or 0 if the expression
+   * isn't a load.
+   */
+  private int getMemEpoch(Key key)
+  {
+    return key.isLoad() ? getEpoch(memEpochs, key.getLoadClass()) : 0;
+  }
+  
+  /**
+   * Determine whether or not the memory read to compute the value of an
+   * expression may have changed since.
+   * @param key - The expression.
+   * @param e - The expression's entry.
+   * @return True if the expression is a load whose memory may have changed.
+   */
+  private boolean isStale(Key key, Entry e)
+  {
+    return e.epoch != getMemEpoch(key);
+  }
+  
+  /**
+   * Get the value number of the given result.
+   * @param r - The result.
+   * @return The value number of r, or -1 if r isn't a constant or a variable.
+   */
+  public int getValueNum(Result r)
+  {
+    if (r.isImm())
+    {
+      int bits = ((Imm) r).getBits();
+      Integer vn = constVNs.get(bits);
+      
+      if (vn == null)
+      {
+        vn = nextVN++;
+        constVNs.put(bits, vn);
+      }
+      
+      return vn;
+    }
+    
+    if (!r.isVar())
+    {
+      return -1;
+    }
+    
+    Var v = (Var) r;
+    
+    if (v.isTemp())
+    {
+      Integer vn = tempVNs.get(v.getVarNum());
+      
+      if (vn == null)
+      {
+        vn = nextVN++;
+        tempVNs.put(v.getVarNum(), vn);
+      }
+      
+      return vn;
+    }
+    
+    int [] entry = userVNs.get(v.getVarNum());
+    int userEpoch = getEpoch(userEpochs, v.getAliasClass());
+    
+    if (entry == null || entry[1] != userEpoch)
+    {
+      entry = new int [] {nextVN++, userEpoch};
+      userVNs.put(v.getVarNum(), entry);
+    }
+    
+    return entry[0];
+  }
+  
+  private void setVN(Var v, int vn)
+  {
+    if (v.isTemp())
+    {
+      tempVNs.put(v.getVarNum(), vn);
+    }
+    else
+    {
+      userVNs.put(v.getVarNum(),
+        new int [] {vn, getEpoch(userEpochs, v.getAliasClass())});
+    }
+  }
+  
+  /**
+   * Find a variable or constant holding the value of the given expression,
+   * which can be copied into the given variable in place of computing the
+   * expression.
+   * @param key - The expression.
+   * @param def - The variable the expression is being assigned to.
+   * @return The result holding the value, or null if there is none.
+   */
+  public Result lookup(Key key, Var def)
+  {
+    Entry e = exprs.get(key);
+    
+    if (e == null || isStale(key, e))
+    {
+      return null;
+    }
+    
+    // The variable must still hold the value, and there's no point in copying
+    // a variable into itself.
+    
+    if (getValueNum(e.holder) != e.vn || e.holder.equals(def))
+    {
+      return null;
+    }
+    
+    return e.holder;
+  }
+  
+  /**
+   * Move past the given instruction, recording the value it assigns.
+   * @param a - The instruction.
+   * @param key - The expression computed by the instruction, or null if it
+   * computes nothing we can number.
+   */
+  public void passInst(ThreeAddress a, Key key)
+  {
+    Var def = a.getDef();
+    
+    if (def != null)
+    {
+      // A variable smaller than a word doesn't hold the full value of what's
+      // assigned to it, so it gets a value of its own.
+      
+      int vn;
+      Result p = a.getPropResult();
+      
+      if (def.getSize() < Consts.INT_SIZE)
+      {
+        vn = nextVN++;
+      }
+      else if (key != null)
+      {
+        Entry e = exprs.get(key);
+        
+        if (e == null || isStale(key, e))
+        {
+          e = new Entry();
+          e.vn = nextVN++;
+          e.epoch = getMemEpoch(key);
+          exprs.put(key, e);
+        }
+        
+        e.holder = def;
+        vn = e.vn;
+      }
+      else if (p != null)
+      {
+        vn = getValueNum(p);
+      }
+      else
+      {
+        vn = nextVN++;
+      }
+      
+      setVN(def, vn);
+      
+      if (!def.isTemp())
+      {
+        bumpEpoch(memEpochs, def.getAliasClass());
+      }
+    }
+    
+    if (a.isPointerStore())
+    {
+      bumpEpoch(userEpochs, a.getStoreClass());
+      bumpEpoch(memEpochs, a.getStoreClass());
+      
+      // The memory stored to now holds the value stored, until it next
+      // changes.
+      
+      Key sk = a.getStoreKey(this);
+      Result r = a.getStoredResult();
+      int vn = getValueNum(r);
+      
+      if (sk != null && vn != -1)
+      {
+        Entry e = new Entry();
+        e.vn = vn;
+        e.holder = r;
+        e.epoch = getMemEpoch(sk);
+        exprs.put(sk, e);
+      }
+    }
+  }
+}
\ No newline at end of file
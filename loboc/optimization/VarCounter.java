@@ -1,6 +1,7 @@
 package optimization;
 
 import java.util.Arrays;
+import java.util.LinkedList;
 
 import threeaddress.Result;
 import threeaddress.Var;
@@ -22,11 +23,37 @@ public class VarCounter
 {
   private int [] countMap;
   
+  /**
+   * For a counter layered over another (see below), the change in the number
+   * of uses of each temporary made through this counter, along with the
+   * temporaries incremented and decremented, possibly with repeats.  These
+   * are null for an ordinary counter.
+   */
+  private int [] delta;
+  private LinkedList<Integer> incremented;
+  private LinkedList<Integer> decremented;
+  
   public VarCounter(int tempCount)
   {
     countMap = new int [tempCount];
   }
   
+  /**
+   * Create a counter layered over the given counter, which sees the counts of
+   * the original but keeps its own changes to them to itself until they are
+   * taken and applied to the original.  This lets several blocks be optimized
+   * at once, each seeing only the counts as of the start of the round plus
+   * its own changes.
+   * @param base - The counter to layer over.
+   */
+  public VarCounter(VarCounter base)
+  {
+    countMap = base.countMap;
+    delta = new int [countMap.length];
+    incremented = new LinkedList<Integer>();
+    decremented = new LinkedList<Integer>();
+  }
+  
   /**
    * Increment the number of uses of the given temporary by one.
    * @param v - The temporary whose uses are to be incremented.
@@ -42,7 +69,15 @@ public class VarCounter
     
     int key = v.getVarNum();
     
-    countMap[key]++;
+    if (delta == null)
+    {
+      countMap[key]++;
+    }
+    else
+    {
+      delta[key]++;
+      incremented.add(key);
+    }
   }
   
   /**
@@ -60,7 +95,69 @@ public class VarCounter
     
     int key = v.getVarNum();
     
-    countMap[key]--;
+    if (delta == null)
+    {
+      countMap[key]--;
+    }
+    else
+    {
+      delta[key]--;
+      decremented.add(key);
+    }
+  }
+  
+  /**
+   * Get the temporaries incremented through this layered counter since the
+   * last call to this method, and withdraw those increments from the counter.
+   * @return The numbers of the incremented temporaries, possibly with repeats.
+   */
+  public LinkedList<Integer> takeIncremented()
+  {
+    LinkedList<Integer> ret = incremented;
+    incremented = new LinkedList<Integer>();
+    
+    for (int key : ret)
+    {
+      delta[key]--;
+    }
+    
+    return ret;
+  }
+  
+  /**
+   * Get the temporaries decremented through this layered counter since the
+   * last call to this method, and withdraw those decrements from the counter.
+   * @return The numbers of the decremented temporaries, possibly with repeats.
+   */
+  public LinkedList<Integer> takeDecremented()
+  {
+    LinkedList<Integer> ret = decremented;
+    decremented = new LinkedList<Integer>();
+    
+    for (int key : ret)
+    {
+      delta[key]++;
+    }
+    
+    return ret;
+  }
+  
+  /**
+   * Apply increments and decrements taken from a layered counter to this one.
+   * @param incr - The numbers of the incremented temporaries.
+   * @param decr - The numbers of the decremented temporaries.
+   */
+  public void apply(LinkedList<Integer> incr, LinkedList<Integer> decr)
+  {
+    for (int key : incr)
+    {
+      countMap[key]++;
+    }
+    
+    for (int key : decr)
+    {
+      countMap[key]--;
+    }
   }
   
   /**
@@ -78,7 +175,12 @@ public class VarCounter
     
     int key = v.getVarNum();
     
-    return countMap[key] > 0;
+    if (delta == null)
+    {
+      return countMap[key] > 0;
+    }
+    
+    return countMap[key] + delta[key] > 0;
   }
   
   public String toString()
@@ -0,0 +1,216 @@
+package optimization;
+
+import java.util.BitSet;
+import java.util.LinkedList;
+
+import general.TempFactory;
+import threeaddress.Assign;
+import threeaddress.Result;
+import threeaddress.ThreeAddress;
+import threeaddress.Var;
+import threeaddress.VarMap;
+
+/**
+ * VarPromoter.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Turns each user-defined variable whose address is never taken into a
+ * temporary of its own.  No pointer can ever refer to such a variable, so
+ * nothing but its own assignments and uses can touch it - exactly as with
+ * the compiler's temporaries, and so it may be optimized just the same:
+ * assignments nothing reads are removed, its values are propagated past
+ * stores through pointers, and it may live in a register without ever being
+ * written back to memory.
+ *
+ * The one thing a user-defined variable has that a temporary doesn't is a
+ * value before it's first assigned - whatever is in its memory when the
+ * program starts.  So for each variable which may be read before it's
+ * assigned, we copy its memory into its temporary on entry to the program.
+ */
+public class VarPromoter
+{
+  private LinkedList<ThreeAddress> addresses;
+  private TempFactory tf;
+  
+  /**
+   * The ids of the user-defined variables whose addresses are taken.
+   */
+  private BitSet addressed;
+  
+  /**
+   * The temporary standing in for each user-defined variable we promote,
+   * and one occurrence of the variable itself.
+   */
+  private Var [] temps;
+  private Var [] users;
+  
+  public VarPromoter(LinkedList<ThreeAddress> addresses, TempFactory tf,
+    BitSet addressed, int userCount)
+  {
+    this.addresses = addresses;
+    this.tf = tf;
+    this.addressed = addressed;
+    
+    temps = new Var [userCount];
+    users = new Var [userCount];
+  }
+  
+  /**
+   * Promote our user-defined variables.
+   * @return The new list of instructions.
+   */
+  public LinkedList<ThreeAddress> run()
+  {
+    BitSet live = findLiveOnEntry();
+    
+    VarMap m = new VarMap()
+    {
+      public Var map(Var v)
+      {
+        return getTemp(v);
+      }
+    };
+    
+    for (ThreeAddress a : addresses)
+    {
+      a.renameUses(m);
+      
+      if (a.getDef() != null)
+      {
+        a.setDef(getTemp(a.getDef()));
+      }
+    }
+    
+    // Finally, give each variable read before being assigned the value it
+    // starts out with.
+    
+    for (int i = live.previousSetBit(temps.length - 1); i != -1;
+      i = live.previousSetBit(i - 1))
+    {
+      if (temps[i] != null)
+      {
+        addresses.addFirst(new Assign(temps[i], users[i]));
+      }
+    }
+    
+    return addresses;
+  }
+  
+  /**
+   * Get the temporary standing in for the given variable, creating it if need
+   * be.
+   * @param v - The variable.
+   * @return The temporary, or v itself if it isn't a user-defined variable we
+   * can promote.
+   */
+  private Var getTemp(Var v)
+  {
+    if (v.isTemp() || addressed.get(v.getVarNum()))
+    {
+      return v;
+    }
+    
+    int num = v.getVarNum();
+    
+    if (temps[num] == null)
+    {
+      temps[num] = tf.gen(v.getSize(), v.getAlign());
+      users[num] = v;
+    }
+    
+    return temps[num];
+  }
+  
+  /**
+   * Find the user-defined variables which may be read on some path from the
+   * start of the program before they are assigned.
+   * @return The set of the ids of such variables.
+   */
+  private BitSet findLiveOnEntry()
+  {
+    LinkedList<BasicBlock> blks = OptimizerUtils.getBlocks(addresses);
+    
+    if (blks.isEmpty())
+    {
+      return new BitSet();
+    }
+    
+    OptimizerUtils.linkBlocks(blks);
+    
+    // First, find the variables each block reads before assigning, and those
+    // it assigns.
+    
+    int n = blks.size();
+    BitSet [] use = new BitSet [n];
+    BitSet [] def = new BitSet [n];
+    BitSet [] liveIn = new BitSet [n];
+    LinkedList<Result> uses = new LinkedList<Result>();
+    
+    for (BasicBlock b : blks)
+    {
+      BitSet u = new BitSet();
+      BitSet d = new BitSet();
+      
+      for (ThreeAddress a : b.getBlkAdds())
+      {
+        uses.clear();
+        a.getUses(uses);
+        
+        for (Result r : uses)
+        {
+          Var v = r.getUseVar();
+          
+          if (v != null && !v.isTemp() && !d.get(v.getVarNum()))
+          {
+            u.set(v.getVarNum());
+          }
+        }
+        
+        Var v = a.getDef();
+        
+        if (v != null && !v.isTemp())
+        {
+          d.set(v.getVarNum());
+        }
+      }
+      
+      use[b.getNum()] = u;
+      def[b.getNum()] = d;
+      liveIn[b.getNum()] = (BitSet) u.clone();
+    }
+    
+    // Then iterate backward over the blocks until nothing changes.
+    
+    BasicBlock [] blkArr = blks.toArray(new BasicBlock [n]);
+    boolean changed = true;
+    
+    while (changed)
+    {
+      changed = false;
+      
+      for (int i = n - 1; i >= 0; i--)
+      {
+        BitSet in = new BitSet();
+        
+        for (BasicBlock s : blkArr[i].getSuccs())
+        {
+          in.or(liveIn[s.getNum()]);
+        }
+        
+        in.andNot(def[i]);
+        in.or(use[i]);
+        
+        if (!in.equals(liveIn[i]))
+        {
+          liveIn[i] = in;
+          changed = true;
+        }
+      }
+    }
+    
+    return liveIn[0];
+  }
+}
\ No newline at end of file
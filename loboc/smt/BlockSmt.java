@@ -15,6 +15,7 @@ import threeaddress.ThreeAddress;
 import threeaddress.Var;
 import type.Type;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import lexing.Token;
@@ -195,6 +196,14 @@ public class BlockSmt extends Smt
     }
   }
   
+  public void findAddressed(BitSet addressed)
+  {
+    for (Smt s : smts)
+    {
+      s.findAddressed(addressed);
+    }
+  }
+  
   public void setLastSmts()
   {
     // Only the last statement in this block can be a "last statement" if the
@@ -1,5 +1,6 @@
 package smt;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import threeaddress.ThreeAddress;
@@ -70,6 +71,11 @@ public class ErrorSmt extends Smt
     
   }
   
+  public void findAddressed(BitSet addressed)
+  {
+    
+  }
+  
   public void setLastSmts()
   {
     
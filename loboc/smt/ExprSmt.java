@@ -1,5 +1,6 @@
 package smt;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import threeaddress.Return;
@@ -87,6 +88,11 @@ public class ExprSmt extends Smt
     // Do nothing - we contain no statements.
   }
   
+  public void findAddressed(BitSet addressed)
+  {
+    e.findAddressed(addressed);
+  }
+  
   public void setLastSmts()
   {
     // Simply set this to true.
@@ -1,10 +1,9 @@
 package smt;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import threeaddress.Assign;
-import threeaddress.BranchType;
-import threeaddress.CondGoto;
 import threeaddress.Goto;
 import threeaddress.Imm;
 import threeaddress.Label;
@@ -162,6 +161,17 @@ public class IfSmt extends Smt
     }
   }
   
+  public void findAddressed(BitSet addressed)
+  {
+    cond.findAddressed(addressed);
+    truS.findAddressed(addressed);
+    
+    if (flsS != null)
+    {
+      flsS.findAddressed(addressed);
+    }
+  }
+  
   public void setLastSmts()
   {
     // We'll call setLastSmt on both of our clauses, with an additional
@@ -184,8 +194,6 @@ public class IfSmt extends Smt
   public void threeAddress(TempFactory tFac, LabelFactory lFac,
     LinkedList<ThreeAddress> addresses)
   {
-	Var condTemp = cond.getValue(tFac, lFac, addresses);
-    
     // Generate our labels.
     
     String fL = lFac.gen();
@@ -199,9 +207,9 @@ public class IfSmt extends Smt
     
     // And we create our jumps.  If the conditional is false, we jump to flsL
     // (which, in the case that we do not have an "else", is the end of the
-    // statement).
+    // statement), and otherwise we fall through.
     
-    addresses.add(new CondGoto(condTemp, fL, BranchType.EQZ));
+    cond.getBranches(tFac, lFac, addresses, null, fL);
     
     // True case.  Just call threeAddress on the child and, if necessary, jump
     // to endL when finished.
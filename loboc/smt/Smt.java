@@ -1,5 +1,6 @@
 package smt;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import threeaddress.ThreeAddress;
@@ -96,6 +97,15 @@ public abstract class Smt
   public abstract void getOffsetsAndLabel(int prevOffset, int prevSize,
     RefInt curId);
   
+  /**
+   * Find the user-defined variables whose addresses are taken anywhere within
+   * this statement - those which a pointer may refer to.  This must be called
+   * once our variables have been labeled.
+   * @param addressed - The set of the ids of such variables, to which we add
+   * our own.
+   */
+  public abstract void findAddressed(BitSet addressed);
+  
   /**
    * Determine all possible last statements of the given statement, and mark
    * them (via the "isLastSmt" flag) as they are found.  This will tell us
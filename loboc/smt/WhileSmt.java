@@ -1,10 +1,9 @@
 package smt;
 
+import java.util.BitSet;
 import java.util.LinkedList;
 
 import threeaddress.Assign;
-import threeaddress.BranchType;
-import threeaddress.CondGoto;
 import threeaddress.Goto;
 import threeaddress.Imm;
 import threeaddress.Label;
@@ -120,6 +119,12 @@ public class WhileSmt extends Smt
     s.getOffsetsAndLabel(prevOffset, prevSize, curId);
   }
   
+  public void findAddressed(BitSet addressed)
+  {
+    cond.findAddressed(addressed);
+    s.findAddressed(addressed);
+  }
+  
   public void setLastSmts()
   {
     // If this was called, this acts as a base case.  We simply set our flag to
@@ -131,27 +136,38 @@ public class WhileSmt extends Smt
   public void threeAddress(TempFactory tFac, LabelFactory lFac,
     LinkedList<ThreeAddress> addresses)
   {
-	// First, we put a label so that we may jump to the top of the loop, prior
-    // to performing any computation relevant to checking the condition.
-
-    String loopL = lFac.gen();
-    addresses.add(new Label(loopL));
+    // The loop is tested at the bottom, so that each trip around it takes
+    // only the one branch back to the top.  To keep from running the body
+    // when the condition is false from the start, we first check it once on
+    // the way in, skipping past the loop if it doesn't hold.  A constant
+    // condition must be true, having survived folding, so in that case there
+    // is nothing to check at all.
     
-    // Next, we check our condition.
+    String loopL = lFac.gen();
+    String endL = lFac.gen();
+    boolean isConst = cond.isConstant();
     
-    Var condTemp = cond.getValue(tFac, lFac, addresses);
+    if (!isConst)
+    {
+      cond.getBranches(tFac, lFac, addresses, null, endL);
+    }
     
-    // And if the condition is not true, we exit the loop.
+    addresses.add(new Label(loopL));
     
-    String endL = lFac.gen();
-    addresses.add(new CondGoto(condTemp, endL, BranchType.EQZ));
+    s.threeAddress(tFac, lFac, addresses);
     
-    // Next, we have the body of our loop, followed by a jump back to the top,
-    // and the label denoting the loop exit.
+    // Finally, we check the condition again, jumping back to the top if it
+    // still holds, and place the label denoting the loop exit.
     
-    s.threeAddress(tFac, lFac, addresses);
+    if (isConst)
+    {
+      addresses.add(new Goto(loopL));
+    }
+    else
+    {
+      cond.getBranches(tFac, lFac, addresses, loopL, null);
+    }
     
-    addresses.add(new Goto(loopL));
     addresses.add(new Label(endL));
     
     // If this was the last statement, return with value 0.
@@ -39,4 +39,9 @@ public class AddressOf extends Result
   {
     return v;
   }
+  
+  public Var getUseVar()
+  {
+    return null;
+  }
 }
\ No newline at end of file
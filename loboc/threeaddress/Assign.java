@@ -3,6 +3,7 @@ package threeaddress;
 import java.util.LinkedList;
 
 import optimization.DefMap;
+import optimization.ValueTable;
 import optimization.VarCounter;
 import mips.Instruction;
 
@@ -28,14 +29,16 @@ public class Assign extends ThreeAddress
   
   public String toString()
   {
-    return idx + ": " + t + " = " + r + "; DEFS: " + inMask;
+    return idx + ": " + t + " = " + r;
   }
   
   public void getInst(LinkedList<Instruction> ins)
   {
-    int reg = 0;
+    // Get our result into a register - preferably the one our variable lives
+    // in, if any - and store it into our variable.
+    
+    int reg = r.getOperandReg(ins, t.getDestReg(0));
     
-    r.getLoadInst(ins, reg);
     t.getStoreInst(ins, reg);
   }
   
@@ -44,6 +47,62 @@ public class Assign extends ThreeAddress
     return t;
   }
   
+  public void setDef(Var v)
+  {
+    t = v;
+  }
+  
+  public ThreeAddress recompute(Var v)
+  {
+    return r instanceof Deref || r instanceof AddressOf ? new Assign(v, r)
+      : null;
+  }
+  
+  public Result getResult()
+  {
+    return r;
+  }
+  
+  public ValueTable.Key getValueKey(ValueMap vm)
+  {
+    // Only addresses and loads through pointers compute anything - anything
+    // else is a copy.  A variable's address never changes, so it's known by
+    // the variable alone.
+    
+    if (r instanceof AddressOf)
+    {
+      Var v = r.getVar();
+      
+      return new ValueTable.Key(ValueTable.ADDRESS_OP, v.getVarNum(),
+        v.isTemp() ? 1 : 0);
+    }
+    
+    if (!(r instanceof Deref))
+    {
+      return null;
+    }
+    
+    Deref d = (Deref) r;
+    int vn = vm.getValueNum(d.getVar());
+    
+    return new ValueTable.Key(ValueTable.LOAD_BASE + d.getAliasClass(), vn, 0);
+  }
+  
+  public Imm evaluate(ConstMap m)
+  {
+    return m.getConst(r);
+  }
+  
+  public void getUses(LinkedList<Result> uses)
+  {
+    uses.add(r);
+  }
+  
+  public void renameUses(VarMap m)
+  {
+    r = r.renameUses(m);
+  }
+  
   public Result getPropResult()
   {
     if (r.isImm() || (r.isVar() && !t.equals((Var) r)))
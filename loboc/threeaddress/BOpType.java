@@ -71,4 +71,57 @@ public enum BOpType
   {
     return insts[this.ordinal()];
   }
+  
+  /**
+   * Determine whether or not this operation compares its operands.
+   * @return True if this is a relational or equality operation.
+   */
+  public boolean isComparison()
+  {
+    return getNegated() != null;
+  }
+  
+  /**
+   * Get the comparison holding exactly when this one doesn't.
+   * @return The negated comparison, or null if this isn't a comparison.
+   */
+  public BOpType getNegated()
+  {
+    switch (this)
+    {
+      case LT : return GE;
+      case LE : return GT;
+      case GT : return LE;
+      case GE : return LT;
+      case LTU : return GEU;
+      case LEU : return GTU;
+      case GTU : return LEU;
+      case GEU : return LTU;
+      case EQ : return NE;
+      case NE : return EQ;
+      default : return null;
+    }
+  }
+  
+  /**
+   * Get the operation giving the same result as this one with its operands
+   * swapped.
+   * @return The swapped operation, or null if there is no such operation.
+   */
+  public BOpType getSwapped()
+  {
+    switch (this)
+    {
+      case ADD : case MULT : case MULTU : case EQ : case NE : return this;
+      case LT : return GT;
+      case LE : return GE;
+      case GT : return LT;
+      case GE : return LE;
+      case LTU : return GTU;
+      case LEU : return GEU;
+      case GTU : return LTU;
+      case GEU : return LEU;
+      default : return null;
+    }
+  }
 }
\ No newline at end of file
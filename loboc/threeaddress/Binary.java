@@ -1,16 +1,24 @@
 package threeaddress;
 
 import general.FoldingUtils;
+import general.MagicNumber;
 
 import java.util.LinkedList;
 
 import optimization.DefMap;
+import optimization.ValueTable;
 import optimization.VarCounter;
 import mips.BinaryInst;
 import mips.DivInst;
 import mips.Instruction;
+import mips.LoadHighBits;
+import mips.ImmInst;
+import mips.ImmOpType;
+import mips.Registers;
 import mips.LoadLowBits;
 import mips.MultInst;
+import mips.ShiftLeft;
+import mips.ShiftRight;
 
 /**
  * Binary.java
@@ -57,6 +65,16 @@ public class Binary extends ThreeAddress
     return op;
   }
   
+  public Result getR1()
+  {
+    return r1;
+  }
+  
+  public Result getR2()
+  {
+    return r2;
+  }
+  
   public String getOpStr()
   {
     switch (op)
@@ -82,21 +100,30 @@ public class Binary extends ThreeAddress
   
   public String toString()
   {
-    return idx + ": " + st + " = " + r1 + " " + getOpStr() + " " + r2 + "; DEFS: " + inMask;
+    return idx + ": " + st + " = " + r1 + " " + getOpStr() + " " + r2;
   }
   
   public void getInst(LinkedList<Instruction> ins)
   {
-    // Load our variables into separate registers...
+    // Multiplication and division by a constant can usually be done far more
+    // cheaply with shifts, so try that first.
+    
+    if (getConstInst(ins) || getImmInst(ins))
+    {
+      return;
+    }
+    
+    // Load our variables into separate registers (unless they already live
+    // in registers)...
 
-    int reg1 = 0;
-    int reg2 = 1;
+    int reg1 = r1.getOperandReg(ins, 0);
+    int reg2 = r2.getOperandReg(ins, 1);
     
-    r1.getLoadInst(ins, reg1);
-    r2.getLoadInst(ins, reg2);
+    // Compute the necessary operation, returning the result in the register
+    // of our store variable (or our first scratch register, if it lives in
+    // memory)...
     
-    // Compute the necessary operation, returning the result in our first
-    // register...
+    int regSt = st.getDestReg(0);
     
     // Multiplication and division require a more specialized procedure where
     // we compute the result and need to grab the bits of the result out of
@@ -116,16 +143,351 @@ public class Binary extends ThreeAddress
       }
       
       ins.add(in);
-      ins.add(new LoadLowBits(reg1));
+      ins.add(new LoadLowBits(regSt));
     }
     else
     {
-      ins.add(new BinaryInst(reg1, reg1, reg2, op));
+      ins.add(new BinaryInst(regSt, reg1, reg2, op));
     }
     
     // And finally, write that register into our store variable's memory.
     
-    st.getStoreInst(ins, reg1);
+    st.getStoreInst(ins, regSt);
+  }
+  
+  /**
+   * Generate the instructions for a multiplication or division of a variable
+   * by a constant without a multiply or divide instruction where we can, as
+   * those take many times longer than anything else we emit.  Multiplication
+   * by a power of two (or a sum or difference of two of them) becomes shifts
+   * and adds, and division by a power of two becomes a shift (corrected to
+   * round towards zero, if signed).  Any other division becomes a
+   * multiplication by a magic number, keeping the high word of the product.
+   * @param ins - The list of instructions.
+   * @return True if the instructions were generated - false if we should use
+   * the ordinary multiply or divide instruction.
+   */
+  private boolean getConstInst(LinkedList<Instruction> ins)
+  {
+    boolean mult = op == BOpType.MULT || op == BOpType.MULTU;
+    Result n = r1;
+    Result c = r2;
+    
+    if (mult && r1.isImm())
+    {
+      n = r2;
+      c = r1;
+    }
+    else if (!mult && op != BOpType.DIV && op != BOpType.DIVU)
+    {
+      return false;
+    }
+    
+    if (!n.isVar() || !c.isImm())
+    {
+      return false;
+    }
+    
+    int v = ((Imm) c).getBits();
+    
+    // The low word of a product is the same whether or not it's signed, and
+    // so are shifts to the left.  The first sequence multiplies by one power
+    // of two, the next by the sum of two, and the last by the difference.
+    
+    int low = Integer.lowestOneBit(v);
+    int high = v + low;
+    
+    if (mult && (v == 0
+      || (Integer.bitCount(v) > 2 && Integer.bitCount(high) != 1)))
+    {
+      return false;
+    }
+    
+    // Division by zero is left for the divide unit (which doesn't trap, but
+    // leaves lo as it pleases), as is signed division by -1 or -2^31, which
+    // no magic number covers, and by 1, whose shift sequence would need a
+    // shift by 32 (although that's normally folded away well before now).
+    
+    if (!mult && (v == 0 || (op == BOpType.DIV
+      && (v == -1 || v == 1 || v == Integer.MIN_VALUE))))
+    {
+      return false;
+    }
+    
+    int reg = n.getOperandReg(ins, 0);
+    int regSt = st.getDestReg(0);
+    
+    if (mult)
+    {
+      getMultInst(ins, reg, regSt, v, low, high);
+    }
+    else if (op == BOpType.DIVU)
+    {
+      getDivUInst(ins, reg, regSt, v);
+    }
+    else
+    {
+      getDivInst(ins, reg, regSt, v);
+    }
+    
+    st.getStoreInst(ins, regSt);
+    
+    return true;
+  }
+  
+  /**
+   * Generate the instructions for an operation between a variable and a
+   * constant that fits in the immediate of an instruction, saving the load of
+   * the constant.  Additions, subtractions and comparisons are covered (the
+   * last by comparing against a neighboring constant, or flipping the result
+   * of the opposite comparison, where need be).
+   * @param ins - The list of instructions.
+   * @return True if the instructions were generated - false if the constant
+   * must be loaded into a register after all.
+   */
+  private boolean getImmInst(LinkedList<Instruction> ins)
+  {
+    Result x = r1;
+    Result c = r2;
+    BOpType o = op;
+    
+    if (r1.isImm())
+    {
+      x = r2;
+      c = r1;
+      o = op.getSwapped();
+    }
+    
+    if (o == null || !x.isVar() || !c.isImm())
+    {
+      return false;
+    }
+    
+    int v = ((Imm) c).getBits();
+    
+    // Find the immediate operation to use, the constant to use with it and
+    // whether or not the result needs flipping.  Equality tests come last -
+    // we subtract out (or exclusive-or away) the constant and compare the
+    // result against zero.
+    
+    ImmOpType io;
+    int imm = v;
+    boolean flip = false;
+    
+    switch (o)
+    {
+      case ADD : io = ImmOpType.ADDIU; break;
+      case SUB : io = ImmOpType.ADDIU; imm = -v; break;
+      case LT : io = ImmOpType.SLTI; break;
+      case LTU : io = ImmOpType.SLTIU; break;
+      case GE : io = ImmOpType.SLTI; flip = true; break;
+      case GEU : io = ImmOpType.SLTIU; flip = true; break;
+      case LE : io = ImmOpType.SLTI; imm = v + 1; break;
+      case LEU : io = ImmOpType.SLTIU; imm = v + 1; break;
+      case GT : io = ImmOpType.SLTI; imm = v + 1; flip = true; break;
+      case GTU : io = ImmOpType.SLTIU; imm = v + 1; flip = true; break;
+      case EQ : case NE : io = ImmOpType.XORI; break;
+      default : return false;
+    }
+    
+    // Comparing against the next constant up mustn't wrap around.
+    
+    boolean wraps = ((o == BOpType.LE || o == BOpType.GT)
+      && v == Integer.MAX_VALUE) || ((o == BOpType.LEU || o == BOpType.GTU)
+      && v == -1);
+    
+    if ((o == BOpType.EQ || o == BOpType.NE) && !io.fits(imm))
+    {
+      io = ImmOpType.ADDIU;
+      imm = -v;
+    }
+    
+    if (wraps || !io.fits(imm))
+    {
+      return false;
+    }
+    
+    int reg = x.getOperandReg(ins, 0);
+    int regSt = st.getDestReg(0);
+    
+    if (o == BOpType.EQ || o == BOpType.NE)
+    {
+      // A test against zero needs no subtraction first.
+      
+      int regDiff = reg;
+      
+      if (v != 0)
+      {
+        ins.add(new ImmInst(regSt, reg, imm, io));
+        regDiff = regSt;
+      }
+      
+      if (o == BOpType.EQ)
+      {
+        ins.add(new ImmInst(regSt, regDiff, 1, ImmOpType.SLTIU));
+      }
+      else
+      {
+        ins.add(new BinaryInst(regSt, Registers.ZERO_REG, regDiff,
+          BOpType.LTU));
+      }
+    }
+    else
+    {
+      ins.add(new ImmInst(regSt, reg, imm, io));
+      
+      if (flip)
+      {
+        ins.add(new ImmInst(regSt, regSt, 1, ImmOpType.XORI));
+      }
+    }
+    
+    st.getStoreInst(ins, regSt);
+    
+    return true;
+  }
+  
+  /**
+   * Generate the shifts and adds multiplying a register by a constant.
+   * @param ins - The list of instructions.
+   * @param reg - The register holding the variable operand.
+   * @param regSt - The register receiving the product.
+   * @param v - The constant.
+   * @param low - The lowest bit set in v.
+   * @param high - v plus low.
+   */
+  private void getMultInst(LinkedList<Instruction> ins, int reg, int regSt,
+    int v, int low, int high)
+  {
+    int b = Integer.numberOfTrailingZeros(low);
+    
+    if (Integer.bitCount(v) == 1)
+    {
+      ins.add(new ShiftLeft(regSt, reg, b));
+      return;
+    }
+    
+    // Shift by the larger power into our second scratch register (free, since
+    // our constant operand is never loaded), then by the smaller power.
+    
+    BOpType combine = BOpType.ADD;
+    int a = Integer.numberOfTrailingZeros(v - low);
+    
+    if (Integer.bitCount(v) != 2)
+    {
+      combine = BOpType.SUB;
+      a = Integer.numberOfTrailingZeros(high);
+    }
+    
+    ins.add(new ShiftLeft(1, reg, a));
+    
+    if (b == 0)
+    {
+      ins.add(new BinaryInst(regSt, 1, reg, combine));
+    }
+    else
+    {
+      ins.add(new ShiftLeft(regSt, reg, b));
+      ins.add(new BinaryInst(regSt, 1, regSt, combine));
+    }
+  }
+  
+  /**
+   * Generate the instructions dividing a register by an unsigned constant.
+   * @param ins - The list of instructions.
+   * @param reg - The register holding the dividend.
+   * @param regSt - The register receiving the quotient.
+   * @param v - The divisor.
+   */
+  private void getDivUInst(LinkedList<Instruction> ins, int reg, int regSt,
+    int v)
+  {
+    if (Integer.bitCount(v) == 1)
+    {
+      ins.add(new ShiftRight(regSt, reg, Integer.numberOfTrailingZeros(v),
+        false));
+      return;
+    }
+    
+    MagicNumber m = MagicNumber.getUnsigned(v);
+    
+    new Imm(m.getMult()).getLoadInst(ins, 1);
+    ins.add(new MultInst(reg, 1, true));
+    ins.add(new LoadHighBits(1));
+    
+    if (!m.needsAdd())
+    {
+      ins.add(new ShiftRight(regSt, 1, m.getShift(), false));
+      return;
+    }
+    
+    // The multiplier was too large for a word, so we need to add the
+    // dividend back in, halving first to keep from overflowing.
+    
+    ins.add(new BinaryInst(regSt, reg, 1, BOpType.SUB));
+    ins.add(new ShiftRight(regSt, regSt, 1, false));
+    ins.add(new BinaryInst(regSt, regSt, 1, BOpType.ADD));
+    ins.add(new ShiftRight(regSt, regSt, m.getShift() - 1, false));
+  }
+  
+  /**
+   * Generate the instructions dividing a register by a signed constant.
+   * @param ins - The list of instructions.
+   * @param reg - The register holding the dividend.
+   * @param regSt - The register receiving the quotient.
+   * @param v - The divisor.
+   */
+  private void getDivInst(LinkedList<Instruction> ins, int reg, int regSt,
+    int v)
+  {
+    if (v > 0 && Integer.bitCount(v) == 1)
+    {
+      // A shift rounds towards negative infinity, so negative dividends need
+      // v - 1 added in first.
+      
+      int k = Integer.numberOfTrailingZeros(v);
+      
+      if (k == 1)
+      {
+        ins.add(new ShiftRight(1, reg, 31, false));
+      }
+      else
+      {
+        ins.add(new ShiftRight(1, reg, 31, true));
+        ins.add(new ShiftRight(1, 1, 32 - k, false));
+      }
+      
+      ins.add(new BinaryInst(1, reg, 1, BOpType.ADD));
+      ins.add(new ShiftRight(regSt, 1, k, true));
+      return;
+    }
+    
+    MagicNumber m = MagicNumber.getSigned(v);
+    
+    new Imm(m.getMult()).getLoadInst(ins, 1);
+    ins.add(new MultInst(reg, 1, false));
+    ins.add(new LoadHighBits(1));
+    
+    // Correct for a multiplier whose sign doesn't match the divisor's.
+    
+    if (v > 0 && m.getMult() < 0)
+    {
+      ins.add(new BinaryInst(1, 1, reg, BOpType.ADD));
+    }
+    else if (v < 0 && m.getMult() > 0)
+    {
+      ins.add(new BinaryInst(1, 1, reg, BOpType.SUB));
+    }
+    
+    if (m.getShift() > 0)
+    {
+      ins.add(new ShiftRight(1, 1, m.getShift(), true));
+    }
+    
+    // Then round a negative quotient up towards zero.
+    
+    ins.add(new ShiftRight(regSt, 1, 31, false));
+    ins.add(new BinaryInst(regSt, 1, regSt, BOpType.ADD));
   }
   
   public Var getDef()
@@ -133,6 +495,68 @@ public class Binary extends ThreeAddress
     return st;
   }
   
+  public void setDef(Var v)
+  {
+    st = v;
+  }
+  
+  public ThreeAddress recompute(Var v)
+  {
+    return new Binary(v, r1, r2, op);
+  }
+  
+  public ValueTable.Key getValueKey(ValueMap vm)
+  {
+    int vn1 = vm.getValueNum(r1);
+    int vn2 = vm.getValueNum(r2);
+    
+    if (vn1 == -1 || vn2 == -1)
+    {
+      return null;
+    }
+    
+    // Put the operands of commutative operations in a fixed order.
+    
+    boolean commutes = op == BOpType.ADD || op == BOpType.MULT
+      || op == BOpType.MULTU || op == BOpType.EQ || op == BOpType.NE;
+    
+    if (commutes && vn1 > vn2)
+    {
+      return new ValueTable.Key(op.ordinal(), vn2, vn1);
+    }
+    
+    return new ValueTable.Key(op.ordinal(), vn1, vn2);
+  }
+  
+  public Imm evaluate(ConstMap m)
+  {
+    Imm i1 = m.getConst(r1);
+    Imm i2 = m.getConst(r2);
+    
+    if (i1 == null || i2 == null)
+    {
+      return null;
+    }
+    
+    // Let folding do the work on the constant version of this instruction.
+    
+    Result p = new Binary(st, i1, i2, op).fold().getPropResult();
+    
+    return p != null && p.isImm() ? (Imm) p : null;
+  }
+  
+  public void getUses(LinkedList<Result> uses)
+  {
+    uses.add(r1);
+    uses.add(r2);
+  }
+  
+  public void renameUses(VarMap m)
+  {
+    r1 = r1.renameUses(m);
+    r2 = r2.renameUses(m);
+  }
+  
   public void addUseCount(VarCounter ct)
   {
     ct.incr(r1.getVar());
@@ -317,9 +741,9 @@ public class Binary extends ThreeAddress
         
         return new Assign(st, var);
       }
-      else if (op == BOpType.DIV || op == BOpType.DIVU)
+      else if ((op == BOpType.DIV || op == BOpType.DIVU) && r2.isImm())
       {
-        // Identity 8: x / 1 = x.
+        // Identity 8: x / 1 = x (but not 1 / x).
         
         return new Assign(st, var);
       }
@@ -0,0 +1,115 @@
+package threeaddress;
+
+import java.util.LinkedList;
+
+import optimization.DefMap;
+import optimization.VarCounter;
+import mips.Branch;
+import mips.Instruction;
+
+/**
+ * CompareGoto.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Class representing a jump to a particular label taken if a comparison
+ * between two results holds.  These are only made just before code
+ * generation, by fusing a comparison with the conditional goto testing its
+ * result (see OptimizerUtils.fuseBranches), and so never pass through the
+ * optimizer.
+ */
+public class CompareGoto extends ThreeAddress
+{
+  private Result r1;
+  private Result r2;
+  private BOpType op;
+  private String label;
+  
+  public CompareGoto(Result r1, Result r2, BOpType op, String label)
+  {
+    this.r1 = r1;
+    this.r2 = r2;
+    this.op = op;
+    this.label = label;
+  }
+  
+  public boolean isJump()
+  {
+    return true;
+  }
+  
+  public String getJumpLabel()
+  {
+    return label;
+  }
+  
+  public void setJumpLabel(String label)
+  {
+    this.label = label;
+  }
+  
+  public String toString()
+  {
+    return idx + ": if " + r1 + " " + new Binary(null, r1, r2, op).getOpStr()
+      + " " + r2 + " goto " + label;
+  }
+  
+  public void getInst(LinkedList<Instruction> ins)
+  {
+    int reg1 = r1.getOperandReg(ins, 0);
+    int reg2 = r2.getOperandReg(ins, 1);
+    
+    ins.add(new Branch(reg1, reg2, label, op));
+  }
+  
+  public Var getDef()
+  {
+    return null;
+  }
+  
+  public void getUses(LinkedList<Result> uses)
+  {
+    uses.add(r1);
+    uses.add(r2);
+  }
+  
+  public void renameUses(VarMap m)
+  {
+    r1 = r1.renameUses(m);
+    r2 = r2.renameUses(m);
+  }
+  
+  public void addUseCount(VarCounter ct)
+  {
+    ct.incr(r1.getVar());
+    ct.incr(r2.getVar());
+  }
+  
+  public void subUseCount(VarCounter ct)
+  {
+    ct.decr(r1.getVar());
+    ct.decr(r2.getVar());
+  }
+  
+  public boolean isDeadCode(VarCounter ct)
+  {
+    return false;
+  }
+  
+  public boolean propagate(VarCounter ct, DefMap dm, ThreeAddress [] instArr)
+  {
+    return false;
+  }
+  
+  public ThreeAddress fold()
+  {
+    return this;
+  }
+  
+  public ThreeAddress algebraicIdentity(VarCounter ct)
+  {
+    return this;
+  }
+}
\ No newline at end of file
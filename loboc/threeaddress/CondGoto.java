@@ -29,11 +29,51 @@ public class CondGoto extends ThreeAddress
     this.bt = bt;
   }
   
+  /**
+   * Get the goto jumping to the given label whenever this one falls through.
+   * @param label - The label to jump to.
+   * @return The inverted goto, in our position in the code.
+   */
+  public CondGoto invert(String label)
+  {
+    BranchType inv = bt == BranchType.EQZ ? BranchType.NEZ : BranchType.EQZ;
+    CondGoto cg = new CondGoto(cond, label, inv);
+    cg.setIdx(idx);
+    
+    return cg;
+  }
+  
   public boolean isJump()
   {
     return true;
   }
   
+  public String getJumpLabel()
+  {
+    return label;
+  }
+  
+  public void setJumpLabel(String label)
+  {
+    this.label = label;
+  }
+  
+  public Result getCond()
+  {
+    return cond;
+  }
+  
+  /**
+   * Determine whether or not this branch is taken when its condition holds
+   * the given value.
+   * @param v - The value of the condition.
+   * @return True if we jump to our label, false if we fall through.
+   */
+  public boolean isTaken(int v)
+  {
+    return (v == 0 && bt == BranchType.EQZ) || (v != 0 && bt == BranchType.NEZ);
+  }
+  
   public String toString()
   {
     String condStr;
@@ -47,14 +87,59 @@ public class CondGoto extends ThreeAddress
       condStr = "!" + cond.toString();
     }
     
-    return idx + ": if " + condStr + " goto " + label + "; DEFS: " + inMask;
+    return idx + ": if " + condStr + " goto " + label;
+  }
+  
+  /**
+   * Fuse this goto with the instruction right before it, if that instruction
+   * compares two results into our condition and nothing else uses it.
+   * @param prev - The instruction right before this one.
+   * @param ct - The counter holding the number of uses of each temporary.
+   * @return The goto taken when the comparison holds (or fails, if we branch
+   * on a zero condition), or null if the two can't be fused.
+   */
+  public CompareGoto fuse(ThreeAddress prev, VarCounter ct)
+  {
+    if (!(prev instanceof Binary) || !cond.isVar())
+    {
+      return null;
+    }
+    
+    Binary cmp = (Binary) prev;
+    Var t = (Var) cond;
+    
+    if (!cmp.getOp().isComparison() || !t.isTemp() || !t.equals(cmp.getDef()))
+    {
+      return null;
+    }
+    
+    // The comparison's result mustn't be needed anywhere else.
+    
+    ct.decr(t);
+    
+    if (ct.isUsed(t))
+    {
+      ct.incr(t);
+      return null;
+    }
+    
+    BOpType op = cmp.getOp();
+    
+    if (bt == BranchType.EQZ)
+    {
+      op = op.getNegated();
+    }
+    
+    CompareGoto cg = new CompareGoto(cmp.getR1(), cmp.getR2(), op, label);
+    cg.setIdx(idx);
+    
+    return cg;
   }
   
   public void getInst(LinkedList<Instruction> ins)
   {
-    int reg = 0;
+    int reg = cond.getOperandReg(ins, 0);
     
-    cond.getLoadInst(ins, 0);
     ins.add(new Branch(reg, label, bt));
   }
   
@@ -63,6 +148,16 @@ public class CondGoto extends ThreeAddress
     return null;
   }
   
+  public void getUses(LinkedList<Result> uses)
+  {
+    uses.add(cond);
+  }
+  
+  public void renameUses(VarMap m)
+  {
+    cond = cond.renameUses(m);
+  }
+  
   public void addUseCount(VarCounter ct)
   {
     ct.incr(cond.getVar());
@@ -109,7 +204,7 @@ public class CondGoto extends ThreeAddress
     
     int v = ((Imm) cond).getBits();
     
-    if ((v == 0 && bt == BranchType.EQZ) || (v != 0 && bt == BranchType.NEZ))
+    if (isTaken(v))
     {
       // We replace this statement with a goto.
       
@@ -0,0 +1,22 @@
+package threeaddress;
+
+/**
+ * ConstMap.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Interface for a mapping from results to the constants they are known to
+ * hold, used to evaluate instructions at compile time.
+ */
+public interface ConstMap
+{
+  /**
+   * Get the constant value of the given result.
+   * @param r - The result.
+   * @return The constant r is known to hold, or null if it is not known to
+   * hold a constant.
+   */
+  public Imm getConst(Result r);
+}
\ No newline at end of file
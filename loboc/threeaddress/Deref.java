@@ -21,10 +21,16 @@ public class Deref extends Result
   private Var t;
   private int ptrSize;
   
-  public Deref(Var t, int ptrSize)
+  /**
+   * The alias class of the type being loaded.
+   */
+  private int aliasClass;
+  
+  public Deref(Var t, int ptrSize, int aliasClass)
   {
     this.t = t;
     this.ptrSize = ptrSize;
+    this.aliasClass = aliasClass;
   }
   
   public String toString()
@@ -34,19 +40,37 @@ public class Deref extends Result
   
   public void getLoadInst(LinkedList<Instruction> ins, int reg)
   {
-    // First, we need to get the variable from memory.
+    // First, we need to get the variable from memory (if it isn't in a
+    // register already).
     
-    t.getLoadInst(ins, reg);
+    int regPt = t.getOperandReg(ins, reg);
     
     // Next, we simply dereference it to get the value it points to.
     
     LoadType lt = ptrSize == 1 ? LoadType.BYTE : LoadType.WORD;
     
-    ins.add(new LoadDeref(reg, reg, lt));
+    ins.add(new LoadDeref(reg, regPt, lt));
   }
   
   public Var getVar()
   {
     return t;
   }
+  
+  public int getPtrSize()
+  {
+    return ptrSize;
+  }
+  
+  public int getAliasClass()
+  {
+    return aliasClass;
+  }
+  
+  public Result renameUses(VarMap m)
+  {
+    Var nt = m.map(t);
+    
+    return nt == t ? this : new Deref(nt, ptrSize, aliasClass);
+  }
 }
\ No newline at end of file
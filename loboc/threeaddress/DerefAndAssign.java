@@ -1,9 +1,9 @@
 package threeaddress;
 
-import java.util.BitSet;
 import java.util.LinkedList;
 
 import optimization.DefMap;
+import optimization.ValueTable;
 import optimization.VarCounter;
 import mips.Instruction;
 import mips.StoreDeref;
@@ -25,27 +25,60 @@ public class DerefAndAssign extends ThreeAddress
   private Result r;
   private int ptrSize;
   
-  public DerefAndAssign(Var ptr, Result r, int ptrSize)
+  /**
+   * The alias class of the type being stored.
+   */
+  private int aliasClass;
+  
+  public DerefAndAssign(Var ptr, Result r, int ptrSize, int aliasClass)
   {
     this.ptr = ptr;
     this.r = r;
     this.ptrSize = ptrSize;
+    this.aliasClass = aliasClass;
+  }
+  
+  public boolean isPointerStore()
+  {
+    return true;
+  }
+  
+  public int getStoreClass()
+  {
+    return aliasClass;
+  }
+  
+  public ValueTable.Key getStoreKey(ValueMap vm)
+  {
+    // A byte stored holds only part of the value, so it isn't read back as
+    // the same value.
+    
+    if (ptrSize == 1)
+    {
+      return null;
+    }
+    
+    int vn = vm.getValueNum(ptr);
+    
+    return new ValueTable.Key(ValueTable.LOAD_BASE + aliasClass, vn, 0);
+  }
+  
+  public Result getStoredResult()
+  {
+    return r;
   }
   
   public String toString()
   {
-    return idx + ": " + ptr + "[] = " + r + "; DEFS: " + inMask;
+    return idx + ": " + ptr + "[] = " + r;
   }
   
   public void getInst(LinkedList<Instruction> ins)
   {
-    int regMem = 0;
-    int regVal = 1;
-    
     // Load the pointer and the value from memory...
     
-    ptr.getLoadInst(ins, regMem);
-    r.getLoadInst(ins, regVal);
+    int regMem = ptr.getOperandReg(ins, 0);
+    int regVal = r.getOperandReg(ins, 1);
     
     // And store it at the location provided in the memory register.
     
@@ -59,22 +92,16 @@ public class DerefAndAssign extends ThreeAddress
     return null;
   }
   
-  public void computeOutMask(BitSet inMask, DefMap dm)
+  public void getUses(LinkedList<Result> uses)
   {
-    // Without knowing what we're pointing to, we have no choice but to kill
-    // off all of our definitions of user-defined variables.  Note that, since
-    // temporaries can never be addressed, we can keep our definitions for our
-    // temporaries.
-    
-    // We get rid of our user-defined definitions by taking a copy of the
-    // userMask computed beforehand in our definition map, ANDing it with the
-    // inMask to give us all of our definitions of user-defined variables,
-    // and then XORing with the inMask once again.
-    
-    this.inMask = inMask;  
-    outMask = dm.getMaskU();
-    outMask.and(inMask);
-    outMask.xor(inMask);
+    uses.add(ptr);
+    uses.add(r);
+  }
+  
+  public void renameUses(VarMap m)
+  {
+    ptr = m.map(ptr);
+    r = r.renameUses(m);
   }
   
   public void addUseCount(VarCounter ct)
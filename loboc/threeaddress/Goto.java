@@ -30,9 +30,24 @@ public class Goto extends ThreeAddress
     return true;
   }
   
+  public String getJumpLabel()
+  {
+    return label;
+  }
+  
+  public void setJumpLabel(String label)
+  {
+    this.label = label;
+  }
+  
+  public boolean canFallThrough()
+  {
+    return false;
+  }
+  
   public String toString()
   {
-    return idx + ": goto " + label + "; DEFS: " + inMask;
+    return idx + ": goto " + label;
   }
   
   public void getInst(LinkedList<Instruction> ins)
@@ -45,6 +60,11 @@ public class Goto extends ThreeAddress
     return null;
   }
   
+  public void getUses(LinkedList<Result> uses)
+  {
+    // No results read here!
+  }
+  
   public void addUseCount(VarCounter ct)
   {
     // No variables to count the uses of!
@@ -2,8 +2,12 @@ package threeaddress;
 
 import java.util.LinkedList;
 
+import mips.ImmInst;
+import mips.ImmOpType;
 import mips.Instruction;
 import mips.LoadImm;
+import mips.LoadUpperImm;
+import mips.Registers;
 
 /**
  * Imm.java
@@ -43,7 +47,33 @@ public class Imm extends Result
   
   public void getLoadInst(LinkedList<Instruction> ins, int reg)
   {
-    ins.add(new LoadImm(bits, reg));
+    // Constants that fit in 16 bits take a single instruction.  Anything
+    // larger is built from its upper and lower halves.
+    
+    if (ImmOpType.ADDIU.fits(bits) || ImmOpType.ORI.fits(bits))
+    {
+      ins.add(new LoadImm(bits, reg));
+      return;
+    }
+    
+    ins.add(new LoadUpperImm(bits >>> 16, reg));
+    
+    if ((bits & 0xFFFF) != 0)
+    {
+      ins.add(new ImmInst(reg, reg, bits & 0xFFFF, ImmOpType.ORI));
+    }
+  }
+  
+  public int getOperandReg(LinkedList<Instruction> ins, int reg)
+  {
+    // Zero is always sitting in a register already.
+    
+    if (bits == 0)
+    {
+      return Registers.ZERO_REG;
+    }
+    
+    return super.getOperandReg(ins, reg);
   }
   
   public Var getVar()
@@ -25,6 +25,11 @@ public class Label extends ThreeAddress
     this.label = label;
   }
   
+  public String getLabel()
+  {
+    return label;
+  }
+  
   public boolean isLabel()
   {
     return true;
@@ -32,7 +37,7 @@ public class Label extends ThreeAddress
   
   public String toString()
   {
-    return idx + ": label " + label + ": DEFS: " + inMask;
+    return idx + ": label " + label + ":";
   }
   
   public void getInst(LinkedList<Instruction> ins)
@@ -45,6 +50,11 @@ public class Label extends ThreeAddress
     return null;
   }
   
+  public void getUses(LinkedList<Result> uses)
+  {
+    // No results read here!
+  }
+  
   public void addUseCount(VarCounter ct)
   {
     // No variables to count the uses of!
@@ -0,0 +1,128 @@
+package threeaddress;
+
+import java.util.LinkedList;
+
+import optimization.DefMap;
+import optimization.VarCounter;
+import mips.Instruction;
+
+/**
+ * Phi.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Class representing a phi function in SSA form - the assignment of a
+ * variable, at the top of a block, to one of several results depending on
+ * which predecessor control arrived from.  The results are ordered the same
+ * way as the predecessors of the block.  Phis only exist while the code is in
+ * SSA form, and are replaced by ordinary assignments before any instructions
+ * are generated.
+ */
+public class Phi extends ThreeAddress
+{
+  private Var st;
+  private Result [] args;
+  
+  public Phi(Var st, int numArgs)
+  {
+    this.st = st;
+    this.args = new Result [numArgs];
+  }
+  
+  public int getNumArgs()
+  {
+    return args.length;
+  }
+  
+  public Result getArg(int i)
+  {
+    return args[i];
+  }
+  
+  public void setArg(int i, Result r)
+  {
+    args[i] = r;
+  }
+  
+  public String toString()
+  {
+    String s = idx + ": " + st + " = phi(";
+    
+    for (int i = 0; i < args.length; i++)
+    {
+      s += (i == 0 ? "" : ", ") + args[i];
+    }
+    
+    return s + ")";
+  }
+  
+  public void getInst(LinkedList<Instruction> ins)
+  {
+    // Phis are always replaced before we get this far, so there is nothing to
+    // generate.
+  }
+  
+  public Var getDef()
+  {
+    return st;
+  }
+  
+  public void setDef(Var v)
+  {
+    st = v;
+  }
+  
+  public void getUses(LinkedList<Result> uses)
+  {
+    for (Result r : args)
+    {
+      uses.add(r);
+    }
+  }
+  
+  public void renameUses(VarMap m)
+  {
+    for (int i = 0; i < args.length; i++)
+    {
+      args[i] = args[i].renameUses(m);
+    }
+  }
+  
+  public void addUseCount(VarCounter ct)
+  {
+    for (Result r : args)
+    {
+      ct.incr(r.getVar());
+    }
+  }
+  
+  public void subUseCount(VarCounter ct)
+  {
+    for (Result r : args)
+    {
+      ct.decr(r.getVar());
+    }
+  }
+  
+  public boolean isDeadCode(VarCounter ct)
+  {
+    return !ct.isUsed(st);
+  }
+  
+  public boolean propagate(VarCounter ct, DefMap dm, ThreeAddress [] instArr)
+  {
+    return false;
+  }
+  
+  public ThreeAddress fold()
+  {
+    return this;
+  }
+  
+  public ThreeAddress algebraicIdentity(VarCounter ct)
+  {
+    return this;
+  }
+}
\ No newline at end of file
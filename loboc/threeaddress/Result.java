@@ -42,10 +42,46 @@ public abstract class Result
    */
   public abstract void getLoadInst(LinkedList<Instruction> ins, int reg);
   
+  /**
+   * Get the register holding this result for use as an operand, generating
+   * the instruction(s) to load it into the scratch register reg if it does not
+   * already live inside of a register.
+   * @param ins - The list of instructions.
+   * @param reg - The scratch register to load the result into, if need be.
+   * @return The register holding the result.
+   */
+  public int getOperandReg(LinkedList<Instruction> ins, int reg)
+  {
+    getLoadInst(ins, reg);
+    return reg;
+  }
+  
   /**
    * Get the variable associated with this result.
    * @return The var associated with this result, or null if no such variable
    * is associated with this result.
    */
   public abstract Var getVar();
+  
+  /**
+   * Get the variable whose value must be read in order to compute this
+   * result.  This is the same as getVar, except in the case of the address
+   * operator, which never reads the value of its variable.
+   * @return The var read by this result, or null if no variable is read.
+   */
+  public Var getUseVar()
+  {
+    return getVar();
+  }
+  
+  /**
+   * Rename the variables read by this result.
+   * @param m - The mapping giving the new name of each variable.
+   * @return The renamed result (which may be this result, if nothing was
+   * renamed).
+   */
+  public Result renameUses(VarMap m)
+  {
+    return this;
+  }
 }
\ No newline at end of file
@@ -31,18 +31,21 @@ public class Return extends ThreeAddress
     return true;
   }
   
+  public boolean canFallThrough()
+  {
+    return false;
+  }
+  
   public String toString()
   {
-    return idx + ": return " + r + "; DEFS: " + inMask;
+    return idx + ": return " + r;
   }
   
   public void getInst(LinkedList<Instruction> ins)
   {
-    int reg = 0;
-    
     // Load the variable into a register.
     
-    r.getLoadInst(ins, reg);
+    int reg = r.getOperandReg(ins, 0);
     
     // Set the exit value to the value of the variable.
     
@@ -58,6 +61,16 @@ public class Return extends ThreeAddress
     return null;
   }
   
+  public void getUses(LinkedList<Result> uses)
+  {
+    uses.add(r);
+  }
+  
+  public void renameUses(VarMap m)
+  {
+    r = r.renameUses(m);
+  }
+  
   public void addUseCount(VarCounter ct)
   {
     ct.incr(r.getVar());
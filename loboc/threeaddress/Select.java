@@ -0,0 +1,265 @@
+package threeaddress;
+
+import java.util.LinkedList;
+
+import optimization.DefMap;
+import optimization.VarCounter;
+import mips.BinaryInst;
+import mips.BitwiseInst;
+import mips.BitwiseOpType;
+import mips.CondMove;
+import mips.Instruction;
+import mips.Move;
+import mips.Registers;
+
+/**
+ * Select.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Class representing assignment of one variable to one of two results,
+ * depending on whether or not a condition holds, without any jumps.
+ */
+public class Select extends ThreeAddress
+{
+  /**
+   * Var in which the result will be stored.
+   */
+  private Var st;
+  
+  /**
+   * The condition, and the results chosen when it does and doesn't hold.
+   */
+  private Result cond;
+  private Result tru;
+  private Result fls;
+  
+  public Select(Var st, Result cond, Result tru, Result fls)
+  {
+    this.st = st;
+    this.cond = cond;
+    this.tru = tru;
+    this.fls = fls;
+  }
+  
+  public String toString()
+  {
+    return idx + ": " + st + " = " + cond + " ? " + tru + " : " + fls;
+  }
+  
+  public void getInst(LinkedList<Instruction> ins)
+  {
+    // A conditional move needs the condition, the value it moves and the
+    // value it overwrites in registers all at once, and the last of those
+    // must be a copy we're free to overwrite.  We've only two scratch
+    // registers, so if all three results (and our variable) live in memory,
+    // we compute the result arithmetically instead.
+    
+    if (!inReg(cond) && !inReg(tru) && !inReg(fls)
+      && st.getReg() == Registers.NO_REG)
+    {
+      getArithInst(ins);
+      return;
+    }
+    
+    int regCnd = cond.getOperandReg(ins, 1);
+    int regTru = tru.getOperandReg(ins, 0);
+    
+    // Copy the false result into our own register, unless that holds one of
+    // the others, or else into a free scratch register, then move the true
+    // result over it if the condition holds.
+    
+    int regSt = st.getReg();
+    
+    if (regSt == Registers.NO_REG || regSt == regCnd || regSt == regTru)
+    {
+      regSt = regTru != 0 ? 0 : (regCnd != 1 ? 1 : Registers.NO_REG);
+    }
+    
+    if (regSt != Registers.NO_REG)
+    {
+      int regFls = fls.getOperandReg(ins, regSt);
+      
+      if (regFls != regSt)
+      {
+        ins.add(new Move(regSt, regFls));
+      }
+      
+      ins.add(new CondMove(regSt, regTru, regCnd, false));
+    }
+    else
+    {
+      // Both scratch registers are taken, but the true result was loaded
+      // into one of them - so move the false result over it instead.  This
+      // only happens when the false result lives in a register.
+      
+      regSt = regTru;
+      ins.add(new CondMove(regSt, fls.getOperandReg(ins, 0), regCnd, true));
+    }
+    
+    st.getStoreInst(ins, regSt);
+  }
+  
+  /**
+   * Generate the instructions computing our result as
+   * fls ^ ((tru ^ fls) & -c), where c is 1 if the condition holds and 0
+   * otherwise - so -c masks in either every bit of the difference or none.
+   * This needs only our two scratch registers.
+   * @param ins - The list of instructions.
+   */
+  private void getArithInst(LinkedList<Instruction> ins)
+  {
+    tru.getLoadInst(ins, 0);
+    fls.getLoadInst(ins, 1);
+    ins.add(new BitwiseInst(0, 0, 1, BitwiseOpType.XOR));
+    cond.getLoadInst(ins, 1);
+    ins.add(new BinaryInst(1, Registers.ZERO_REG, 1, BOpType.LTU));
+    ins.add(new BinaryInst(1, Registers.ZERO_REG, 1, BOpType.SUB));
+    ins.add(new BitwiseInst(0, 0, 1, BitwiseOpType.AND));
+    fls.getLoadInst(ins, 1);
+    ins.add(new BitwiseInst(0, 0, 1, BitwiseOpType.XOR));
+    st.getStoreInst(ins, 0);
+  }
+  
+  /**
+   * Determine whether or not the given result can be used without loading it
+   * into a scratch register.
+   * @param r - The result.
+   * @return True if r lives in a register (or is zero).
+   */
+  private static boolean inReg(Result r)
+  {
+    if (r.isImm())
+    {
+      return ((Imm) r).getBits() == 0;
+    }
+    
+    return ((Var) r).getReg() != Registers.NO_REG;
+  }
+  
+  public Var getDef()
+  {
+    return st;
+  }
+  
+  public void setDef(Var v)
+  {
+    st = v;
+  }
+  
+  public Imm evaluate(ConstMap m)
+  {
+    Imm c = m.getConst(cond);
+    
+    if (c != null)
+    {
+      return m.getConst(c.getBits() != 0 ? tru : fls);
+    }
+    
+    Imm t = m.getConst(tru);
+    Imm f = m.getConst(fls);
+    
+    return t != null && f != null && t.getBits() == f.getBits() ? t : null;
+  }
+  
+  public void getUses(LinkedList<Result> uses)
+  {
+    uses.add(cond);
+    uses.add(tru);
+    uses.add(fls);
+  }
+  
+  public void renameUses(VarMap m)
+  {
+    cond = cond.renameUses(m);
+    tru = tru.renameUses(m);
+    fls = fls.renameUses(m);
+  }
+  
+  public void addUseCount(VarCounter ct)
+  {
+    ct.incr(cond.getVar());
+    ct.incr(tru.getVar());
+    ct.incr(fls.getVar());
+  }
+  
+  public void subUseCount(VarCounter ct)
+  {
+    ct.decr(cond.getVar());
+    ct.decr(tru.getVar());
+    ct.decr(fls.getVar());
+  }
+  
+  public boolean isDeadCode(VarCounter ct)
+  {
+    return !ct.isUsed(st);
+  }
+  
+  public boolean propagate(VarCounter ct, DefMap dm, ThreeAddress [] instArr)
+  {
+    Result pc = propagateVar(cond, dm, instArr);
+    Result pt = propagateVar(tru, dm, instArr);
+    Result pf = propagateVar(fls, dm, instArr);
+    
+    if (pc != null)
+    {
+      ct.decr(cond.getVar());
+      ct.incr(pc.getVar());
+      cond = pc;
+    }
+    
+    if (pt != null)
+    {
+      ct.decr(tru.getVar());
+      ct.incr(pt.getVar());
+      tru = pt;
+    }
+    
+    if (pf != null)
+    {
+      ct.decr(fls.getVar());
+      ct.incr(pf.getVar());
+      fls = pf;
+    }
+    
+    return pc != null || pt != null || pf != null;
+  }
+  
+  public ThreeAddress fold()
+  {
+    // Constant conditions are left for algebraicIdentity, as the result not
+    // chosen may be a variable losing a use.
+    
+    return this;
+  }
+  
+  public ThreeAddress algebraicIdentity(VarCounter ct)
+  {
+    if (cond.isImm())
+    {
+      // Identity 1: 1 ? x : y = x, and 0 ? x : y = y.
+      
+      Result r = ((Imm) cond).getBits() != 0 ? tru : fls;
+      
+      ct.decr((r == tru ? fls : tru).getVar());
+      return new Assign(st, r);
+    }
+    
+    boolean same = tru.isImm() && fls.isImm()
+      ? ((Imm) tru).getBits() == ((Imm) fls).getBits()
+      : tru.isVar() && fls.isVar() && ((Var) tru).equals((Var) fls);
+    
+    if (same)
+    {
+      // Identity 2: c ? x : x = x.
+      
+      ct.decr(cond.getVar());
+      ct.decr(fls.getVar());
+      return new Assign(st, tru);
+    }
+    
+    return this;
+  }
+}
\ No newline at end of file
@@ -27,6 +27,14 @@ public class TempVar extends Var
   
   public String toString()
   {
-    return "t" + varNum /*+ " (offset: " + offset + ")"*/;
+    return "t" + varNum + getVersionStr()
+      /*+ " (offset: " + offset + ")"*/;
+  }
+  
+  public Var withVersion(int version)
+  {
+    TempVar v = new TempVar(varNum, size, align, offset);
+    v.version = version;
+    return v;
   }
 }
\ No newline at end of file
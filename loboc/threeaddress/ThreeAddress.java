@@ -1,9 +1,9 @@
 package threeaddress;
 
-import java.util.BitSet;
 import java.util.LinkedList;
 
 import optimization.DefMap;
+import optimization.ValueTable;
 import optimization.VarCounter;
 import mips.Instruction;
 
@@ -19,8 +19,14 @@ import mips.Instruction;
 public abstract class ThreeAddress
 {
   protected int idx;
-  protected BitSet inMask;
-  protected BitSet outMask;
+  
+  /**
+   * If this instruction is a copy of one variable into another, the position
+   * of the definition of the copied variable reaching this instruction, as of
+   * the last time the optimizer passed over it (or -1 if there is no single
+   * such definition).
+   */
+  protected int srcDef = -1;
   
   public int getIdx()
   {
@@ -32,24 +38,14 @@ public abstract class ThreeAddress
     this.idx = idx;
   }
   
-  public BitSet getInMask()
+  public int getSrcDef()
   {
-    return inMask;
+    return srcDef;
   }
   
-  public void setInMask(BitSet inMask)
+  public void setSrcDef(int srcDef)
   {
-    this.inMask = inMask;
-  }
-  
-  public BitSet getOutMask()
-  {
-    return outMask;
-  }
-  
-  public void setOutMask(BitSet outMask)
-  {
-    this.outMask = outMask;
+    this.srcDef = srcDef;
   }
   
   /**
@@ -70,6 +66,70 @@ public abstract class ThreeAddress
     return false;
   }
   
+  /**
+   * Return whether or not this instruction stores a value through a pointer,
+   * possibly overwriting any user-defined variable in memory.
+   * @return True if this is a dereference and assignment - false otherwise.
+   */
+  public boolean isPointerStore()
+  {
+    return false;
+  }
+  
+  /**
+   * Get the alias class of the memory this instruction stores to through a
+   * pointer, if it does.
+   * @return The alias class of the type stored, or -1 if this is not a store
+   * through a pointer.
+   */
+  public int getStoreClass()
+  {
+    return -1;
+  }
+  
+  /**
+   * Determine whether or not this instruction may change the given variable
+   * by storing through a pointer.  Only a store of the variable's own alias
+   * class can.
+   * @param v - The variable.
+   * @return True if this is a store through a pointer which may change v.
+   */
+  public boolean mayStoreTo(Var v)
+  {
+    return isPointerStore() && !v.isTemp()
+      && v.getAliasClass() == getStoreClass();
+  }
+  
+  /**
+   * Get the label this instruction may jump to, if this is some sort of goto.
+   * @return The label this instruction jumps to, or null if this instruction
+   * never jumps to a label.
+   */
+  public String getJumpLabel()
+  {
+    return null;
+  }
+  
+  /**
+   * Change the label this instruction jumps to, if this is some sort of goto.
+   * @param label - The new label to jump to.
+   */
+  public void setJumpLabel(String label)
+  {
+    // Nothing to change if we never jump.
+  }
+  
+  /**
+   * Return whether or not control may continue on to the next instruction once
+   * this instruction has been executed.
+   * @return False if this is an unconditional jump or a return - true
+   * otherwise.
+   */
+  public boolean canFallThrough()
+  {
+    return true;
+  }
+  
   /**
    * Return the RHS of this instruction, if this instruction is a definition
    * and the RHS is either a constant or a regular variable.
@@ -96,43 +156,6 @@ public abstract class ThreeAddress
     }
   }
   
-  /**
-   * Compute the reaching definition mask of this instruction.
-   * @param inMask - The reaching definition mask of the previous instruction.
-   * @param dm - The map of variable definition bit vectors.
-   */
-  public void computeOutMask(BitSet inMask, DefMap dm)
-  {
-    this.inMask = inMask;
-    
-    // First, get the mask of the definition variable.  If this is not a
-    // definition, exit immediately, setting inMask to outMask.
-    
-    Var def = getDef();
-    
-    if (def == null)
-    {
-      outMask = (BitSet) inMask.clone();
-      return;
-    }
-    
-    outMask = dm.getBitSet(def);
-    
-    // Now, AND this mask with our inMask to get an identical mask with the
-    // current reaching definitions of this variable.  Now, "gen" our new
-    // definition by setting the bit corresponding to this definition.
-    
-    outMask.and(inMask);
-    outMask.set(idx);
-    
-    // Now, we XOR this result with the inMask to get an identical mask, with
-    // all bits set to 1 in both the first and second masks (i.e., the "killed"
-    // definitions) set to 0, and the bits set to 0 in the first but 1 in the
-    // second (the "generated" definition) set to 1.  This is our outMask.
-    
-    outMask.xor(inMask);
-  }
-  
   /**
    * Attempt to propagate one of the parts of the RHS of this instruction.
    * @param r - The RHS to attempt to propagate.
@@ -160,14 +183,14 @@ public abstract class ThreeAddress
     // grab a result that can be propagated, if we have not computed it
     // previously.
     
-    int defIdx = dm.getDef(v, inMask);
+    int defIdx = dm.getDef(v);
     
     if (defIdx == -1)
     {
       return null;
     }
     
-    Result retResult = instArr[defIdx].getPropResult();
+    Result retResult = dm.getPropResult(defIdx, instArr);
     
     if (retResult == null)
     {
@@ -190,21 +213,14 @@ public abstract class ThreeAddress
       
       Var rv = retResult.getVar();
       
-      // Next, we get the inMasks at the location of the definition, as well as
-      // at our current location, as well as the variable mask for rv.
-      
-      BitSet varMask = dm.getBitSet(rv);
-      BitSet defInMask = instArr[defIdx].inMask;
+      // Next, we get the definitions of rv reaching the location of the
+      // definition (which was recorded when we last passed over it), as well
+      // as our current location.  If the same single definition reaches both
+      // locations, then we can carry out the propagation.
       
-      // We then AND them all together.  If there is one bit active by the end
-      // of the process (that is, if the same definition of the propagated
-      // variable is used at both locations) then we can carry out the
-      // propagation.
+      int rvDefIdx = dm.getDef(rv);
       
-      varMask.and(defInMask);
-      varMask.and(inMask);
-      
-      if (!varMask.isEmpty())
+      if (rvDefIdx != -1 && rvDefIdx == dm.getSrcDef(defIdx, instArr))
       {
         return retResult;
       }
@@ -231,6 +247,89 @@ public abstract class ThreeAddress
    */
   public abstract Var getDef();
   
+  /**
+   * Add each of the results read by this instruction (the operands on the RHS
+   * of an assignment, the condition of a conditional goto, the value of a
+   * return and so on) to the list uses.
+   * @param uses - The list of results read by this instruction.
+   */
+  public abstract void getUses(LinkedList<Result> uses);
+  
+  /**
+   * Rename each of the variables read by this instruction.
+   * @param m - The mapping giving the new name of each variable.
+   */
+  public void renameUses(VarMap m)
+  {
+    // Nothing read, nothing to rename.
+  }
+  
+  /**
+   * Evaluate the value this instruction assigns to its variable, given the
+   * constant values known for its operands.
+   * @param m - The mapping giving the known constant values.
+   * @return The constant assigned by this instruction, or null if it does not
+   * assign a constant we can determine.
+   */
+  public Imm evaluate(ConstMap m)
+  {
+    return null;
+  }
+  
+  /**
+   * Get the expression this instruction computes, for local value numbering.
+   * @param vm - The mapping giving the value number of each operand.
+   * @return The expression, or null if this instruction doesn't compute an
+   * expression we number.
+   */
+  public ValueTable.Key getValueKey(ValueMap vm)
+  {
+    return null;
+  }
+  
+  /**
+   * Make a new instruction computing the same expression as this one, but
+   * assigning it to a different variable.
+   * @param v - The variable to assign the expression to.
+   * @return The new instruction, or null if this instruction doesn't compute
+   * an expression we number.
+   */
+  public ThreeAddress recompute(Var v)
+  {
+    return null;
+  }
+  
+  /**
+   * Get the load which would read back the value this instruction stores
+   * through a pointer, for local value numbering.
+   * @param vm - The mapping giving the value number of each operand.
+   * @return The expression of a load through the same pointer, or null if
+   * this instruction stores nothing we can read back.
+   */
+  public ValueTable.Key getStoreKey(ValueMap vm)
+  {
+    return null;
+  }
+  
+  /**
+   * Get the value this instruction stores through a pointer, if it does.
+   * @return The value stored, or null if this is not a store through a
+   * pointer.
+   */
+  public Result getStoredResult()
+  {
+    return null;
+  }
+  
+  /**
+   * Replace the variable defined by this instruction, if any.
+   * @param v - The new variable to define.
+   */
+  public void setDef(Var v)
+  {
+    // Nothing defined, nothing to replace.
+  }
+  
   /**
    * Add the number of times each variable has a use in the code to counter ct.
    * Here, a variable is used whenever it appears on the RHS of a binary or
@@ -3,6 +3,7 @@ package threeaddress;
 import java.util.LinkedList;
 
 import optimization.DefMap;
+import optimization.ValueTable;
 import optimization.VarCounter;
 import mips.Instruction;
 import mips.UnaryInst;
@@ -48,24 +49,33 @@ public class Unary extends ThreeAddress
   
   public String toString()
   {
-    return idx + ": " + st + " = " + getOpStr() + " " + o + "; DEFS: " + inMask;
+    return idx + ": " + st + " = " + getOpStr() + " " + o;
   }
   
   public void getInst(LinkedList<Instruction> ins)
   {
+    // An operation on a constant (which only goes unfolded when we aren't
+    // optimizing) just loads the result.
+    
+    if (o.isImm())
+    {
+      fold().getInst(ins);
+      return;
+    }
+    
     // Load our variable into a register...
 
-    int reg = 0;
-    
-    o.getLoadInst(ins, reg);
+    int reg = o.getOperandReg(ins, 0);
     
     // Compute the unary instruction...
     
-    ins.add(new UnaryInst(reg, reg, op));
+    int regSt = st.getDestReg(0);
+    
+    ins.add(new UnaryInst(regSt, reg, op));
     
     // And finally, write that register into our store variable's memory.
     
-    st.getStoreInst(ins, reg);
+    st.getStoreInst(ins, regSt);
   }
   
   public Var getDef()
@@ -73,6 +83,50 @@ public class Unary extends ThreeAddress
     return st;
   }
   
+  public void setDef(Var v)
+  {
+    st = v;
+  }
+  
+  public ThreeAddress recompute(Var v)
+  {
+    return new Unary(v, o, op);
+  }
+  
+  public ValueTable.Key getValueKey(ValueMap vm)
+  {
+    int vn = vm.getValueNum(o);
+    
+    if (vn == -1)
+    {
+      return null;
+    }
+    
+    return new ValueTable.Key(ValueTable.UNARY_BASE + op.ordinal(), vn, 0);
+  }
+  
+  public Imm evaluate(ConstMap m)
+  {
+    Imm i = m.getConst(o);
+    
+    if (i == null)
+    {
+      return null;
+    }
+    
+    return (Imm) new Unary(st, i, op).fold().getPropResult();
+  }
+  
+  public void getUses(LinkedList<Result> uses)
+  {
+    uses.add(o);
+  }
+  
+  public void renameUses(VarMap m)
+  {
+    o = o.renameUses(m);
+  }
+  
   public void addUseCount(VarCounter ct)
   {
     ct.incr(o.getVar());
@@ -11,12 +11,13 @@ package threeaddress;
  */
 public class UserVar extends Var
 {
-  public UserVar(int varNum, int size, int align, int offset)
+  public UserVar(int varNum, int size, int align, int offset, int aliasClass)
   {
     this.varNum = varNum;
     this.size = size;
     this.align = align;
     this.offset = offset;
+    this.aliasClass = aliasClass;
   }
   
   public int getOffset()
@@ -26,6 +27,14 @@ public class UserVar extends Var
   
   public String toString()
   {
-    return "v" + varNum /*+ " (offset: " + offset + ")"*/;
+    return "v" + varNum + getVersionStr()
+      /*+ " (offset: " + offset + ")"*/;
+  }
+  
+  public Var withVersion(int version)
+  {
+    UserVar v = new UserVar(varNum, size, align, offset, aliasClass);
+    v.version = version;
+    return v;
   }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package threeaddress;
+
+/**
+ * ValueMap.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Interface for a mapping from results to value numbers, where two results
+ * with the same number are known to hold the same value.  Used to find
+ * instructions computing the same expression.
+ */
+public interface ValueMap
+{
+  /**
+   * Get the value number of the given result.
+   * @param r - The result.
+   * @return The value number of r, or -1 if r has none.
+   */
+  public int getValueNum(Result r);
+}
\ No newline at end of file
@@ -5,6 +5,8 @@ import java.util.LinkedList;
 import mips.Instruction;
 import mips.LoadMem;
 import mips.LoadMem.LoadType;
+import mips.Move;
+import mips.Registers;
 import mips.StoreMem;
 import mips.StoreMem.StoreType;
 
@@ -39,6 +41,26 @@ public abstract class Var extends Result
    */
   protected int offset;
   
+  /**
+   * The register this variable has been allocated to, or NO_REG if the
+   * variable lives in memory.
+   */
+  protected int reg = Registers.NO_REG;
+  
+  /**
+   * In SSA form, the version of this variable - which of its definitions
+   * this is, with version 0 standing for the value the variable holds before
+   * any definition.  Versions of the same variable share its storage, and
+   * compare equal to each other.
+   */
+  protected int version;
+  
+  /**
+   * The alias class of a user-defined variable's type (see Type), or -1 for
+   * a temporary, which no pointer can refer to.
+   */
+  protected int aliasClass = -1;
+  
   public int getVarNum()
   {
     return varNum;
@@ -54,6 +76,43 @@ public abstract class Var extends Result
     return align;
   }
   
+  public int getReg()
+  {
+    return reg;
+  }
+  
+  public void setReg(int reg)
+  {
+    this.reg = reg;
+  }
+  
+  public int getVersion()
+  {
+    return version;
+  }
+  
+  public int getAliasClass()
+  {
+    return aliasClass;
+  }
+  
+  /**
+   * Get the given version of this variable.
+   * @param version - The version number.
+   * @return A new variable sharing this variable's storage, with the given
+   * version.
+   */
+  public abstract Var withVersion(int version);
+  
+  /**
+   * Get the suffix naming this variable's version, if it has one.
+   * @return The version suffix, or the empty string for version 0.
+   */
+  protected String getVersionStr()
+  {
+    return version == 0 ? "" : "_" + version;
+  }
+  
   public boolean isVar()
   {
     return true;
@@ -76,6 +135,19 @@ public abstract class Var extends Result
    */
   public void getLoadInst(LinkedList<Instruction> ins, int reg)
   {
+    if (this.reg != Registers.NO_REG)
+    {
+      // We already have the value in a register, so just copy it over (if it
+      // isn't already where it needs to be).
+      
+      if (this.reg != reg)
+      {
+        ins.add(new Move(reg, this.reg));
+      }
+      
+      return;
+    }
+    
     LoadType lt;
     
     if (size == 1)
@@ -90,6 +162,30 @@ public abstract class Var extends Result
     ins.add(new LoadMem(offset, lt, reg, isTemp()));
   }
   
+  public int getOperandReg(LinkedList<Instruction> ins, int reg)
+  {
+    if (this.reg != Registers.NO_REG)
+    {
+      return this.reg;
+    }
+    
+    getLoadInst(ins, reg);
+    return reg;
+  }
+  
+  /**
+   * Get the register into which a new value of this variable should be
+   * computed.
+   * @param reg - The scratch register to use if this variable lives in
+   * memory.
+   * @return The register this variable was allocated to, or reg if this
+   * variable lives in memory.
+   */
+  public int getDestReg(int reg)
+  {
+    return this.reg != Registers.NO_REG ? this.reg : reg;
+  }
+  
   /**
    * Generate the instruction to store this variable into memory from the
    * specified register.
@@ -98,6 +194,23 @@ public abstract class Var extends Result
    */
   public void getStoreInst(LinkedList<Instruction> ins, int reg)
   {
+    if (this.reg != Registers.NO_REG)
+    {
+      if (this.reg != reg)
+      {
+        ins.add(new Move(this.reg, reg));
+      }
+      
+      // Temporaries in registers never need to touch memory.  User-defined
+      // variables, however, may still be read through a pointer, so we write
+      // their new values through to memory as well.
+      
+      if (isTemp())
+      {
+        return;
+      }
+    }
+    
     StoreType st;
     
     if (size == 1)
@@ -117,6 +230,11 @@ public abstract class Var extends Result
     return this;
   }
   
+  public Result renameUses(VarMap m)
+  {
+    return m.map(this);
+  }
+  
   public boolean equals(Var other)
   {
     return isTemp() == other.isTemp() && varNum == other.getVarNum();
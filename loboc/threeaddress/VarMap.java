@@ -0,0 +1,22 @@
+package threeaddress;
+
+/**
+ * VarMap.java
+ * 
+ * @version 1.0
+ * 
+ * @author Brendan Donohoe
+ *
+ * Interface for a mapping from variables to variables, used to rename the
+ * variables in our three address code (for instance, into and out of SSA
+ * form).
+ */
+public interface VarMap
+{
+  /**
+   * Get the variable to replace the given variable with.
+   * @param v - The variable being renamed.
+   * @return The variable to use in its place (possibly v itself).
+   */
+  public Var map(Var v);
+}
\ No newline at end of file
@@ -72,6 +72,11 @@ public class ArrayType extends Type
     return true;
   }
   
+  public int getAliasClass()
+  {
+    return type.getAliasClass();
+  }
+  
   public String getShorthand()
   {
     return type.getShorthand() + "[" + len.toString(false) + "]";
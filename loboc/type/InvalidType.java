@@ -19,6 +19,11 @@ public class InvalidType extends Type
     return true;
   }
   
+  public int getAliasClass()
+  {
+    return -1;
+  }
+  
   public String getShorthand()
   {
     return "I";
@@ -46,6 +46,14 @@ public class PointerType extends Type
     return true;
   }
   
+  public int getAliasClass()
+  {
+    // Each level of pointers gets its own set of classes, one for each
+    // primitive type at the bottom.
+    
+    return type.getAliasClass() + PrimType.PrimT.values().length;
+  }
+  
   public String getShorthand()
   {
     return type.getShorthand() + "[]";
@@ -60,6 +60,11 @@ public class PrimType extends Type
     return true;
   }
   
+  public int getAliasClass()
+  {
+    return primT.ordinal();
+  }
+  
   public boolean isInt()
   {
     return primT == PrimT.SIGNED || primT == PrimT.UNSIGNED;
@@ -130,6 +130,17 @@ public abstract class Type
    */
   public abstract String getShorthand();
   
+  /**
+   * Get the number of this type's alias class.  LOBO-C has no casts between
+   * pointer types, so memory is only ever read or written through a pointer
+   * to the exact type stored there - a store through a bool pointer can never
+   * change an unsigned, and so on.  Two types share an alias class only if
+   * some object may be accessed as both.  Arrays are accessed by way of
+   * pointers to their elements, so an array shares the class of its elements.
+   * @return The number of this type's alias class.
+   */
+  public abstract int getAliasClass();
+  
   /**
    * Get the size of this type (or zero if this type is invalid, i.e., couldn't
    * be constant-folded).